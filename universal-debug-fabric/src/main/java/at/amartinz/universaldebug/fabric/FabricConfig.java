@@ -31,12 +31,16 @@ import android.support.annotation.RequiresPermission;
 import com.crashlytics.android.Crashlytics;
 import com.crashlytics.android.answers.Answers;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 
 import at.amartinz.universaldebug.UniversalDebug;
 import at.amartinz.universaldebug.UniversalDebugExtension;
 import at.amartinz.universaldebug.analytics.Analytics;
+import at.amartinz.universaldebug.analytics.BufferingAnalyticsComponent;
 import at.amartinz.universaldebug.fabric.trees.AnswerComponent;
+import at.amartinz.universaldebug.trees.BufferingCrashComponent;
 import io.fabric.sdk.android.Fabric;
 import io.fabric.sdk.android.Kit;
 
@@ -48,15 +52,27 @@ public class FabricConfig extends UniversalDebugExtension {
 
     public final HashSet<Kit> kitHashSet;
 
+    private final List<BufferingCrashComponent> crashBuffers;
+
+    private BufferingAnalyticsComponent answerComponent;
+
     @RequiresPermission(Manifest.permission.INTERNET)
     public FabricConfig(UniversalDebug universalDebug) {
         this.applicationContext = universalDebug.getApplicationContext();
         this.kitHashSet = new HashSet<>();
+        this.crashBuffers = new ArrayList<>();
     }
 
+    /**
+     * Adds an {@link AnswerComponent} to the {@link Analytics}.<br>
+     * Events get buffered until Answers got initialized on {@link #install()}.
+     */
     public FabricConfig withAnswers() {
         kitHashSet.add(new Answers());
-        Analytics.get().addComponent(new AnswerComponent());
+        if (answerComponent == null) {
+            answerComponent = new BufferingAnalyticsComponent(new AnswerComponent());
+            Analytics.get().addComponent(answerComponent);
+        }
         return this;
     }
 
@@ -65,11 +81,29 @@ public class FabricConfig extends UniversalDebugExtension {
         return this;
     }
 
+    /**
+     * @param crashBuffer A buffer wrapping a crash component, which reports to Crashlytics, it gets marked as ready
+     *                    once Crashlytics got initialized on {@link #install()}
+     */
+    public FabricConfig withCrashBuffer(BufferingCrashComponent crashBuffer) {
+        crashBuffers.add(crashBuffer);
+        return this;
+    }
+
     public Kit[] getKits() {
         return kitHashSet.toArray(new Kit[kitHashSet.size()]);
     }
 
+    /**
+     * Requires the main thread, as Fabric expects to be initialized on it.
+     */
     public void install() {
         Fabric.with(applicationContext, getKits());
+        if (answerComponent != null) {
+            answerComponent.markReady();
+        }
+        for (final BufferingCrashComponent crashBuffer : crashBuffers) {
+            crashBuffer.markReady();
+        }
     }
 }
@@ -35,6 +35,7 @@ import java.util.Set;
 
 import at.amartinz.universaldebug.analytics.Analytics;
 import at.amartinz.universaldebug.analytics.AnalyticsComponent;
+import at.amartinz.universaldebug.analytics.AnalyticsEvent;
 
 /**
  * Analytics implementation for <a href="https://fabric.io/kits/android/answers">Answers from Fabric</a>.
@@ -57,6 +58,30 @@ public class AnswerComponent extends AnalyticsComponent {
         Answers.getInstance().logCustom(customEvent);
     }
 
+    @Override public void logEvent(@NonNull AnalyticsEvent event) {
+        final CustomEvent customEvent = new CustomEvent(event.getName());
+        for (int i = 0, size = event.size(); i < size; i++) {
+            final String key = event.getKey(i);
+            switch (event.getValueType(i)) {
+                case AnalyticsEvent.VALUE_LONG: {
+                    // answers only takes numbers as objects
+                    customEvent.putCustomAttribute(key, event.getLong(i));
+                    break;
+                }
+                case AnalyticsEvent.VALUE_DOUBLE: {
+                    customEvent.putCustomAttribute(key, event.getDouble(i));
+                    break;
+                }
+                default:
+                case AnalyticsEvent.VALUE_STRING: {
+                    customEvent.putCustomAttribute(key, event.getString(i));
+                    break;
+                }
+            }
+        }
+        Answers.getInstance().logCustom(customEvent);
+    }
+
     @Override public void logAppOpened() {
         Answers.getInstance().logCustom(new CustomEvent(Analytics.Constants.EVENT_APP_OPENED));
     }
@@ -44,6 +44,10 @@ public class CrashlyticsComponent extends CrashComponent {
         super(baseTree, crashPrefix);
     }
 
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == CrashlyticsComponent.class;
+    }
+
     @Override protected void reportCrash(int priority, String tag, String message, Throwable t) {
         final String errorString = String.format("%s: %s", tag, message);
         Crashlytics.logException(new RuntimeException(errorString));
@@ -0,0 +1,48 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.fabric.trees;
+
+import android.support.annotation.NonNull;
+
+import com.crashlytics.android.Crashlytics;
+
+import at.amartinz.universaldebug.trees.CrashBackend;
+import at.amartinz.universaldebug.trees.CrashReport;
+import at.amartinz.universaldebug.trees.OutboxCrashComponent;
+import io.fabric.sdk.android.Fabric;
+
+/**
+ * A {@link CrashBackend} for {@link OutboxCrashComponent}, which sends non fatal exception logs to Crashlytics.<br>
+ * Reports are kept in the outbox until Fabric got initialized.
+ */
+public class CrashlyticsCrashBackend extends CrashBackend {
+    @Override public boolean send(@NonNull CrashReport report) {
+        if (!Fabric.isInitialized()) {
+            return false;
+        }
+        Crashlytics.logException(report.toThrowable());
+        return true;
+    }
+}
@@ -30,10 +30,15 @@ import android.support.annotation.RequiresPermission;
 
 import com.google.firebase.analytics.FirebaseAnalytics;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import at.amartinz.universaldebug.UniversalDebug;
 import at.amartinz.universaldebug.UniversalDebugExtension;
 import at.amartinz.universaldebug.analytics.Analytics;
+import at.amartinz.universaldebug.analytics.BufferingAnalyticsComponent;
 import at.amartinz.universaldebug.firebase.trees.FirebaseAnalyticsComponent;
+import at.amartinz.universaldebug.trees.BufferingCrashComponent;
 
 /**
  * Created by amartinz on 18.04.16.
@@ -41,16 +46,26 @@ import at.amartinz.universaldebug.firebase.trees.FirebaseAnalyticsComponent;
 public class FirebaseConfig extends UniversalDebugExtension {
     private final Context applicationContext;
 
+    private final List<BufferingCrashComponent> crashBuffers;
+
+    private BufferingAnalyticsComponent analyticsComponent;
     private FirebaseAnalytics firebaseAnalytics;
 
     @RequiresPermission(Manifest.permission.INTERNET)
     public FirebaseConfig(UniversalDebug universalDebug) {
         this.applicationContext = universalDebug.getApplicationContext();
+        this.crashBuffers = new ArrayList<>();
     }
 
+    /**
+     * Adds a {@link FirebaseAnalyticsComponent} to the {@link Analytics}.<br>
+     * Events get buffered until Firebase Analytics got initialized on {@link #install()}.
+     */
     public FirebaseConfig withAnalytics() {
-        this.firebaseAnalytics = FirebaseAnalytics.getInstance(applicationContext);
-        Analytics.get().addComponent(new FirebaseAnalyticsComponent(firebaseAnalytics));
+        if (analyticsComponent == null) {
+            analyticsComponent = new BufferingAnalyticsComponent(null);
+            Analytics.get().addComponent(analyticsComponent);
+        }
         return this;
     }
 
@@ -59,7 +74,30 @@ public class FirebaseConfig extends UniversalDebugExtension {
         return this;
     }
 
+    /**
+     * @param crashBuffer A buffer wrapping a crash component, which reports to Firebase, it gets marked as ready
+     *                    on {@link #install()}
+     */
+    public FirebaseConfig withCrashBuffer(BufferingCrashComponent crashBuffer) {
+        crashBuffers.add(crashBuffer);
+        return this;
+    }
+
     public void install() {
-        // nothing to do here
+        // getting the instance is expensive the first time, do it here, so it can be deferred
+        if (analyticsComponent != null && firebaseAnalytics == null) {
+            firebaseAnalytics = FirebaseAnalytics.getInstance(applicationContext);
+            analyticsComponent.markReady(new FirebaseAnalyticsComponent(firebaseAnalytics));
+        }
+        for (final BufferingCrashComponent crashBuffer : crashBuffers) {
+            crashBuffer.markReady();
+        }
+    }
+
+    /**
+     * Firebase can be initialized on any thread.
+     */
+    @Override public boolean requiresMainThread() {
+        return false;
     }
 }
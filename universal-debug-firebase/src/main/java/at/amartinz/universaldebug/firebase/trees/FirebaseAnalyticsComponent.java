@@ -36,6 +36,7 @@ import java.util.Set;
 
 import at.amartinz.universaldebug.analytics.Analytics;
 import at.amartinz.universaldebug.analytics.AnalyticsComponent;
+import at.amartinz.universaldebug.analytics.AnalyticsEvent;
 
 /**
  * Analytics implementation for <a href="https://firebase.google.com/docs/analytics/android/start/">Firebase Analytics</a>.
@@ -60,6 +61,29 @@ public class FirebaseAnalyticsComponent extends AnalyticsComponent {
         firebaseAnalytics.logEvent(eventName, bundle);
     }
 
+    @Override public void logEvent(@NonNull AnalyticsEvent event) {
+        final Bundle bundle = new Bundle();
+        for (int i = 0, size = event.size(); i < size; i++) {
+            final String key = event.getKey(i);
+            switch (event.getValueType(i)) {
+                case AnalyticsEvent.VALUE_LONG: {
+                    bundle.putLong(key, event.getLong(i));
+                    break;
+                }
+                case AnalyticsEvent.VALUE_DOUBLE: {
+                    bundle.putDouble(key, event.getDouble(i));
+                    break;
+                }
+                default:
+                case AnalyticsEvent.VALUE_STRING: {
+                    bundle.putString(key, event.getString(i));
+                    break;
+                }
+            }
+        }
+        firebaseAnalytics.logEvent(event.getName(), bundle);
+    }
+
     @Override public void logAppOpened() {
         logCustom(Analytics.Constants.EVENT_APP_OPENED, null);
     }
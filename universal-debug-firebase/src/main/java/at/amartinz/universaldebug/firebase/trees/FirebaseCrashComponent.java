@@ -44,6 +44,10 @@ public class FirebaseCrashComponent extends CrashComponent {
         super(baseTree, crashPrefix);
     }
 
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == FirebaseCrashComponent.class;
+    }
+
     @Override protected void reportCrash(int priority, String tag, String message, Throwable t) {
         final Throwable toReport;
         if (t != null) {
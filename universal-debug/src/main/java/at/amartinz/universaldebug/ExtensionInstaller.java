@@ -0,0 +1,231 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Installs {@link UniversalDebugExtension UniversalDebugExtensions} without blocking the caller.<br>
+ * Extensions which require the main thread get posted to it, all others run in parallel on a small pool.
+ * An extension only starts once all extensions it depends on got installed.
+ */
+final class ExtensionInstaller {
+    private static final String TAG = "ExtensionInstaller";
+
+    private static final int MAX_THREADS = 4;
+
+    private final List<InstallListener> installListeners;
+    private final List<Node> nodes;
+    private final AtomicInteger remaining;
+    private final CountDownLatch installed;
+
+    private Handler mainHandler;
+    private ThreadPoolExecutor executor;
+
+    private final class Node implements Runnable {
+        private final UniversalDebugExtension extension;
+        private final List<Node> dependents = new ArrayList<>();
+        private final AtomicInteger pendingDependencies = new AtomicInteger();
+
+        private Node(UniversalDebugExtension extension) {
+            this.extension = extension;
+        }
+
+        @Override public void run() {
+            try {
+                install(extension, installListeners);
+            } catch (Throwable throwable) {
+                // there is no caller to throw to, let the dependents try anyway
+                Log.e(TAG, "Could not install " + extension.getClass().getName(), throwable);
+                notifyFailed(throwable);
+            } finally {
+                // whatever happened, the dependents and install() callers must not wait forever
+                try {
+                    for (final Node dependent : dependents) {
+                        if (dependent.pendingDependencies.decrementAndGet() == 0) {
+                            schedule(dependent);
+                        }
+                    }
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        finish();
+                    }
+                }
+            }
+        }
+
+        private void notifyFailed(Throwable throwable) {
+            for (final InstallListener listener : installListeners) {
+                try {
+                    listener.onExtensionFailed(extension, throwable);
+                } catch (RuntimeException re) {
+                    Log.e(TAG, "Listener failed for " + extension.getClass().getName(), re);
+                }
+            }
+        }
+    }
+
+    ExtensionInstaller(@NonNull List<UniversalDebugExtension> extensions,
+            @NonNull List<InstallListener> installListeners) {
+        this.installListeners = installListeners;
+        this.nodes = new ArrayList<>(extensions.size());
+        this.remaining = new AtomicInteger(extensions.size());
+        this.installed = new CountDownLatch(1);
+
+        for (final UniversalDebugExtension extension : extensions) {
+            nodes.add(new Node(extension));
+        }
+        for (final Node node : nodes) {
+            for (final Class<? extends UniversalDebugExtension> dependency : node.extension.getDependencies()) {
+                for (final Node other : nodes) {
+                    if (other != node && dependency.isInstance(other.extension)) {
+                        other.dependents.add(node);
+                        node.pendingDependencies.incrementAndGet();
+                    }
+                }
+            }
+        }
+        checkForCycles();
+    }
+
+    /**
+     * Installs a single extension on the calling thread and notifies the listeners, if it did not throw.
+     */
+    static void install(@NonNull UniversalDebugExtension extension, @NonNull List<InstallListener> listeners) {
+        final long start = System.nanoTime();
+        extension.install();
+        final long duration = System.nanoTime() - start;
+        for (final InstallListener listener : listeners) {
+            listener.onExtensionInstalled(extension, duration);
+        }
+    }
+
+    /**
+     * Starts installing and returns immediately.
+     */
+    void start() {
+        if (nodes.isEmpty()) {
+            finish();
+            return;
+        }
+        for (final Node node : nodes) {
+            if (node.pendingDependencies.get() == 0) {
+                schedule(node);
+            }
+        }
+    }
+
+    /**
+     * @param timeoutMillis How long to wait at most
+     * @return True, if all extensions got installed in time
+     */
+    boolean await(long timeoutMillis) {
+        try {
+            return installed.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void schedule(Node node) {
+        if (node.extension.requiresMainThread()) {
+            getMainHandler().post(node);
+        } else {
+            getExecutor().execute(node);
+        }
+    }
+
+    private synchronized Handler getMainHandler() {
+        if (mainHandler == null) {
+            mainHandler = new Handler(Looper.getMainLooper());
+        }
+        return mainHandler;
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            // installing mostly waits for disk and binder calls, so use more than one thread even on single cores
+            final int threads = Math.max(2, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+            executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                // keep the default priority, the app is waiting for the extensions
+                @Override public Thread newThread(@NonNull Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "UniversalDebug-Install");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // the pool is only needed while installing
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    private void finish() {
+        installed.countDown();
+        for (final InstallListener listener : installListeners) {
+            listener.onInstalled();
+        }
+    }
+
+    private void checkForCycles() {
+        // remove extensions without pending dependencies until none are left, anything remaining is a cycle
+        final int[] pending = new int[nodes.size()];
+        final ArrayList<Node> ready = new ArrayList<>();
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = nodes.get(i).pendingDependencies.get();
+            if (pending[i] == 0) {
+                ready.add(nodes.get(i));
+            }
+        }
+        int resolved = 0;
+        while (!ready.isEmpty()) {
+            final Node node = ready.remove(ready.size() - 1);
+            resolved++;
+            for (final Node dependent : node.dependents) {
+                final int index = nodes.indexOf(dependent);
+                if (--pending[index] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        if (resolved != nodes.size()) {
+            throw new IllegalStateException("Extensions have cyclic dependencies");
+        }
+    }
+}
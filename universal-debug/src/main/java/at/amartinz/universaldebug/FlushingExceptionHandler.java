@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import at.amartinz.universaldebug.trees.BaseTree;
+import timber.log.Timber;
+
+/**
+ * An uncaught exception handler, which logs the exception and flushes all components of the {@link BaseTree}
+ * before passing the exception on to the previous handler.<br>
+ * The flush is bounded by a timeout, so crashing on the main thread does not turn into an ANR.
+ */
+public class FlushingExceptionHandler implements Thread.UncaughtExceptionHandler {
+    public static final long DEFAULT_TIMEOUT = 2000;
+
+    private final BaseTree baseTree;
+    private final long timeoutMillis;
+    private final Thread.UncaughtExceptionHandler previousHandler;
+
+    private final AtomicBoolean isHandling = new AtomicBoolean();
+
+    /**
+     * @param baseTree        The {@link BaseTree} to flush
+     * @param timeoutMillis   How long flushing may take at most
+     * @param previousHandler The handler to pass the exception on to afterwards
+     */
+    public FlushingExceptionHandler(@NonNull BaseTree baseTree, long timeoutMillis,
+            @Nullable Thread.UncaughtExceptionHandler previousHandler) {
+        this.baseTree = baseTree;
+        this.timeoutMillis = timeoutMillis;
+        this.previousHandler = previousHandler;
+    }
+
+    /**
+     * Installs a {@link FlushingExceptionHandler} in front of the current default handler.
+     */
+    public static FlushingExceptionHandler install(@NonNull BaseTree baseTree, long timeoutMillis) {
+        final FlushingExceptionHandler handler = new FlushingExceptionHandler(baseTree, timeoutMillis,
+                Thread.getDefaultUncaughtExceptionHandler());
+        Thread.setDefaultUncaughtExceptionHandler(handler);
+        return handler;
+    }
+
+    @Override public void uncaughtException(Thread thread, Throwable throwable) {
+        // only flush once, if several threads crash at once or flushing crashes again
+        if (isHandling.compareAndSet(false, true)) {
+            try {
+                Timber.e(throwable, "Uncaught exception in thread %s", thread.getName());
+                baseTree.flush(timeoutMillis);
+            } catch (Throwable ignored) {
+                // never prevent the previous handler from running
+            }
+        }
+
+        if (previousHandler != null) {
+            previousHandler.uncaughtException(thread, throwable);
+        } else {
+            throwable.printStackTrace();
+        }
+    }
+}
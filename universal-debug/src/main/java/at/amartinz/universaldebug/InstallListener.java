@@ -0,0 +1,54 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Gets notified about the installation of {@link UniversalDebugExtension UniversalDebugExtensions}, see
+ * {@link UniversalDebug#withInstallListener(InstallListener)}.<br>
+ * With deferred installation, see {@link UniversalDebug#withDeferredInstall(boolean)}, the methods get called on
+ * the thread which installed the extension.
+ */
+public abstract class InstallListener {
+    /**
+     * @param extension The extension, which got installed
+     * @param duration  How long installing took, in nanoseconds
+     */
+    public void onExtensionInstalled(@NonNull UniversalDebugExtension extension, long duration) { }
+
+    /**
+     * Only called when installing deferred, otherwise the exception gets thrown by {@link UniversalDebug#install()}.
+     *
+     * @param extension The extension, which threw while installing
+     * @param throwable What it threw
+     */
+    public void onExtensionFailed(@NonNull UniversalDebugExtension extension, @NonNull Throwable throwable) { }
+
+    /**
+     * Called once all extensions got installed, including the ones which failed.
+     */
+    public void onInstalled() { }
+}
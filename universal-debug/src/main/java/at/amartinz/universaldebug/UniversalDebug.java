@@ -2,6 +2,7 @@ package at.amartinz.universaldebug;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
 import java.util.ArrayList;
@@ -12,6 +13,7 @@ import java.util.List;
 
 import at.amartinz.universaldebug.trees.BaseTree;
 import at.amartinz.universaldebug.trees.LogComponent;
+import at.amartinz.universaldebug.utils.Tracer;
 import timber.log.Timber;
 
 /**
@@ -23,6 +25,14 @@ public class UniversalDebug {
 
     private boolean enableDebug;
     private boolean enableTimber;
+    private final List<InstallListener> installListeners;
+
+    private boolean enableFlushOnCrash;
+    private long flushTimeout;
+    private boolean enableDeferredInstall;
+    private ExtensionInstaller extensionInstaller;
+    private boolean enableTracing;
+    private Tracer tracer;
 
     private Timber.Tree debugTree;
     private Timber.Tree productionTree;
@@ -34,6 +44,10 @@ public class UniversalDebug {
     public UniversalDebug(Context applicationContext) {
         this.applicationContext = applicationContext;
         this.extensionList = new ArrayList<>();
+        this.installListeners = new ArrayList<>();
+
+        this.enableFlushOnCrash = true;
+        this.flushTimeout = FlushingExceptionHandler.DEFAULT_TIMEOUT;
     }
 
     public UniversalDebug withDebug(boolean enableDebug) {
@@ -46,6 +60,57 @@ public class UniversalDebug {
         return this;
     }
 
+    /**
+     * Whether to install a {@link FlushingExceptionHandler}, which flushes the planted {@link BaseTree}
+     * before the app crashes, enabled by default.
+     */
+    public UniversalDebug withFlushOnCrash(boolean enableFlushOnCrash) {
+        this.enableFlushOnCrash = enableFlushOnCrash;
+        return this;
+    }
+
+    /**
+     * @param flushTimeout How long flushing may take at most when crashing, in milliseconds
+     */
+    public UniversalDebug withFlushTimeout(long flushTimeout) {
+        this.flushTimeout = flushTimeout;
+        return this;
+    }
+
+    /**
+     * When installing deferred, {@link #install()} only plants the tree and returns immediately.<br>
+     * Extensions get installed afterwards, the ones which require the main thread, see
+     * {@link UniversalDebugExtension#requiresMainThread()}, get posted to it and all others get installed in
+     * parallel in the background, respecting their dependencies, see
+     * {@link UniversalDebugExtension#getDependencies()}.<br>
+     * Use {@link #withInstallListener(InstallListener)} or {@link #awaitInstall(long)} to know when they are done.
+     */
+    public UniversalDebug withDeferredInstall(boolean enableDeferredInstall) {
+        this.enableDeferredInstall = enableDeferredInstall;
+        return this;
+    }
+
+    /**
+     * Records how long installing and every extension takes, as well as how long every component of the planted
+     * {@link BaseTree} takes per log line, see {@link #getTracer()}. Disabled by default.
+     */
+    public UniversalDebug withTracing(boolean enableTracing) {
+        this.enableTracing = enableTracing;
+        return this;
+    }
+
+    /**
+     * @return The tracer, if tracing got enabled via {@link #withTracing(boolean)} before {@link #install()}
+     */
+    @Nullable public Tracer getTracer() {
+        return tracer;
+    }
+
+    public UniversalDebug withInstallListener(InstallListener installListener) {
+        installListeners.add(installListener);
+        return this;
+    }
+
     public UniversalDebug withDebugTree(Timber.Tree debugTree) {
         this.debugTree = debugTree;
         return this;
@@ -67,27 +132,91 @@ public class UniversalDebug {
     }
 
     public void install() {
+        final long installStart = Tracer.now();
+        if (enableTracing && tracer == null) {
+            tracer = new Tracer();
+            installListeners.add(new TracingInstallListener(tracer, installStart));
+        }
+
         if (enableTimber) {
+            final Timber.Tree tree;
             if (enableDebug) {
                 if (debugTree == null) {
                     debugTree = buildDefaultDebugTree(applicationContext);
                 }
-                Timber.plant(debugTree);
+                tree = debugTree;
             } else {
                 if (productionTree == null) {
                     productionTree = buildDefaultProductionTree(applicationContext);
                 }
-                Timber.plant(productionTree);
+                tree = productionTree;
+            }
+            Timber.plant(tree);
+            if (tracer != null) {
+                if (tree instanceof BaseTree) {
+                    ((BaseTree) tree).setTracer(tracer);
+                }
+                tracer.recordPhase("plant", Tracer.now() - installStart);
+            }
+
+            if (enableFlushOnCrash && tree instanceof BaseTree) {
+                FlushingExceptionHandler.install((BaseTree) tree, flushTimeout);
             }
         }
 
-        if (!extensionList.isEmpty()) {
-            for (final UniversalDebugExtension extension : extensionList) {
-                if (extension.canInstall(enableDebug)) {
-                    extension.install();
-                }
+        final List<UniversalDebugExtension> extensions = new ArrayList<>(extensionList.size());
+        for (final UniversalDebugExtension extension : extensionList) {
+            if (extension.canInstall(enableDebug)) {
+                extensions.add(extension);
             }
         }
+
+        if (enableDeferredInstall) {
+            extensionInstaller = new ExtensionInstaller(extensions, installListeners);
+            extensionInstaller.start();
+        } else {
+            for (final UniversalDebugExtension extension : extensions) {
+                ExtensionInstaller.install(extension, installListeners);
+            }
+            for (final InstallListener installListener : installListeners) {
+                installListener.onInstalled();
+            }
+        }
+
+        if (tracer != null) {
+            // with deferred installation, this is only the time the caller got blocked
+            tracer.recordPhase("install", Tracer.now() - installStart);
+        }
+    }
+
+    private static final class TracingInstallListener extends InstallListener {
+        private final Tracer tracer;
+        private final long installStart;
+
+        private TracingInstallListener(Tracer tracer, long installStart) {
+            this.tracer = tracer;
+            this.installStart = installStart;
+        }
+
+        @Override public void onExtensionInstalled(@NonNull UniversalDebugExtension extension, long duration) {
+            tracer.recordPhase("install " + extension.getClass().getSimpleName(), duration);
+        }
+
+        @Override public void onInstalled() {
+            tracer.recordPhase("extensions installed", Tracer.now() - installStart);
+        }
+    }
+
+    /**
+     * Waits until all extensions got installed, when installing deferred.<br>
+     * Do not call this on the main thread, if any extension requires it.
+     *
+     * @param timeoutMillis How long to wait at most
+     * @return True, if all extensions got installed in time
+     */
+    public boolean awaitInstall(long timeoutMillis) {
+        final ExtensionInstaller installer = extensionInstaller;
+        return (installer == null) || installer.await(timeoutMillis);
     }
 
     public static BaseTree buildDefaultDebugTree(@NonNull Context applicationContext) {
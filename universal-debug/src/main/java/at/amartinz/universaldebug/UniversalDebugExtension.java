@@ -24,6 +24,11 @@
 
 package at.amartinz.universaldebug;
 
+import android.support.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Collections;
+
 /**
  * An extension for {@link UniversalDebug}.
  */
@@ -33,4 +38,20 @@ public abstract class UniversalDebugExtension {
     public boolean canInstall(boolean debugEnabled) {
         return true;
     }
+
+    /**
+     * Whether {@link #install()} has to be called on the main thread, when installing deferred, see
+     * {@link UniversalDebug#withDeferredInstall(boolean)}.<br>
+     * Returns true by default, override it if installing is safe on any thread, to install in parallel.
+     */
+    public boolean requiresMainThread() {
+        return true;
+    }
+
+    /**
+     * @return The extensions, which have to be installed before this one, when installing deferred
+     */
+    @NonNull public Collection<Class<? extends UniversalDebugExtension>> getDependencies() {
+        return Collections.emptyList();
+    }
 }
@@ -24,12 +24,26 @@
 
 package at.amartinz.universaldebug.analytics;
 
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Process;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.Log;
 
-import java.util.HashSet;
-import java.util.Iterator;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import at.amartinz.universaldebug.utils.SnapshotRegistry;
 
 /**
  * Singleton interface for interacting with analytics services.<br>
@@ -39,9 +53,54 @@ import java.util.Map;
  * Override this class for your own needs!
  */
 public class Analytics {
-    private static Analytics sInstance;
+    private static final String TAG = "Analytics";
+
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    /**
+     * When the queue is full, logging waits until there is space again.
+     */
+    public static final int BACKPRESSURE_BLOCK = 0;
+    /**
+     * When the queue is full, the oldest queued event gets dropped.
+     */
+    public static final int BACKPRESSURE_DROP_OLDEST = 1;
+    /**
+     * When the queue is full, the oldest queued event with the lowest priority gets dropped, if its priority is
+     * lower than the priority of the new event. Otherwise the new event gets dropped.
+     */
+    public static final int BACKPRESSURE_DROP_LOW_PRIORITY = 2;
+
+    public static final int DEFAULT_ASYNC_CAPACITY = 512;
+
+    public static final String DEFAULT_OUTBOX_DIRECTORY = "analytics-outbox";
+
+    public static final int DEFAULT_LANE_CAPACITY = 256;
+    public static final long DEFAULT_SLOW_CALL = 1000;
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_COOL_DOWN = 30 * 1000;
+
+    private static volatile Analytics sInstance;
 
-    private final HashSet<AnalyticsComponent> analyticsComponents;
+    // shared by all lanes, idle threads die after a while
+    private static Executor sLaneExecutor;
+
+    private final SnapshotRegistry<AnalyticsComponent> analyticsComponents;
+    private final ConcurrentHashMap<AnalyticsComponent, ComponentLane> componentLanes;
+
+    private volatile AnalyticsDispatcher analyticsDispatcher;
+    private volatile AnalyticsAggregator analyticsAggregator;
+    private volatile AnalyticsOutbox analyticsOutbox;
+    private boolean isBackgroundFlushRegistered;
+
+    private volatile boolean isIsolated;
+    // only modified while holding the lock
+    private int laneCapacity;
+    private long slowCallMillis;
+    private int failureThreshold;
+    private long coolDownMillis;
 
     public static class Constants {
         public static final String EVENT_TEST = "test";
@@ -53,62 +112,457 @@ public class Analytics {
     }
 
     private Analytics() {
-        analyticsComponents = new HashSet<>();
+        analyticsComponents = new SnapshotRegistry<>(new AnalyticsComponent[0]);
+        componentLanes = new ConcurrentHashMap<>();
     }
 
     public static Analytics get() {
-        if (sInstance == null) {
-            sInstance = new Analytics();
+        Analytics instance = sInstance;
+        if (instance == null) {
+            synchronized (Analytics.class) {
+                instance = sInstance;
+                if (instance == null) {
+                    instance = new Analytics();
+                    sInstance = instance;
+                }
+            }
         }
-        return sInstance;
+        return instance;
     }
 
     public Analytics addComponent(AnalyticsComponent analyticsComponent) {
-        analyticsComponents.add(analyticsComponent);
+        final ComponentLane lane = componentLanes.get(analyticsComponent);
+        if (lane != null) {
+            // removed again while its lane was still delivering, keep using it
+            lane.reopen();
+        }
+        analyticsComponents.addIfAbsent(analyticsComponent);
         return this;
     }
 
     public Analytics removeComponent(AnalyticsComponent analyticsComponent) {
         analyticsComponents.remove(analyticsComponent);
+        final ComponentLane lane = componentLanes.get(analyticsComponent);
+        if (lane != null) {
+            lane.close();
+        }
         return this;
     }
 
     public Analytics removeComponent(Class clazz) {
-        final Iterator<AnalyticsComponent> iterator = analyticsComponents.iterator();
-        while (iterator.hasNext()) {
-            final AnalyticsComponent component = iterator.next();
-            if (clazz.isInstance(component)) {
-                iterator.remove();
+        analyticsComponents.removeInstancesOf(clazz);
+        for (final Map.Entry<AnalyticsComponent, ComponentLane> entry : componentLanes.entrySet()) {
+            if (clazz.isInstance(entry.getKey())) {
+                entry.getValue().close();
             }
         }
         return this;
     }
 
-    public Analytics logCustom(@NonNull String eventName, @Nullable Map<Object, Object> attributes) {
-        for (final AnalyticsComponent analyticsComponent : analyticsComponents) {
-            analyticsComponent.logCustom(eventName, attributes);
+    /**
+     * @see #setIsolation(int, long, int, long)
+     */
+    public Analytics setIsolation(boolean isIsolated) {
+        if (isIsolated) {
+            return setIsolation(DEFAULT_LANE_CAPACITY, DEFAULT_SLOW_CALL, DEFAULT_FAILURE_THRESHOLD,
+                    DEFAULT_COOL_DOWN);
         }
+        // the lanes deliver what they have queued and get used again, if isolation gets enabled again
+        this.isIsolated = false;
         return this;
     }
 
-    public Analytics logAppOpened() {
-        for (final AnalyticsComponent analyticsComponent : analyticsComponents) {
-            analyticsComponent.logAppOpened();
+    /**
+     * In isolation, every {@link AnalyticsComponent} gets the events on its own serial lane, so a slow component
+     * does not hold up the others and an exception only affects the component throwing it.<br>
+     * Every lane has a circuit breaker: if the component throws or is slow too often in a row, its events get shed
+     * for a cool-down period. After that a single event tests whether the component recovered.<br>
+     * Use {@link #getComponentHealth()} to check the state of the components.<br>
+     * <br>
+     * Works with every delivery mode. With an outbox, see {@link #setOutbox(File)}, events count as delivered once
+     * they got queued on the lanes.
+     *
+     * @param laneCapacity     The maximum amount of events waiting for a single component, further ones get shed
+     * @param slowCallMillis   The time after which a call to a component counts as failed
+     * @param failureThreshold The amount of failed calls in a row, which opens the circuit
+     * @param coolDownMillis   How long to shed events, once the circuit is open
+     * @return The same {@link Analytics} instance to allow chained calls
+     */
+    public Analytics setIsolation(int laneCapacity, long slowCallMillis, int failureThreshold,
+            long coolDownMillis) {
+        synchronized (this) {
+            this.laneCapacity = laneCapacity;
+            this.slowCallMillis = slowCallMillis;
+            this.failureThreshold = failureThreshold;
+            this.coolDownMillis = coolDownMillis;
+            // replacing the lanes would let a new and an old lane call the same component at the same time
+            for (final ComponentLane lane : componentLanes.values()) {
+                lane.configure(laneCapacity, slowCallMillis, failureThreshold, coolDownMillis);
+            }
         }
+        isIsolated = true;
         return this;
     }
 
-    public Analytics logClickGeneric(@NonNull String name) {
-        for (final AnalyticsComponent analyticsComponent : analyticsComponents) {
-            analyticsComponent.logClickGeneric(name);
+    /**
+     * @return The health of every component, empty if not in isolation
+     * @see #setIsolation(int, long, int, long)
+     */
+    @NonNull public List<ComponentHealth> getComponentHealth() {
+        final AnalyticsComponent[] components = analyticsComponents.snapshot();
+        final List<ComponentHealth> health = new ArrayList<>(components.length);
+        if (isIsolated) {
+            for (final AnalyticsComponent component : components) {
+                health.add(getLane(component).getHealth());
+            }
+        }
+        return health;
+    }
+
+    /**
+     * @return The health of the given component, null if not in isolation
+     * @see #setIsolation(int, long, int, long)
+     */
+    @Nullable public ComponentHealth getComponentHealth(@NonNull AnalyticsComponent component) {
+        return isIsolated ? getLane(component).getHealth() : null;
+    }
+
+    /**
+     * @see #setAsync(int, int)
+     */
+    public Analytics setAsync(boolean isAsync) {
+        if (isAsync) {
+            return setAsync(DEFAULT_ASYNC_CAPACITY, BACKPRESSURE_DROP_LOW_PRIORITY);
+        }
+        shutdownAsync(0);
+        return this;
+    }
+
+    /**
+     * In asynchronous mode, logging only queues the event and a background thread delivers it to the
+     * {@link AnalyticsComponent AnalyticsComponents} in batches, keeping their work away from the UI thread.<br>
+     * Do not modify attributes after passing them to {@link #logCustom(String, Map)} in this mode.
+     *
+     * @param capacity           The maximum amount of queued events
+     * @param backpressurePolicy What to do when the queue is full, one of {@link #BACKPRESSURE_BLOCK},
+     *                           {@link #BACKPRESSURE_DROP_OLDEST} and {@link #BACKPRESSURE_DROP_LOW_PRIORITY}
+     * @return The same {@link Analytics} instance to allow chained calls
+     */
+    public Analytics setAsync(int capacity, int backpressurePolicy) {
+        shutdownAsync(0);
+        analyticsDispatcher = new AnalyticsDispatcher(this, capacity, backpressurePolicy);
+        return this;
+    }
+
+    /**
+     * Leaves asynchronous mode and waits until all queued events got delivered.
+     *
+     * @param timeoutMillis How long to wait at most, 0 to wait forever
+     * @return True, if all queued events got delivered
+     */
+    public boolean shutdownAsync(long timeoutMillis) {
+        final AnalyticsDispatcher dispatcher = analyticsDispatcher;
+        if (dispatcher == null) {
+            return true;
+        }
+        analyticsDispatcher = null;
+        return dispatcher.shutdown(timeoutMillis);
+    }
+
+    /**
+     * @see #setOutbox(File)
+     */
+    public Analytics setOutbox(@NonNull Context context) {
+        return setOutbox(new File(context.getFilesDir(), DEFAULT_OUTBOX_DIRECTORY));
+    }
+
+    /**
+     * With an outbox, events get persisted on the disk in batches by a background thread, before it delivers them
+     * to the {@link AnalyticsComponent AnalyticsComponents}. Events, which did not get delivered because the
+     * process died, get replayed after the next start, once there are components again.<br>
+     * This replaces asynchronous mode, see {@link #setAsync(int, int)}, as the outbox delivers on its own thread.
+     * If the outbox is full, new events get dropped and counted.
+     *
+     * @param directory The directory to persist events in
+     * @return The same {@link Analytics} instance to allow chained calls
+     */
+    public Analytics setOutbox(@NonNull File directory) {
+        synchronized (this) {
+            // the previous outbox may still be persisting, the new one waits for it before it opens the directory
+            final Thread previousThread = stopOutbox();
+            final AnalyticsOutbox outbox = new AnalyticsOutbox(this, directory);
+            outbox.start(previousThread);
+            analyticsOutbox = outbox;
+        }
+        return this;
+    }
+
+    /**
+     * Stops the outbox after it persisted all queued events, the ones which did not get delivered yet get replayed
+     * after the next start.
+     */
+    public void shutdownOutbox() {
+        synchronized (this) {
+            stopOutbox();
+        }
+    }
+
+    /**
+     * @return The thread of the stopped outbox, which may still be persisting, or null
+     */
+    private Thread stopOutbox() {
+        final AnalyticsOutbox outbox = analyticsOutbox;
+        if (outbox == null) {
+            return null;
+        }
+        analyticsOutbox = null;
+        return outbox.shutdown();
+    }
+
+    /**
+     * @return The amount of events in the outbox, which did not get delivered yet
+     */
+    public int getOutboxPendingCount() {
+        final AnalyticsOutbox outbox = analyticsOutbox;
+        return (outbox != null) ? outbox.getPendingCount() : 0;
+    }
+
+    /**
+     * Waits until all queued events got delivered, without leaving asynchronous mode.<br>
+     * With an outbox, waits until all queued events got persisted.
+     *
+     * @param timeoutMillis How long to wait at most
+     * @return True, if all queued events got delivered in time
+     */
+    public boolean flush(long timeoutMillis) {
+        final AnalyticsOutbox outbox = analyticsOutbox;
+        if (outbox != null) {
+            return outbox.flush(timeoutMillis);
+        }
+        final AnalyticsDispatcher dispatcher = analyticsDispatcher;
+        return (dispatcher == null) || dispatcher.flush(timeoutMillis);
+    }
+
+    /**
+     * @return The amount of events waiting for delivery in asynchronous mode
+     */
+    public int getQueueDepth() {
+        final AnalyticsDispatcher dispatcher = analyticsDispatcher;
+        return (dispatcher != null) ? dispatcher.getQueueDepth() : 0;
+    }
+
+    /**
+     * @return The amount of events dropped in asynchronous mode or by the outbox, because the queue was full
+     */
+    public long getDroppedCount() {
+        final AnalyticsDispatcher dispatcher = analyticsDispatcher;
+        final AnalyticsOutbox outbox = analyticsOutbox;
+        return ((dispatcher != null) ? dispatcher.getDroppedCount() : 0)
+                + ((outbox != null) ? outbox.getDroppedCount() : 0);
+    }
+
+    /**
+     * In aggregation mode, clicks logged via {@link #logClickGeneric(String)} and {@link #logClickButton(String)}
+     * only increment a counter. Every interval, one summary event per event and name gets logged via
+     * {@link #log(AnalyticsEvent)}, for example {@link Constants#EVENT_CLICKED_BUTTON} with the attributes
+     * {@code name} and {@code count}, instead of one event per click.
+     *
+     * @param intervalMillis How often to log summary events, 0 to leave aggregation mode after logging the pending
+     *                       counts
+     * @return The same {@link Analytics} instance to allow chained calls
+     * @see #logAggregated(String, String, String)
+     * @see #registerBackgroundFlush(Context)
+     */
+    public Analytics setAggregationInterval(long intervalMillis) {
+        final AnalyticsAggregator aggregator = analyticsAggregator;
+        analyticsAggregator = (intervalMillis > 0) ? new AnalyticsAggregator(this, intervalMillis) : null;
+        if (aggregator != null) {
+            aggregator.shutdown();
+        }
+        return this;
+    }
+
+    /**
+     * Counts an event in aggregation mode, or logs it directly otherwise.
+     *
+     * @param eventName      The name of the summary event
+     * @param attributeKey   The attribute, whose values get counted separately
+     * @param attributeValue The value of the attribute
+     * @return The same {@link Analytics} instance to allow chained calls
+     * @see #setAggregationInterval(long)
+     */
+    public Analytics logAggregated(@NonNull String eventName, @NonNull String attributeKey,
+            @NonNull String attributeValue) {
+        final AnalyticsAggregator aggregator = analyticsAggregator;
+        if (aggregator != null) {
+            aggregator.count(eventName, attributeKey, attributeValue);
+            return this;
+        }
+        return log(AnalyticsEvent.obtain(eventName).put(attributeKey, attributeValue));
+    }
+
+    /**
+     * Logs the summary events of all counts so far, without waiting for the next interval.
+     *
+     * @return The same {@link Analytics} instance to allow chained calls
+     */
+    public Analytics flushAggregates() {
+        final AnalyticsAggregator aggregator = analyticsAggregator;
+        if (aggregator != null) {
+            aggregator.flush();
+        }
+        return this;
+    }
+
+    /**
+     * Flushes the aggregated counts, see {@link #flushAggregates()}, whenever the app goes into background, as the
+     * process may get killed before the next interval.
+     *
+     * @return The same {@link Analytics} instance to allow chained calls
+     */
+    public Analytics registerBackgroundFlush(@NonNull Context context) {
+        synchronized (this) {
+            if (isBackgroundFlushRegistered) {
+                return this;
+            }
+            isBackgroundFlushRegistered = true;
         }
+        context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override public void onTrimMemory(int level) {
+                if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+                    flushAggregates();
+                }
+            }
+
+            @Override public void onConfigurationChanged(Configuration newConfig) { }
+
+            @Override public void onLowMemory() {
+                flushAggregates();
+            }
+        });
         return this;
     }
 
+    public Analytics logCustom(@NonNull String eventName, @Nullable Map<Object, Object> attributes) {
+        return logCustom(eventName, attributes, PRIORITY_NORMAL);
+    }
+
+    /**
+     * @param priority The priority of the event, decides which events get dropped first in asynchronous mode
+     * @see #logCustom(String, Map)
+     */
+    public Analytics logCustom(@NonNull String eventName, @Nullable Map<Object, Object> attributes, int priority) {
+        return log(AnalyticsEvent.obtain(AnalyticsEvent.TYPE_CUSTOM, priority, eventName, attributes));
+    }
+
+    public Analytics logAppOpened() {
+        return log(AnalyticsEvent.obtain(AnalyticsEvent.TYPE_APP_OPENED, PRIORITY_HIGH, null, null));
+    }
+
+    public Analytics logClickGeneric(@NonNull String name) {
+        final AnalyticsAggregator aggregator = analyticsAggregator;
+        if (aggregator != null) {
+            aggregator.count(Constants.EVENT_CLICKED_GENERIC, AnalyticsAggregator.ATTRIBUTE_NAME, name);
+            return this;
+        }
+        return log(AnalyticsEvent.obtain(AnalyticsEvent.TYPE_CLICK_GENERIC, PRIORITY_LOW, name, null));
+    }
+
     public Analytics logClickButton(@NonNull String name) {
-        for (final AnalyticsComponent analyticsComponent : analyticsComponents) {
-            analyticsComponent.logClickButton(name);
+        final AnalyticsAggregator aggregator = analyticsAggregator;
+        if (aggregator != null) {
+            aggregator.count(Constants.EVENT_CLICKED_BUTTON, AnalyticsAggregator.ATTRIBUTE_NAME, name);
+            return this;
+        }
+        return log(AnalyticsEvent.obtain(AnalyticsEvent.TYPE_CLICK_BUTTON, PRIORITY_LOW, name, null));
+    }
+
+    /**
+     * Logs an event with typed attributes, see {@link AnalyticsEvent}.<br>
+     * The event gets recycled once it got delivered, do not use it anymore after calling this.
+     *
+     * @param event The event, obtained via {@link AnalyticsEvent#obtain(String)}
+     * @return The same {@link Analytics} instance to allow chained calls
+     */
+    public Analytics log(@NonNull AnalyticsEvent event) {
+        final AnalyticsOutbox outbox = analyticsOutbox;
+        if (outbox != null && outbox.enqueue(event)) {
+            return this;
+        }
+        // also delivers directly, if the thread of the outbox or the dispatcher died
+        final AnalyticsDispatcher dispatcher = analyticsDispatcher;
+        if (dispatcher == null || !dispatcher.enqueue(event)) {
+            deliver(event, analyticsComponents.snapshot());
         }
         return this;
     }
+
+    /**
+     * Delivers the event to the components and recycles it afterwards.
+     */
+    void deliver(@NonNull AnalyticsEvent event, @NonNull AnalyticsComponent[] components) {
+        if (!isIsolated) {
+            try {
+                for (final AnalyticsComponent component : components) {
+                    try {
+                        event.deliverTo(component);
+                    } catch (Throwable throwable) {
+                        // a broken component must neither keep the others from the event, nor kill the thread
+                        Log.e(TAG, "Could not deliver analytics event!", throwable);
+                    }
+                }
+            } finally {
+                event.recycle();
+            }
+            return;
+        }
+
+        // hold an own reference, so the lanes can not recycle the event while it still gets offered
+        event.retain(components.length + 1);
+        for (final AnalyticsComponent component : components) {
+            if (!getLane(component).offer(event)) {
+                event.release();
+            }
+        }
+        event.release();
+    }
+
+    private ComponentLane getLane(AnalyticsComponent component) {
+        ComponentLane lane = componentLanes.get(component);
+        if (lane == null) {
+            synchronized (this) {
+                lane = componentLanes.get(component);
+                if (lane == null) {
+                    lane = new ComponentLane(component, getLaneExecutor(), componentLanes, laneCapacity,
+                            slowCallMillis, failureThreshold, coolDownMillis);
+                    componentLanes.put(component, lane);
+                }
+            }
+        }
+        return lane;
+    }
+
+    private static synchronized Executor getLaneExecutor() {
+        if (sLaneExecutor == null) {
+            // a thread per busy lane, so a stalled component only blocks its own thread
+            sLaneExecutor = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 30, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                @Override public Thread newThread(@NonNull final Runnable runnable) {
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "UniversalDebug-AnalyticsLane");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sLaneExecutor;
+    }
+
+    @NonNull AnalyticsComponent[] getComponentSnapshot() {
+        return analyticsComponents.snapshot();
+    }
 }
@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import at.amartinz.universaldebug.utils.StripedCounter;
+
+/**
+ * Counts events per name and attribute value, instead of sending every single one, and periodically logs one
+ * summary event per key with the attribute and the count.
+ */
+final class AnalyticsAggregator {
+    /**
+     * The attribute of summary events, which holds the amount of aggregated events.
+     */
+    static final String ATTRIBUTE_COUNT = "count";
+    /**
+     * The attribute of aggregated clicks, which holds the name of the clicked element.
+     */
+    static final String ATTRIBUTE_NAME = "name";
+
+    /**
+     * Attribute values beyond this limit per event get counted as {@link #VALUE_OTHER}, to keep memory bounded.
+     */
+    private static final int MAX_VALUES_PER_EVENT = 256;
+    private static final String VALUE_OTHER = "other";
+
+    private final Analytics analytics;
+    private final ConcurrentHashMap<String, EventCounters> events;
+    private final ScheduledExecutorService executor;
+
+    private static final class EventCounters {
+        private final String attributeKey;
+        private final ConcurrentHashMap<String, StripedCounter> counters = new ConcurrentHashMap<>();
+
+        private EventCounters(String attributeKey) {
+            this.attributeKey = attributeKey;
+        }
+    }
+
+    AnalyticsAggregator(@NonNull Analytics analytics, long intervalMillis) {
+        this.analytics = analytics;
+        this.events = new ConcurrentHashMap<>();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override public Thread newThread(@NonNull Runnable runnable) {
+                final Thread thread = new Thread(runnable, "UniversalDebug-Aggregator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.executor.scheduleAtFixedRate(new Runnable() {
+            @Override public void run() {
+                flush();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Counts an event, does not allocate once the key got counted before.
+     */
+    void count(@NonNull String eventName, @NonNull String attributeKey, @NonNull String attributeValue) {
+        EventCounters eventCounters = events.get(eventName);
+        if (eventCounters == null) {
+            final EventCounters created = new EventCounters(attributeKey);
+            eventCounters = events.putIfAbsent(eventName, created);
+            if (eventCounters == null) {
+                eventCounters = created;
+            }
+        }
+
+        StripedCounter counter = eventCounters.counters.get(attributeValue);
+        if (counter == null) {
+            if (eventCounters.counters.size() >= MAX_VALUES_PER_EVENT) {
+                attributeValue = VALUE_OTHER;
+            }
+            final StripedCounter created = new StripedCounter();
+            counter = eventCounters.counters.putIfAbsent(attributeValue, created);
+            if (counter == null) {
+                counter = created;
+            }
+        }
+        counter.increment();
+    }
+
+    /**
+     * Logs one summary event per counted key and resets the counters.
+     */
+    synchronized void flush() {
+        for (final Map.Entry<String, EventCounters> event : events.entrySet()) {
+            final EventCounters eventCounters = event.getValue();
+            for (final Map.Entry<String, StripedCounter> entry : eventCounters.counters.entrySet()) {
+                final long count = entry.getValue().sumThenReset();
+                if (count == 0) {
+                    continue;
+                }
+                analytics.log(AnalyticsEvent.obtain(event.getKey())
+                        .put(eventCounters.attributeKey, entry.getKey())
+                        .put(ATTRIBUTE_COUNT, count));
+            }
+        }
+    }
+
+    /**
+     * Stops the periodic flush, after flushing one last time.
+     */
+    void shutdown() {
+        executor.shutdown();
+        flush();
+    }
+}
@@ -41,6 +41,18 @@ public abstract class AnalyticsComponent {
      */
     public abstract void logCustom(@NonNull String eventName, @Nullable Map<Object, Object> attributes);
 
+    /**
+     * Logs an event with typed attributes to the analytics service.<br>
+     * Converts the attributes to a map and calls {@link #logCustom(String, Map)} by default, override it to read
+     * the typed values directly.<br>
+     * The event gets recycled afterwards, do not keep a reference to it.
+     *
+     * @param event The event to log
+     */
+    public void logEvent(@NonNull AnalyticsEvent event) {
+        logCustom(event.getName(), event.toMap());
+    }
+
     public abstract void logAppOpened();
 
     public abstract void logClickGeneric(@NonNull String name);
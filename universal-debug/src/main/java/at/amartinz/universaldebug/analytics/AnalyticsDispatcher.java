@@ -0,0 +1,277 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded queue of {@link AnalyticsEvent AnalyticsEvents} and a single background thread, which delivers them
+ * in batches to the {@link AnalyticsComponent AnalyticsComponents}.
+ */
+final class AnalyticsDispatcher implements Runnable {
+    private static final int MAX_BATCH_SIZE = 64;
+
+    private final Analytics analytics;
+    private final int capacity;
+    private final int backpressurePolicy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Condition delivered = lock.newCondition();
+    private final ArrayDeque<AnalyticsEvent> queue;
+    private final ArrayList<AnalyticsEvent> batch;
+    private final AtomicLong droppedCount;
+
+    private final Thread thread;
+    // only modified while holding the lock
+    private boolean isRunning;
+    private boolean isDelivering;
+    // the thread died with events left, which did not get delivered
+    private boolean hasFailed;
+
+    AnalyticsDispatcher(@NonNull Analytics analytics, int capacity, int backpressurePolicy) {
+        this.analytics = analytics;
+        this.capacity = capacity;
+        this.backpressurePolicy = backpressurePolicy;
+
+        this.queue = new ArrayDeque<>(capacity);
+        this.batch = new ArrayList<>(MAX_BATCH_SIZE);
+        this.droppedCount = new AtomicLong();
+
+        this.isRunning = true;
+        this.thread = new Thread(this, "UniversalDebug-Analytics");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return False, if the dispatcher got shut down or its thread died and the caller has to deliver the event
+     * itself
+     */
+    boolean enqueue(@NonNull AnalyticsEvent event) {
+        lock.lock();
+        try {
+            if (!isRunning) {
+                return false;
+            }
+            if (queue.size() >= capacity && !makeRoom(event)) {
+                droppedCount.incrementAndGet();
+                event.recycle();
+                return true;
+            }
+            if (!isRunning) {
+                return false;
+            }
+            queue.addLast(event);
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the backpressure policy, holding the lock.
+     *
+     * @return True, if the event can be added, false if it has to be dropped
+     */
+    private boolean makeRoom(AnalyticsEvent event) {
+        switch (backpressurePolicy) {
+            case Analytics.BACKPRESSURE_BLOCK: {
+                while (queue.size() >= capacity && isRunning) {
+                    notFull.awaitUninterruptibly();
+                }
+                return true;
+            }
+            case Analytics.BACKPRESSURE_DROP_OLDEST: {
+                queue.pollFirst().recycle();
+                droppedCount.incrementAndGet();
+                return true;
+            }
+            default:
+            case Analytics.BACKPRESSURE_DROP_LOW_PRIORITY: {
+                // drop the oldest event with the lowest priority, if it is lower than the new one
+                AnalyticsEvent lowest = null;
+                for (final AnalyticsEvent queued : queue) {
+                    if (lowest == null || queued.priority < lowest.priority) {
+                        lowest = queued;
+                    }
+                }
+                if (lowest == null || lowest.priority >= event.priority) {
+                    return false;
+                }
+                final Iterator<AnalyticsEvent> iterator = queue.iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next() == lowest) {
+                        iterator.remove();
+                        lowest.recycle();
+                        break;
+                    }
+                }
+                droppedCount.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Waits until all events, which got queued before, got delivered.
+     *
+     * @param timeoutMillis How long to wait at most
+     * @return True, if all events got delivered in time
+     */
+    boolean flush(long timeoutMillis) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        lock.lock();
+        try {
+            while (!queue.isEmpty() || isDelivering) {
+                if (remaining <= 0 || hasFailed || !thread.isAlive()) {
+                    return false;
+                }
+                remaining = delivered.awaitNanos(remaining);
+            }
+            return !hasFailed;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops accepting events and waits for the background thread to deliver all queued events.
+     *
+     * @param timeoutMillis How long to wait at most, 0 to wait forever
+     * @return True, if all queued events got delivered
+     */
+    boolean shutdown(long timeoutMillis) {
+        lock.lock();
+        try {
+            isRunning = false;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    @Override public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        try {
+            deliverQueued();
+        } finally {
+            stop();
+        }
+    }
+
+    private void deliverQueued() {
+        while (true) {
+            lock.lock();
+            try {
+                while (queue.isEmpty() && isRunning) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if (queue.isEmpty()) {
+                    // shut down and everything got delivered
+                    return;
+                }
+                while (!queue.isEmpty() && batch.size() < MAX_BATCH_SIZE) {
+                    batch.add(queue.pollFirst());
+                }
+                isDelivering = true;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            // deliver without holding the lock, so logging threads do not wait for the components
+            final AnalyticsComponent[] components = analytics.getComponentSnapshot();
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                analytics.deliver(batch.get(i), components);
+            }
+            batch.clear();
+
+            lock.lock();
+            try {
+                isDelivering = false;
+                delivered.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Also runs if delivering threw, then events are left. Nobody may wait for the thread or hand it events anymore,
+     * a logging thread blocked by {@link Analytics#BACKPRESSURE_BLOCK} would wait forever otherwise.
+     */
+    private void stop() {
+        lock.lock();
+        try {
+            isRunning = false;
+            isDelivering = false;
+            while (!queue.isEmpty()) {
+                queue.pollFirst().recycle();
+                droppedCount.incrementAndGet();
+                hasFailed = true;
+            }
+            notFull.signalAll();
+            delivered.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A custom analytics event with typed attributes, which does not need a {@link Map} or boxed numbers.<br>
+ * <br>
+ * Events get recycled after they got delivered, so get them via {@link #obtain(String)} and do not touch them
+ * anymore after passing them to {@link Analytics#log(AnalyticsEvent)}:<br>
+ * {@code Analytics.get().log(AnalyticsEvent.obtain("purchase").put("item", "coffee").put("price", 2.5));}<br>
+ * <br>
+ * {@link AnalyticsComponent AnalyticsComponents} read the attributes by index, for example:<br>
+ * {@code for (int i = 0; i < event.size(); i++) { if (event.getValueType(i) == AnalyticsEvent.VALUE_LONG) ... }}
+ */
+public final class AnalyticsEvent {
+    public static final int VALUE_LONG = 0;
+    public static final int VALUE_DOUBLE = 1;
+    public static final int VALUE_STRING = 2;
+
+    static final int TYPE_EVENT = 0;
+    static final int TYPE_CUSTOM = 1;
+    static final int TYPE_APP_OPENED = 2;
+    static final int TYPE_CLICK_GENERIC = 3;
+    static final int TYPE_CLICK_BUTTON = 4;
+
+    private static final int VERSION = 1;
+
+    private static final int MAX_POOL_SIZE = 32;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private static final ArrayBlockingQueue<AnalyticsEvent> POOL = new ArrayBlockingQueue<>(MAX_POOL_SIZE);
+
+    int type;
+    int priority;
+    String name;
+    // only used by the map based api
+    Map<Object, Object> attributes;
+
+    private String[] keys;
+    private int[] valueTypes;
+    private long[] longValues;
+    private double[] doubleValues;
+    private String[] stringValues;
+    private int size;
+
+    // the amount of components, which still need the event when delivering in isolation
+    private final AtomicInteger references = new AtomicInteger();
+
+    private AnalyticsEvent() {
+        keys = new String[INITIAL_CAPACITY];
+        valueTypes = new int[INITIAL_CAPACITY];
+        longValues = new long[INITIAL_CAPACITY];
+        doubleValues = new double[INITIAL_CAPACITY];
+        stringValues = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param name The name of the event
+     * @return A recycled or new event, with {@link Analytics#PRIORITY_NORMAL}
+     */
+    @NonNull public static AnalyticsEvent obtain(@NonNull String name) {
+        return obtain(TYPE_EVENT, Analytics.PRIORITY_NORMAL, name, null);
+    }
+
+    @NonNull static AnalyticsEvent obtain(int type, int priority, String name, Map<Object, Object> attributes) {
+        AnalyticsEvent event = POOL.poll();
+        if (event == null) {
+            event = new AnalyticsEvent();
+        }
+        event.set(type, priority, name, attributes);
+        return event;
+    }
+
+    /**
+     * @return A new event, which is not part of the pool, for holding copies of events
+     */
+    @NonNull static AnalyticsEvent allocate() {
+        return new AnalyticsEvent();
+    }
+
+    void set(int type, int priority, String name, Map<Object, Object> attributes) {
+        this.type = type;
+        this.priority = priority;
+        this.name = name;
+        this.attributes = attributes;
+    }
+
+    /**
+     * Replaces the content of this event with the content of the given one.
+     */
+    void copyFrom(@NonNull AnalyticsEvent event) {
+        clear();
+        set(event.type, event.priority, event.name, event.attributes);
+        for (int i = 0; i < event.size; i++) {
+            final int index = add(event.keys[i], event.valueTypes[i]);
+            longValues[index] = event.longValues[i];
+            doubleValues[index] = event.doubleValues[i];
+            stringValues[index] = event.stringValues[i];
+        }
+    }
+
+    void clear() {
+        name = null;
+        attributes = null;
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(stringValues, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Clears the event and returns it to the pool, called once it got delivered to all components.
+     */
+    void recycle() {
+        clear();
+        POOL.offer(this);
+    }
+
+    void retain(int count) {
+        references.addAndGet(count);
+    }
+
+    /**
+     * Recycles the event once the last reference got released.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            recycle();
+        }
+    }
+
+    /**
+     * @param priority The priority of the event, decides which events get dropped first in asynchronous mode
+     * @return The same {@link AnalyticsEvent} instance to allow chained calls
+     */
+    public AnalyticsEvent setPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
+    public AnalyticsEvent put(@NonNull String key, long value) {
+        final int index = add(key, VALUE_LONG);
+        longValues[index] = value;
+        return this;
+    }
+
+    public AnalyticsEvent put(@NonNull String key, double value) {
+        final int index = add(key, VALUE_DOUBLE);
+        doubleValues[index] = value;
+        return this;
+    }
+
+    public AnalyticsEvent put(@NonNull String key, @Nullable String value) {
+        final int index = add(key, VALUE_STRING);
+        stringValues[index] = value;
+        return this;
+    }
+
+    private int add(String key, int valueType) {
+        if (size == keys.length) {
+            final int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            valueTypes = Arrays.copyOf(valueTypes, capacity);
+            longValues = Arrays.copyOf(longValues, capacity);
+            doubleValues = Arrays.copyOf(doubleValues, capacity);
+            stringValues = Arrays.copyOf(stringValues, capacity);
+        }
+        keys[size] = key;
+        valueTypes[size] = valueType;
+        return size++;
+    }
+
+    @NonNull public String getName() {
+        return name;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return The amount of attributes
+     */
+    public int size() {
+        return size;
+    }
+
+    @NonNull public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return One of {@link #VALUE_LONG}, {@link #VALUE_DOUBLE} and {@link #VALUE_STRING}
+     */
+    public int getValueType(int index) {
+        return valueTypes[index];
+    }
+
+    public long getLong(int index) {
+        return longValues[index];
+    }
+
+    public double getDouble(int index) {
+        return doubleValues[index];
+    }
+
+    @Nullable public String getString(int index) {
+        return stringValues[index];
+    }
+
+    /**
+     * @return The attributes as a new map, for components which only support the map based api
+     */
+    @NonNull public Map<Object, Object> toMap() {
+        final HashMap<Object, Object> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            switch (valueTypes[i]) {
+                case VALUE_LONG: {
+                    map.put(keys[i], longValues[i]);
+                    break;
+                }
+                case VALUE_DOUBLE: {
+                    map.put(keys[i], doubleValues[i]);
+                    break;
+                }
+                default:
+                case VALUE_STRING: {
+                    map.put(keys[i], stringValues[i]);
+                    break;
+                }
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Serializes the event, the attributes of the map based api are kept as {@link Long}, {@link Double} or
+     * {@link String}, other values get converted to a string.
+     */
+    @NonNull byte[] toBytes() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeByte(type);
+            out.writeByte(priority);
+            writeString(out, name);
+
+            out.writeShort(size);
+            for (int i = 0; i < size; i++) {
+                writeString(out, keys[i]);
+                writeValue(out, valueTypes[i], longValues[i], doubleValues[i], stringValues[i]);
+            }
+
+            if (attributes == null) {
+                out.writeShort(-1);
+            } else {
+                out.writeShort(attributes.size());
+                for (final Map.Entry<Object, Object> entry : attributes.entrySet()) {
+                    writeString(out, String.valueOf(entry.getKey()));
+                    final Object value = entry.getValue();
+                    if (value instanceof Float || value instanceof Double) {
+                        writeValue(out, VALUE_DOUBLE, 0, ((Number) value).doubleValue(), null);
+                    } else if (value instanceof Number) {
+                        writeValue(out, VALUE_LONG, ((Number) value).longValue(), 0, null);
+                    } else {
+                        writeValue(out, VALUE_STRING, 0, 0, (value != null) ? value.toString() : null);
+                    }
+                }
+            }
+            out.flush();
+        } catch (IOException ignored) {
+            // does not happen when writing to a ByteArrayOutputStream
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return An event obtained from the pool, recycle it once it got delivered
+     */
+    @NonNull static AnalyticsEvent fromBytes(@NonNull byte[] bytes) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        final int version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown analytics event version " + version);
+        }
+        final int type = in.readByte();
+        final int priority = in.readByte();
+        final String name = readString(in);
+
+        final AnalyticsEvent event = obtain(type, priority, name, null);
+        try {
+            final int size = in.readShort();
+            for (int i = 0; i < size; i++) {
+                final String key = String.valueOf(readString(in));
+                switch (in.readByte()) {
+                    case VALUE_LONG: {
+                        event.put(key, in.readLong());
+                        break;
+                    }
+                    case VALUE_DOUBLE: {
+                        event.put(key, in.readDouble());
+                        break;
+                    }
+                    default: {
+                        event.put(key, readString(in));
+                        break;
+                    }
+                }
+            }
+
+            final int attributeCount = in.readShort();
+            if (attributeCount >= 0) {
+                event.attributes = new HashMap<>(attributeCount * 2);
+                for (int i = 0; i < attributeCount; i++) {
+                    final String key = readString(in);
+                    switch (in.readByte()) {
+                        case VALUE_LONG: {
+                            event.attributes.put(key, in.readLong());
+                            break;
+                        }
+                        case VALUE_DOUBLE: {
+                            event.attributes.put(key, in.readDouble());
+                            break;
+                        }
+                        default: {
+                            event.attributes.put(key, readString(in));
+                            break;
+                        }
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            event.recycle();
+            throw ioe;
+        }
+        return event;
+    }
+
+    private static void writeValue(DataOutputStream out, int valueType, long longValue, double doubleValue,
+            String stringValue) throws IOException {
+        out.writeByte(valueType);
+        switch (valueType) {
+            case VALUE_LONG: {
+                out.writeLong(longValue);
+                break;
+            }
+            case VALUE_DOUBLE: {
+                out.writeDouble(doubleValue);
+                break;
+            }
+            default: {
+                writeString(out, stringValue);
+                break;
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        // writeUTF is limited to 64K
+        final byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    void deliverTo(AnalyticsComponent component) {
+        switch (type) {
+            case TYPE_EVENT: {
+                component.logEvent(this);
+                break;
+            }
+            case TYPE_CUSTOM: {
+                component.logCustom(name, attributes);
+                break;
+            }
+            case TYPE_APP_OPENED: {
+                component.logAppOpened();
+                break;
+            }
+            case TYPE_CLICK_GENERIC: {
+                component.logClickGeneric(name);
+                break;
+            }
+            case TYPE_CLICK_BUTTON: {
+                component.logClickButton(name);
+                break;
+            }
+        }
+    }
+}
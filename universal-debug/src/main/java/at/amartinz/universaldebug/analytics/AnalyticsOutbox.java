@@ -0,0 +1,391 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.amartinz.universaldebug.utils.DurableQueue;
+
+/**
+ * A single, long-lived background thread which persists {@link AnalyticsEvent AnalyticsEvents} into a
+ * {@link DurableQueue} in batches and then delivers them to the {@link AnalyticsComponent AnalyticsComponents}.<br>
+ * Events get acknowledged once they got delivered, events left over from a previous run get replayed first.
+ * Delivery is at least once, an event may get delivered again if the process dies right after delivering it.
+ */
+final class AnalyticsOutbox implements Runnable {
+    private static final String TAG = "AnalyticsOutbox";
+
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /**
+     * How often to check for components, while there are events but no components to deliver them to.
+     */
+    private static final long BACKLOG_WAIT = 1000;
+
+    // wakes up the outbox thread, never gets persisted
+    private static final AnalyticsEvent WAKE_UP = AnalyticsEvent.obtain(AnalyticsEvent.TYPE_EVENT, 0, null, null);
+
+    private final Analytics analytics;
+    private final File directory;
+    private final ArrayBlockingQueue<AnalyticsEvent> incoming;
+    private final ArrayList<AnalyticsEvent> batch;
+    private final AtomicLong droppedCount;
+
+    private volatile boolean isRunning;
+    private volatile DurableQueue durableQueue;
+    private volatile CountDownLatch flushLatch;
+    private Thread thread;
+    private Thread predecessor;
+
+    AnalyticsOutbox(@NonNull Analytics analytics, @NonNull File directory) {
+        this.analytics = analytics;
+        this.directory = directory;
+        this.incoming = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.batch = new ArrayList<>(MAX_BATCH_SIZE);
+        this.droppedCount = new AtomicLong();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return The amount of events, which did not get delivered yet
+     */
+    int getPendingCount() {
+        final DurableQueue queue = durableQueue;
+        return incoming.size() + ((queue != null) ? queue.size() : 0);
+    }
+
+    /**
+     * Starts the outbox thread, which also replays events left over from previous runs.
+     *
+     * @param predecessor The thread of the previous outbox, which may still be persisting into the same directory.
+     *                    Gets waited for in the background, before the queue gets opened.
+     */
+    synchronized void start(@Nullable Thread predecessor) {
+        if (isRunning) {
+            return;
+        }
+        isRunning = true;
+        this.predecessor = predecessor;
+        thread = new Thread(this, "UniversalDebug-AnalyticsOutbox");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues an event for persisting. Never blocks, if the queue is full the event gets dropped and counted.
+     *
+     * @return False, if the outbox thread is not running and the caller has to deliver the event itself
+     */
+    boolean enqueue(@NonNull AnalyticsEvent event) {
+        if (!isRunning) {
+            return false;
+        }
+        if (!incoming.offer(event)) {
+            event.recycle();
+            droppedCount.incrementAndGet();
+        }
+        return true;
+    }
+
+    /**
+     * Stops the outbox thread after it has persisted all queued events.<br>
+     * Events, which did not get delivered yet, get replayed after the next start.
+     *
+     * @return The outbox thread, which keeps running until it closed the queue, or null if it was not running
+     */
+    @Nullable Thread shutdown() {
+        final Thread stoppingThread;
+        synchronized (this) {
+            if (!isRunning) {
+                return null;
+            }
+            isRunning = false;
+            stoppingThread = thread;
+            thread = null;
+        }
+        // do not interrupt, as an interrupt would close the file channel while writing
+        incoming.offer(WAKE_UP);
+        return stoppingThread;
+    }
+
+    /**
+     * Waits until all events, which got queued before, got persisted.
+     *
+     * @param timeoutMillis How long to wait at most
+     * @return True, if everything got persisted in time
+     */
+    boolean flush(long timeoutMillis) {
+        CountDownLatch latch;
+        synchronized (this) {
+            if (!isRunning) {
+                return true;
+            }
+            latch = flushLatch;
+            if (latch == null) {
+                latch = new CountDownLatch(1);
+                flushLatch = latch;
+            }
+        }
+        incoming.offer(WAKE_UP);
+        try {
+            // the thread also releases the latch, if it died with events left
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS) && (isRunning || incoming.isEmpty());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        final Thread previous;
+        synchronized (this) {
+            previous = predecessor;
+            predecessor = null;
+        }
+        if (previous != null) {
+            // two threads appending to and compacting the same files would corrupt the queue
+            joinUninterruptibly(previous);
+        }
+
+        final DurableQueue queue;
+        try {
+            queue = new DurableQueue(directory);
+        } catch (IOException ioe) {
+            Log.e(TAG, "Could not open analytics outbox!", ioe);
+            // deliver without persisting, rather than losing everything
+            try {
+                runWithoutQueue();
+            } finally {
+                stop();
+            }
+            return;
+        }
+        durableQueue = queue;
+
+        try {
+            runWithQueue(queue);
+        } finally {
+            // the lock of the queue has to get released, also if the thread dies
+            try {
+                queue.close();
+            } catch (IOException ioe) {
+                Log.e(TAG, "Could not close analytics outbox!", ioe);
+            }
+            durableQueue = null;
+            stop();
+        }
+    }
+
+    private void runWithQueue(DurableQueue queue) {
+        while (isRunning || !incoming.isEmpty()) {
+            final AnalyticsEvent first;
+            try {
+                first = incoming.poll((queue.size() > 0) ? BACKLOG_WAIT : Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                continue;
+            }
+
+            if (first != null) {
+                batch.add(first);
+                incoming.drainTo(batch, MAX_BATCH_SIZE - 1);
+            }
+            // a batch which got persisted can be delivered from memory, unless there are older events to replay
+            final boolean hadBacklog = queue.size() > 0;
+            final boolean persisted = persist(queue);
+
+            final AnalyticsComponent[] components = analytics.getComponentSnapshot();
+            if (components.length != 0) {
+                if (!persisted) {
+                    deliverBatch(components);
+                } else if (!hadBacklog) {
+                    final int count = deliverBatch(components);
+                    acknowledge(queue, count);
+                } else {
+                    recycleBatch();
+                    replay(queue, components);
+                }
+            } else {
+                // keep everything on the disk until there is someone to deliver to
+                recycleBatch();
+            }
+
+            final CountDownLatch latch = flushLatch;
+            if (latch != null && incoming.isEmpty()) {
+                synchronized (this) {
+                    flushLatch = null;
+                }
+                latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * Also runs if the thread dies, so callers deliver directly and do not wait for it anymore.
+     */
+    private void stop() {
+        final CountDownLatch latch;
+        synchronized (this) {
+            isRunning = false;
+            latch = flushLatch;
+            flushLatch = null;
+        }
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWithoutQueue() {
+        while (isRunning || !incoming.isEmpty()) {
+            try {
+                batch.add(incoming.take());
+            } catch (InterruptedException ie) {
+                continue;
+            }
+            incoming.drainTo(batch, MAX_BATCH_SIZE - 1);
+            deliverBatch(analytics.getComponentSnapshot());
+
+            final CountDownLatch latch = flushLatch;
+            if (latch != null && incoming.isEmpty()) {
+                synchronized (this) {
+                    flushLatch = null;
+                }
+                latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * @return True, if all events of the batch got persisted
+     */
+    private boolean persist(DurableQueue queue) {
+        try {
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                final AnalyticsEvent event = batch.get(i);
+                if (event != WAKE_UP) {
+                    queue.append(event.toBytes());
+                }
+            }
+            // a single sync for the whole batch
+            queue.sync();
+            return true;
+        } catch (IOException ioe) {
+            Log.e(TAG, "Could not persist analytics events!", ioe);
+            return false;
+        }
+    }
+
+    /**
+     * Delivers and recycles the events of the batch.
+     *
+     * @return The amount of delivered events
+     */
+    private int deliverBatch(AnalyticsComponent[] components) {
+        int count = 0;
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            final AnalyticsEvent event = batch.get(i);
+            if (event == WAKE_UP) {
+                continue;
+            }
+            analytics.deliver(event, components);
+            count++;
+        }
+        batch.clear();
+        return count;
+    }
+
+    private void recycleBatch() {
+        for (int i = 0, size = batch.size(); i < size; i++) {
+            final AnalyticsEvent event = batch.get(i);
+            if (event != WAKE_UP) {
+                event.recycle();
+            }
+        }
+        batch.clear();
+    }
+
+    /**
+     * Delivers all persisted events, oldest first.
+     */
+    private void replay(DurableQueue queue, AnalyticsComponent[] components) {
+        try {
+            while (queue.size() > 0) {
+                final List<byte[]> records = queue.peek(MAX_BATCH_SIZE);
+                for (final byte[] record : records) {
+                    final AnalyticsEvent event;
+                    try {
+                        event = AnalyticsEvent.fromBytes(record);
+                    } catch (IOException ioe) {
+                        // can never be delivered, skip it
+                        continue;
+                    }
+                    analytics.deliver(event, components);
+                }
+                queue.remove(records.size());
+            }
+        } catch (IOException ioe) {
+            Log.e(TAG, "Could not replay analytics events!", ioe);
+        }
+    }
+
+    private void acknowledge(DurableQueue queue, int count) {
+        try {
+            queue.remove(count);
+        } catch (IOException ioe) {
+            Log.e(TAG, "Could not acknowledge analytics events!", ioe);
+        }
+    }
+}
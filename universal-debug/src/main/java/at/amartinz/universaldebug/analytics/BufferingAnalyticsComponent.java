@@ -0,0 +1,209 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Map;
+
+/**
+ * Wraps an {@link AnalyticsComponent}, whose analytics service is not ready yet, for example because it gets
+ * initialized in the background.<br>
+ * Events get buffered until {@link #markReady()} gets called, then they get replayed to the wrapped component in
+ * order and all further events go to it directly. Logging never waits for the replay.<br>
+ * <br>
+ * The buffer is bounded and allocated up front, events which do not fit anymore get dropped and counted.
+ * Attribute maps passed to {@link #logCustom(String, Map)} get buffered as they are, do not modify them afterwards.
+ */
+public class BufferingAnalyticsComponent extends AnalyticsComponent {
+    private static final String TAG = "BufferingAnalytics";
+
+    public static final int DEFAULT_CAPACITY = 128;
+
+    public static final int STATE_BUFFERING = 0;
+    public static final int STATE_REPLAYING = 1;
+    public static final int STATE_READY = 2;
+
+    private final AnalyticsEvent[] buffer;
+
+    private volatile AnalyticsComponent delegate;
+    private volatile int state;
+
+    // only modified while holding the lock
+    private int head;
+    private int count;
+    private long droppedCount;
+
+    /**
+     * @see #BufferingAnalyticsComponent(AnalyticsComponent, int)
+     */
+    public BufferingAnalyticsComponent(@Nullable AnalyticsComponent delegate) {
+        this(delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param delegate The component to replay to, may also be passed later via
+     *                 {@link #markReady(AnalyticsComponent)}, if it can not be created yet
+     * @param capacity The maximum amount of buffered events
+     */
+    public BufferingAnalyticsComponent(@Nullable AnalyticsComponent delegate, int capacity) {
+        this.delegate = delegate;
+        this.buffer = new AnalyticsEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            buffer[i] = AnalyticsEvent.allocate();
+        }
+        this.state = STATE_BUFFERING;
+    }
+
+    @Nullable public AnalyticsComponent getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return One of {@link #STATE_BUFFERING}, {@link #STATE_REPLAYING} and {@link #STATE_READY}
+     */
+    public int getState() {
+        return state;
+    }
+
+    public synchronized int getBufferedCount() {
+        return count;
+    }
+
+    /**
+     * @return The amount of events, which got dropped because the buffer was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Sets the component to replay to and marks it as ready, see {@link #markReady()}.
+     */
+    public void markReady(@NonNull AnalyticsComponent delegate) {
+        this.delegate = delegate;
+        markReady();
+    }
+
+    /**
+     * Replays the buffered events to the wrapped component on the calling thread, events logged meanwhile get
+     * replayed as well. Afterwards events go to the wrapped component directly.
+     */
+    public void markReady() {
+        final AnalyticsComponent component = delegate;
+        if (component == null) {
+            throw new IllegalStateException("No component to replay to");
+        }
+        synchronized (this) {
+            if (state != STATE_BUFFERING) {
+                return;
+            }
+            state = STATE_REPLAYING;
+        }
+
+        while (true) {
+            final AnalyticsEvent event;
+            synchronized (this) {
+                if (count == 0) {
+                    state = STATE_READY;
+                    return;
+                }
+                // the slot stays taken while replaying it, so logging threads can not overwrite it
+                event = buffer[head];
+            }
+
+            try {
+                event.deliverTo(component);
+            } catch (RuntimeException re) {
+                Log.e(TAG, "Could not replay analytics event!", re);
+            }
+
+            synchronized (this) {
+                event.clear();
+                head = (head + 1) % buffer.length;
+                count--;
+            }
+        }
+    }
+
+    @Override public void logCustom(@NonNull String eventName, @Nullable Map<Object, Object> attributes) {
+        if (!buffer(AnalyticsEvent.TYPE_CUSTOM, eventName, attributes, null)) {
+            delegate.logCustom(eventName, attributes);
+        }
+    }
+
+    @Override public void logEvent(@NonNull AnalyticsEvent event) {
+        if (!buffer(AnalyticsEvent.TYPE_EVENT, null, null, event)) {
+            delegate.logEvent(event);
+        }
+    }
+
+    @Override public void logAppOpened() {
+        if (!buffer(AnalyticsEvent.TYPE_APP_OPENED, null, null, null)) {
+            delegate.logAppOpened();
+        }
+    }
+
+    @Override public void logClickGeneric(@NonNull String name) {
+        if (!buffer(AnalyticsEvent.TYPE_CLICK_GENERIC, name, null, null)) {
+            delegate.logClickGeneric(name);
+        }
+    }
+
+    @Override public void logClickButton(@NonNull String name) {
+        if (!buffer(AnalyticsEvent.TYPE_CLICK_BUTTON, name, null, null)) {
+            delegate.logClickButton(name);
+        }
+    }
+
+    /**
+     * @return False, if the wrapped component is ready and the event has to be passed to it directly
+     */
+    private boolean buffer(int type, String name, Map<Object, Object> attributes, AnalyticsEvent event) {
+        if (state == STATE_READY) {
+            return false;
+        }
+        synchronized (this) {
+            if (state == STATE_READY) {
+                return false;
+            }
+            if (count == buffer.length) {
+                droppedCount++;
+                return true;
+            }
+            final AnalyticsEvent slot = buffer[(head + count) % buffer.length];
+            if (event != null) {
+                // the event gets recycled after logging, keep a copy
+                slot.copyFrom(event);
+            } else {
+                slot.set(type, Analytics.PRIORITY_NORMAL, name, attributes);
+            }
+            count++;
+            return true;
+        }
+    }
+}
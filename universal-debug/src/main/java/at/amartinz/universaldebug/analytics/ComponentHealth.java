@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+
+/**
+ * A snapshot of the health of an {@link AnalyticsComponent}, when delivering in isolation, see
+ * {@link Analytics#setIsolation(int, long, int, long)}.
+ */
+public final class ComponentHealth {
+    /**
+     * The component is healthy and gets all events.
+     */
+    public static final int STATE_CLOSED = 0;
+    /**
+     * The component failed or was too slow repeatedly, events get shed until the cool-down period is over.
+     */
+    public static final int STATE_OPEN = 1;
+    /**
+     * The cool-down period is over, a single event gets delivered to test whether the component recovered.
+     */
+    public static final int STATE_HALF_OPEN = 2;
+
+    private final AnalyticsComponent component;
+    private final int state;
+    private final int queueDepth;
+    private final long deliveredCount;
+    private final long failedCount;
+    private final long shedCount;
+    private final long averageLatency;
+    private final long maxLatency;
+
+    ComponentHealth(AnalyticsComponent component, int state, int queueDepth, long deliveredCount, long failedCount,
+            long shedCount, long averageLatency, long maxLatency) {
+        this.component = component;
+        this.state = state;
+        this.queueDepth = queueDepth;
+        this.deliveredCount = deliveredCount;
+        this.failedCount = failedCount;
+        this.shedCount = shedCount;
+        this.averageLatency = averageLatency;
+        this.maxLatency = maxLatency;
+    }
+
+    @NonNull public AnalyticsComponent getComponent() {
+        return component;
+    }
+
+    /**
+     * @return One of {@link #STATE_CLOSED}, {@link #STATE_OPEN} and {@link #STATE_HALF_OPEN}
+     */
+    public int getState() {
+        return state;
+    }
+
+    public boolean isHealthy() {
+        return state == STATE_CLOSED;
+    }
+
+    /**
+     * @return The amount of events waiting for the component
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return The amount of events the component got, including failed and slow ones
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * @return The amount of events the component threw an exception for
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return The amount of events, which did not get delivered because the circuit was open or the queue was full
+     */
+    public long getShedCount() {
+        return shedCount;
+    }
+
+    /**
+     * @return The moving average of the time the component took per event, in nanoseconds
+     */
+    public long getAverageLatency() {
+        return averageLatency;
+    }
+
+    /**
+     * @return The maximum time the component took for an event, in nanoseconds
+     */
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    @Override public String toString() {
+        return String.format(Locale.ENGLISH,
+                "%s: state=%s, queued=%d, delivered=%d, failed=%d, shed=%d, avg=%.3fms, max=%.3fms",
+                component.getClass().getSimpleName(), mapStateToString(state), queueDepth, deliveredCount,
+                failedCount, shedCount, averageLatency / 1000000f, maxLatency / 1000000f);
+    }
+
+    private static String mapStateToString(int state) {
+        switch (state) {
+            case STATE_OPEN: {
+                return "open";
+            }
+            case STATE_HALF_OPEN: {
+                return "half-open";
+            }
+            default:
+            case STATE_CLOSED: {
+                return "closed";
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Delivers events to a single {@link AnalyticsComponent}, one after another, on a thread of a shared pool.<br>
+ * Guards the other components and the logging threads against the component with a circuit breaker: if it throws
+ * or takes longer than allowed too often in a row, events for it get shed for a cool-down period. After that a
+ * single event probes whether it recovered.<br>
+ * There is at most one lane per component, so its calls never overlap. Lanes get reconfigured instead of replaced,
+ * and a closed lane stays registered until its last call returned.
+ */
+final class ComponentLane implements Runnable {
+    private static final String TAG = "ComponentLane";
+
+    private final AnalyticsComponent component;
+    private final Executor executor;
+    private final ConcurrentHashMap<AnalyticsComponent, ComponentLane> lanes;
+
+    // everything below is guarded by this
+    private final ArrayDeque<AnalyticsEvent> queue;
+    private boolean isScheduled;
+    private boolean isClosed;
+
+    private int capacity;
+    private long slowCallNanos;
+    private int failureThreshold;
+    private long coolDownNanos;
+
+    private int state = ComponentHealth.STATE_CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean isProbing;
+
+    private long deliveredCount;
+    private long failedCount;
+    private long shedCount;
+    private long averageLatency;
+    private long maxLatency;
+
+    /**
+     * @param lanes The lanes of all components, a closed lane removes itself once it is idle
+     */
+    ComponentLane(@NonNull AnalyticsComponent component, @NonNull Executor executor,
+            @NonNull ConcurrentHashMap<AnalyticsComponent, ComponentLane> lanes, int capacity, long slowCallMillis,
+            int failureThreshold, long coolDownMillis) {
+        this.component = component;
+        this.executor = executor;
+        this.lanes = lanes;
+        this.queue = new ArrayDeque<>(Math.min(capacity, 64));
+        configure(capacity, slowCallMillis, failureThreshold, coolDownMillis);
+    }
+
+    /**
+     * Applies new settings, queued events and the state of the circuit breaker are kept.
+     */
+    synchronized void configure(int capacity, long slowCallMillis, int failureThreshold, long coolDownMillis) {
+        this.capacity = capacity;
+        this.slowCallNanos = slowCallMillis * 1000000L;
+        this.failureThreshold = failureThreshold;
+        this.coolDownNanos = coolDownMillis * 1000000L;
+    }
+
+    /**
+     * Sheds the queued events and all further ones, as the component got removed.<br>
+     * A call in progress still finishes, the lane stays registered until then, so a lane for the same component
+     * can not get created meanwhile.
+     */
+    synchronized void close() {
+        isClosed = true;
+        shedQueue();
+        if (!isScheduled) {
+            lanes.remove(component, this);
+        }
+    }
+
+    /**
+     * Accepts events again, as the component got added again before the lane was idle.
+     */
+    synchronized void reopen() {
+        isClosed = false;
+    }
+
+    /**
+     * Queues the event for the component, never blocks.
+     *
+     * @return False, if the event got shed, the caller keeps its reference then
+     */
+    synchronized boolean offer(@NonNull AnalyticsEvent event) {
+        if (isClosed || !allowEvent(System.nanoTime()) || queue.size() >= capacity) {
+            shedCount++;
+            return false;
+        }
+        queue.addLast(event);
+        if (!isScheduled) {
+            isScheduled = true;
+            executor.execute(this);
+        }
+        return true;
+    }
+
+    @NonNull synchronized ComponentHealth getHealth() {
+        // report an expired cool-down as half open, even if no event arrived since
+        final int currentState = (state == ComponentHealth.STATE_OPEN && System.nanoTime() - openedAt >= coolDownNanos)
+                ? ComponentHealth.STATE_HALF_OPEN : state;
+        return new ComponentHealth(component, currentState, queue.size(), deliveredCount, failedCount, shedCount,
+                averageLatency, maxLatency);
+    }
+
+    @Override public void run() {
+        while (true) {
+            final AnalyticsEvent event;
+            synchronized (this) {
+                event = queue.pollFirst();
+                if (event == null) {
+                    isScheduled = false;
+                    if (isClosed) {
+                        lanes.remove(component, this);
+                    }
+                    return;
+                }
+            }
+
+            final long start = System.nanoTime();
+            boolean failed = false;
+            try {
+                event.deliverTo(component);
+            } catch (Throwable throwable) {
+                // also errors, they would kill the pool thread and leave the lane scheduled forever
+                failed = true;
+                Log.e(TAG, "Could not deliver analytics event!", throwable);
+            }
+            final long end = System.nanoTime();
+            event.release();
+
+            record(end, end - start, failed);
+        }
+    }
+
+    private boolean allowEvent(long now) {
+        switch (state) {
+            case ComponentHealth.STATE_OPEN: {
+                if (now - openedAt < coolDownNanos) {
+                    return false;
+                }
+                state = ComponentHealth.STATE_HALF_OPEN;
+                isProbing = false;
+                return allowProbe();
+            }
+            case ComponentHealth.STATE_HALF_OPEN: {
+                return allowProbe();
+            }
+            default:
+            case ComponentHealth.STATE_CLOSED: {
+                return true;
+            }
+        }
+    }
+
+    private boolean allowProbe() {
+        // only a single probe, until it tells whether the component recovered
+        if (isProbing) {
+            return false;
+        }
+        isProbing = true;
+        return true;
+    }
+
+    private synchronized void record(long now, long latency, boolean failed) {
+        deliveredCount++;
+        // exponential moving average, with a weight of 1/8 for the new value
+        averageLatency = (deliveredCount == 1) ? latency : averageLatency + ((latency - averageLatency) >> 3);
+        maxLatency = Math.max(maxLatency, latency);
+
+        if (failed) {
+            failedCount++;
+        }
+        if (failed || latency > slowCallNanos) {
+            consecutiveFailures++;
+            if (state == ComponentHealth.STATE_HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                open(now);
+            }
+        } else {
+            consecutiveFailures = 0;
+            if (state == ComponentHealth.STATE_HALF_OPEN) {
+                state = ComponentHealth.STATE_CLOSED;
+                isProbing = false;
+            }
+        }
+    }
+
+    private void open(long now) {
+        state = ComponentHealth.STATE_OPEN;
+        openedAt = now;
+        isProbing = false;
+        consecutiveFailures = 0;
+
+        // the queued events would only keep the component busy
+        shedQueue();
+    }
+
+    private void shedQueue() {
+        AnalyticsEvent event;
+        while ((event = queue.pollFirst()) != null) {
+            event.release();
+            shedCount++;
+        }
+    }
+}
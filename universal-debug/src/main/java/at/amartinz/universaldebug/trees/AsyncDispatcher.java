@@ -0,0 +1,275 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free multi-producer single-consumer ring buffer of preallocated events, in the style of the
+ * <a href="https://lmax-exchange.github.io/disruptor/">Disruptor</a>.<br>
+ * <br>
+ * Logging threads claim a sequence with a CAS, copy the event into the preallocated slot and publish it by
+ * storing the sequence into the slot's availability marker. A single dispatcher thread consumes the events in
+ * order and forwards them to the {@link BaseTreeComponent BaseTreeComponents}.
+ */
+final class AsyncDispatcher implements Runnable {
+    private static final String TAG = "AsyncDispatcher";
+
+    // set in the claim sequence by the dispatcher thread before it exits, no further sequence can get claimed
+    private static final long CLOSED = 1L << 62;
+
+    private static final class Event {
+        int priority;
+        String tag;
+        String message;
+        Throwable throwable;
+    }
+
+    private final BaseTree baseTree;
+    private final WaitStrategy waitStrategy;
+    private final boolean blockWhenFull;
+
+    private final Event[] events;
+    private final int capacity;
+    private final int mask;
+    // holds the sequence of the event, once the event in the slot with the same index got published
+    private final AtomicLongArray published;
+
+    // the next sequence to claim, possibly with the CLOSED bit set
+    private final AtomicLong claimSequence;
+    // the next sequence the dispatcher thread is going to consume
+    private final AtomicLong consumerSequence;
+    private final AtomicLong droppedCount;
+
+    private final Thread thread;
+    private volatile boolean isRunning;
+
+    AsyncDispatcher(@NonNull BaseTree baseTree, int capacity, @NonNull WaitStrategy waitStrategy,
+            boolean blockWhenFull) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity has to be a power of two, got " + capacity);
+        }
+
+        this.baseTree = baseTree;
+        this.waitStrategy = waitStrategy;
+        this.blockWhenFull = blockWhenFull;
+
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.events = new Event[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            events[i] = new Event();
+            published.set(i, -1);
+        }
+
+        this.claimSequence = new AtomicLong();
+        this.consumerSequence = new AtomicLong();
+        this.droppedCount = new AtomicLong();
+
+        this.isRunning = true;
+        this.thread = new Thread(this, "UniversalDebug-Dispatcher");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return False, if the dispatcher got shut down and the caller has to dispatch the event itself
+     */
+    boolean publish(int priority, String tag, String message, Throwable t) {
+        long sequence;
+        while (true) {
+            if (!isRunning) {
+                return false;
+            }
+            sequence = claimSequence.get();
+            if ((sequence & CLOSED) != 0) {
+                // the dispatcher thread is gone, nobody would consume a claimed slot anymore
+                return false;
+            }
+            if (sequence - consumerSequence.get() >= capacity) {
+                if (!blockWhenFull) {
+                    droppedCount.incrementAndGet();
+                    return true;
+                }
+                // wait for the dispatcher thread to free a slot, if it exits it closes the claim sequence
+                Thread.yield();
+                continue;
+            }
+            // fails if the dispatcher thread closed the claim sequence in the meantime
+            if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                break;
+            }
+        }
+
+        final int index = (int) (sequence & mask);
+        final Event event = events[index];
+        event.priority = priority;
+        event.tag = tag;
+        event.message = message;
+        event.throwable = t;
+        published.lazySet(index, sequence);
+
+        waitStrategy.signal();
+        return true;
+    }
+
+    /**
+     * Stops accepting events and waits for the dispatcher thread to dispatch all pending events.<br>
+     * Does not wait, if called from the dispatcher thread itself, for example by a component.
+     *
+     * @param timeoutMillis How long to wait at most, 0 to wait forever
+     * @return True, if all pending events got dispatched
+     */
+    boolean shutdown(long timeoutMillis) {
+        isRunning = false;
+        waitStrategy.signal();
+        if (Thread.currentThread() == thread) {
+            return false;
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return !thread.isAlive();
+    }
+
+    /**
+     * Waits until all events, which got published before, got dispatched. Does not stop accepting events.
+     *
+     * @param timeoutMillis How long to wait at most
+     * @return True, if all events got dispatched in time
+     */
+    boolean awaitDispatched(long timeoutMillis) {
+        if (Thread.currentThread() == thread) {
+            // the events after the current one can not get dispatched while we wait
+            return false;
+        }
+        final long target = claimSequence.get() & ~CLOSED;
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (consumerSequence.get() < target) {
+            if (!thread.isAlive() || System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            waitStrategy.signal();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        try {
+            consume();
+        } finally {
+            // also reached if the thread dies, logging threads then dispatch on their own instead of waiting for us
+            isRunning = false;
+            close();
+        }
+    }
+
+    private void consume() {
+        long next = 0;
+        long reportedDropped = 0;
+        int idleCounter = 0;
+        while (true) {
+            final int index = (int) (next & mask);
+            if (published.get(index) == next) {
+                final Event event = events[index];
+                dispatch(event.priority, event.tag, event.message, event.throwable);
+                event.tag = null;
+                event.message = null;
+                event.throwable = null;
+
+                next++;
+                // frees the slot for the logging threads
+                consumerSequence.lazySet(next);
+                idleCounter = 0;
+                continue;
+            }
+
+            final long dropped = droppedCount.get();
+            if (dropped != reportedDropped) {
+                dispatch(Log.WARN, TAG, String.format("Dropped %s events, ring buffer was full", dropped - reportedDropped),
+                        null);
+                reportedDropped = dropped;
+            }
+
+            if (!isRunning) {
+                // a logging thread may have passed its check of isRunning and still claim a sequence,
+                // only exit once no sequence got claimed beyond the consumed ones
+                final long claimed = claimSequence.get();
+                if (next == claimed && claimSequence.compareAndSet(claimed, claimed | CLOSED)) {
+                    break;
+                }
+                if (next != claimed) {
+                    idleCounter = 0;
+                    continue;
+                }
+            }
+
+            // a component may have set the flag, which would keep the wait strategy from ever waiting
+            Thread.interrupted();
+            idleCounter = waitStrategy.idle(idleCounter);
+        }
+    }
+
+    private void close() {
+        long claimed;
+        do {
+            claimed = claimSequence.get();
+        } while ((claimed & CLOSED) == 0 && !claimSequence.compareAndSet(claimed, claimed | CLOSED));
+
+        final long lost = (claimed & ~CLOSED) - consumerSequence.get();
+        if (lost > 0) {
+            baseTree.reallyDoLog(Log.ERROR, TAG, String.format("Dispatcher thread died, lost %s events", lost), null);
+        }
+    }
+
+    private void dispatch(int priority, String tag, String message, Throwable t) {
+        try {
+            baseTree.dispatch(priority, tag, message, t);
+        } catch (Throwable throwable) {
+            // a broken component must not kill the dispatcher thread, not even with an error like NoClassDefFoundError
+            baseTree.reallyDoLog(Log.ERROR, TAG, "Could not dispatch event!", throwable);
+        }
+    }
+}
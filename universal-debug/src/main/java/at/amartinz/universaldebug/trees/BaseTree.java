@@ -26,14 +26,23 @@ package at.amartinz.universaldebug.trees;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import at.amartinz.universaldebug.utils.IdleScheduler;
+import at.amartinz.universaldebug.utils.SnapshotRegistry;
+import at.amartinz.universaldebug.utils.Tracer;
+import timber.log.ExplicitTags;
 import timber.log.Timber;
 
 /**
@@ -41,12 +50,43 @@ import timber.log.Timber;
  * Allows to add and remove {@link BaseTreeComponent BaseTreeComponents} dynamically
  */
 public class BaseTree extends Timber.DebugTree {
+    public static final int DEFAULT_ASYNC_CAPACITY = 8192;
+
+    /**
+     * The maximum amount of calling classes, whose stack derived tag gets cached.
+     */
+    public static final int MAX_TAG_CACHE_SIZE = 256;
+
+    public static final int DEFAULT_THROTTLE_LINES_PER_SECOND = 100;
+    public static final int DEFAULT_THROTTLE_BURST = 500;
+
     private final Context applicationContext;
     private final HashSet<Integer> priorityFilterSet;
 
-    private final List<BaseTreeComponent> baseTreeComponents;
+    private final SnapshotRegistry<BaseTreeComponent> baseTreeComponents;
+
+    private volatile boolean isEnabled;
+
+    private final ConcurrentHashMap<String, String> registeredTags;
+    private final ConcurrentHashMap<String, String> stackTagCache;
 
-    private boolean isEnabled;
+    private volatile DispatchTable dispatchTable;
+    private volatile AsyncDispatcher asyncDispatcher;
+    // null unless tracing, so dispatching only pays for a null check
+    private volatile Tracer tracer;
+    private volatile LogThrottle logThrottle;
+    // only needed while lines get suppressed
+    private static final IdleScheduler sThrottleScheduler = new IdleScheduler("UniversalDebug-Throttle");
+
+    private final LogThrottle.Summary throttleSummary = new LogThrottle.Summary() {
+        @Override void onSuppressed(int priority, @NonNull String tag, long count, boolean isOngoing) {
+            final String source = (priority == 0) ? tag : String.format("%s/%s", mapPriorityToString(priority), tag);
+            final String message = String.format("Suppressed %s lines from %s%s", count, source,
+                    isOngoing ? " so far" : "");
+            // bypasses the throttle, so it can not suppress its own summaries
+            publish(Log.WARN, tag, message, null);
+        }
+    };
 
     /**
      * Creates a {@link BaseTree} to be used with {@link Timber.Tree#plant(Timber.Tree) }.
@@ -58,14 +98,19 @@ public class BaseTree extends Timber.DebugTree {
         this.applicationContext = applicationContext;
         this.priorityFilterSet = new HashSet<>(priorityFilterList);
 
-        this.baseTreeComponents = new ArrayList<>();
+        this.baseTreeComponents = new SnapshotRegistry<>(new BaseTreeComponent[0]);
+        this.dispatchTable = DispatchTable.EMPTY;
+
+        this.registeredTags = new ConcurrentHashMap<>();
+        this.stackTagCache = new ConcurrentHashMap<>();
 
         this.isEnabled = true;
     }
 
     /**
      * When disabled, no events will get forwarded.<br>
-     * This can be used to prevent the overhead of {@link #shouldLog(int)} calls.
+     * This can be used to prevent the overhead of {@link #shouldLog(int)} calls, Timber will not even format
+     * the messages anymore.
      *
      * @param isEnabled Whether we should forward events or not
      * @return The same {@link BaseTree} instance to allow chained calls
@@ -75,15 +120,219 @@ public class BaseTree extends Timber.DebugTree {
         return this;
     }
 
+    /**
+     * @see #setAsync(int, WaitStrategy, boolean)
+     */
+    public BaseTree setAsync(boolean isAsync) {
+        if (isAsync) {
+            return setAsync(DEFAULT_ASYNC_CAPACITY, WaitStrategy.sleeping(), false);
+        }
+        shutdownAsync(0);
+        return this;
+    }
+
+    /**
+     * In asynchronous mode, log calls only publish the event into a lock-free ring buffer and return immediately.
+     * A dedicated dispatcher thread forwards the events to the {@link BaseTreeComponent BaseTreeComponents}.<br>
+     * This keeps slow components, like writing files or vibrating, away from the calling thread.
+     *
+     * @param capacity      The amount of preallocated events, has to be a power of two
+     * @param waitStrategy  How the dispatcher thread waits for new events
+     * @param blockWhenFull Whether logging threads should wait for a free slot when the ring buffer is full,
+     *                      or drop and count the event
+     * @return The same {@link BaseTree} instance to allow chained calls
+     */
+    public BaseTree setAsync(int capacity, @NonNull WaitStrategy waitStrategy, boolean blockWhenFull) {
+        shutdownAsync(0);
+        asyncDispatcher = new AsyncDispatcher(this, capacity, waitStrategy, blockWhenFull);
+        return this;
+    }
+
+    /**
+     * Leaves asynchronous mode and waits until all pending events got dispatched.<br>
+     * Log calls are dispatched on the calling thread again afterwards.
+     *
+     * @param timeoutMillis How long to wait at most, 0 to wait forever
+     * @return True, if all pending events got dispatched
+     */
+    public boolean shutdownAsync(long timeoutMillis) {
+        final AsyncDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher == null) {
+            return true;
+        }
+        asyncDispatcher = null;
+        return dispatcher.shutdown(timeoutMillis);
+    }
+
+    /**
+     * Flushes all {@link BaseTreeComponent BaseTreeComponents} in parallel, after all pending events of the
+     * asynchronous mode got dispatched.<br>
+     * Returns once everything got flushed or the timeout expired, whatever happens first.
+     *
+     * @param timeoutMillis How long to wait at most for everything together
+     * @return True, if everything got flushed in time
+     * @see BaseTreeComponent#flush(long)
+     */
+    public boolean flush(long timeoutMillis) {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        boolean isFlushed = true;
+
+        final LogThrottle throttle = logThrottle;
+        if (throttle != null) {
+            // report storms before flushing, their summaries would be lost otherwise
+            throttle.sweep(true, throttleSummary);
+        }
+
+        final AsyncDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher != null) {
+            isFlushed = dispatcher.awaitDispatched(timeoutMillis);
+        }
+
+        final BaseTreeComponent[] components = baseTreeComponents.snapshot();
+        final Thread[] threads = new Thread[components.length];
+        final AtomicBoolean hasFailed = new AtomicBoolean();
+        for (int i = 0; i < components.length; i++) {
+            final BaseTreeComponent component = components[i];
+            threads[i] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        final long remaining = deadline - System.currentTimeMillis();
+                        if (remaining <= 0 || !component.flush(remaining)) {
+                            hasFailed.set(true);
+                        }
+                    } catch (Throwable throwable) {
+                        hasFailed.set(true);
+                    }
+                }
+            }, "UniversalDebug-Flush");
+            // never keep the process alive because of a hanging component
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        for (final Thread thread : threads) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                isFlushed = false;
+                break;
+            }
+            try {
+                thread.join(remaining);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                isFlushed = false;
+                break;
+            }
+            isFlushed &= !thread.isAlive();
+        }
+        return isFlushed && !hasFailed.get();
+    }
+
+    /**
+     * @return The amount of events dropped in asynchronous mode, because the ring buffer was full
+     */
+    public long getAsyncDroppedCount() {
+        final AsyncDispatcher dispatcher = asyncDispatcher;
+        return (dispatcher != null) ? dispatcher.getDroppedCount() : 0;
+    }
+
+    /**
+     * Records how long every component takes per log line and priority, see {@link Tracer}.
+     *
+     * @param tracer The tracer to record into, null to stop tracing
+     * @return The same {@link BaseTree} instance to allow chained calls
+     */
+    public BaseTree setTracer(@Nullable Tracer tracer) {
+        this.tracer = tracer;
+        return this;
+    }
+
+    @Nullable public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * @see #setThrottle(int, int, boolean, int)
+     */
+    public BaseTree setThrottle(boolean isThrottled) {
+        if (isThrottled) {
+            return setThrottle(DEFAULT_THROTTLE_LINES_PER_SECOND, DEFAULT_THROTTLE_BURST, false, Log.ERROR);
+        }
+        setThrottleInternal(null);
+        return this;
+    }
+
+    /**
+     * Protects the components against log storms, for example from a loop logging on every iteration.<br>
+     * Every tag gets a budget of lines, lines exceeding it get dropped and counted. Once the storm ended, a
+     * single {@code Suppressed N lines from TAG} line gets logged instead, long storms get reported every
+     * few seconds. Summaries get logged from a background thread, or on {@link #flush(long)}.<br>
+     * <br>
+     * Lines of a single tag are budgeted together by default. Up to a few hundred sources get tracked, sources
+     * which stopped logging make room for new ones.
+     *
+     * @param linesPerSecond The amount of lines a source may log per second on average
+     * @param burst          The amount of lines a source may log at once, after being quiet
+     * @param isPerPriority  Whether every priority of a tag has its own budget
+     * @param exemptPriority Lines with this or a higher priority never get dropped, {@link Log#ERROR} by default
+     * @return The same {@link BaseTree} instance to allow chained calls
+     */
+    public BaseTree setThrottle(int linesPerSecond, int burst, boolean isPerPriority, int exemptPriority) {
+        setThrottleInternal(new LogThrottle(linesPerSecond, burst, isPerPriority, exemptPriority));
+        return this;
+    }
+
+    private void setThrottleInternal(LogThrottle throttle) {
+        final LogThrottle previous = logThrottle;
+        logThrottle = throttle;
+        if (previous != null) {
+            // do not lose what the previous throttle suppressed
+            previous.sweep(true, throttleSummary);
+        }
+    }
+
+    /**
+     * Registers a fixed tag for all log calls from the given class, including its inner and anonymous classes.<br>
+     * Use {@link #tagFor(Class)} together with {@link Timber#tag(String)} to skip deriving the tag from the
+     * stack entirely.
+     *
+     * @param clazz The calling class
+     * @param tag   The tag to use for it
+     * @return The same {@link BaseTree} instance to allow chained calls
+     */
+    public BaseTree registerTag(@NonNull Class<?> clazz, @NonNull String tag) {
+        final String className = clazz.getName();
+        registeredTags.put(className, tag);
+        // cached tags of the class and its inner classes may have been derived before the registration
+        final String innerPrefix = className + '$';
+        final Iterator<String> iterator = stackTagCache.keySet().iterator();
+        while (iterator.hasNext()) {
+            final String cachedClassName = iterator.next();
+            if (cachedClassName.equals(className) || cachedClassName.startsWith(innerPrefix)) {
+                iterator.remove();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @param clazz The calling class
+     * @return The tag registered via {@link #registerTag(Class, String)} or the simple name of the class
+     */
+    @NonNull public String tagFor(@NonNull Class<?> clazz) {
+        final String tag = registeredTags.get(clazz.getName());
+        return (tag != null) ? tag : clazz.getSimpleName();
+    }
+
     @NonNull public Context getApplicationContext() {
         return applicationContext;
     }
 
     /**
-     * @return A list of added {@link BaseTreeComponent BaseTreeComponents}.
+     * @return An unmodifiable snapshot of the added {@link BaseTreeComponent BaseTreeComponents}.
      */
     @NonNull public List<BaseTreeComponent> getComponents() {
-        return baseTreeComponents;
+        return Collections.unmodifiableList(Arrays.asList(baseTreeComponents.snapshot()));
     }
 
     /**
@@ -94,6 +343,7 @@ public class BaseTree extends Timber.DebugTree {
      */
     public BaseTree addComponent(BaseTreeComponent baseTreeComponent) {
         baseTreeComponents.add(baseTreeComponent);
+        rebuildDispatchTable();
         return this;
     }
 
@@ -105,6 +355,7 @@ public class BaseTree extends Timber.DebugTree {
      */
     public BaseTree removeComponent(BaseTreeComponent baseTreeComponent) {
         baseTreeComponents.remove(baseTreeComponent);
+        rebuildDispatchTable();
         return this;
     }
 
@@ -112,14 +363,199 @@ public class BaseTree extends Timber.DebugTree {
      * @see #removeComponent(BaseTreeComponent)
      */
     public BaseTree removeComponent(Class clazz) {
-        final Iterator<BaseTreeComponent> iterator = baseTreeComponents.iterator();
-        while (iterator.hasNext()) {
-            final BaseTreeComponent component = iterator.next();
-            if (clazz.isInstance(component)) {
+        if (baseTreeComponents.removeInstancesOf(clazz)) {
+            rebuildDispatchTable();
+        }
+        return this;
+    }
+
+    /**
+     * Asks every {@link BaseTreeComponent} with a {@link BaseTreeComponent#hasFixedFilter() fixed filter} via
+     * {@link BaseTreeComponent#shouldLog(int)} which priorities it accepts and stores the result in a table, which
+     * gets looked up on every log call. All other components get asked on every log call.<br>
+     * Adding or removing components and {@link BaseTreeComponent#setPriorityFilterSet(HashSet)} already do this,
+     * only call it if a component with a fixed filter changes the result of its
+     * {@link BaseTreeComponent#shouldLog(int)} otherwise.
+     */
+    public synchronized void rebuildDispatchTable() {
+        // read the registry while holding the lock, so the last rebuild always sees the latest components
+        final BaseTreeComponent[] components = baseTreeComponents.snapshot();
+        final int size = components.length;
+        final boolean[] isFixed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            isFixed[i] = components[i].hasFixedFilter();
+        }
+
+        final BaseTreeComponent[][] byPriority = new BaseTreeComponent[DispatchTable.PRIORITY_COUNT][];
+        final boolean[][] askPerCall = new boolean[DispatchTable.PRIORITY_COUNT][];
+        final BaseTreeComponent[] accepting = new BaseTreeComponent[size];
+        final boolean[] asking = new boolean[size];
+        for (int priority = 0; priority < DispatchTable.PRIORITY_COUNT; priority++) {
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                final BaseTreeComponent component = components[i];
+                if (!isFixed[i] || component.shouldLog(priority)) {
+                    accepting[count] = component;
+                    asking[count] = !isFixed[i];
+                    count++;
+                }
+            }
+            byPriority[priority] = (count == 0) ? DispatchTable.NONE : Arrays.copyOf(accepting, count);
+            askPerCall[priority] = (count == 0) ? DispatchTable.NONE_ASKING : Arrays.copyOf(asking, count);
+        }
+
+        // publish the new table with a single write, so log calls always see a consistent table
+        dispatchTable = new DispatchTable(components, byPriority, askPerCall);
+    }
+
+    /**
+     * Whether the result of {@link #shouldLog(int)} only changes along with a call to
+     * {@link #rebuildDispatchTable()}, see {@link BaseTreeComponent#hasFixedFilter()}.<br>
+     * False for subclasses by default, as they may decide on their own in {@link #shouldLog(int)}, override it to
+     * opt in.
+     */
+    protected boolean hasFixedFilter() {
+        return getClass() == BaseTree.class;
+    }
+
+    /**
+     * Timber creates the tag of untagged calls from the calling stack element.<br>
+     * Registered tags are used as is, derived tags get cached per calling class, so the class name gets only
+     * parsed once per class.
+     *
+     * @see timber.log.Timber.DebugTree#createStackElementTag(StackTraceElement)
+     */
+    @Override protected String createStackElementTag(StackTraceElement element) {
+        final String className = element.getClassName();
+        String tag = stackTagCache.get(className);
+        if (tag != null) {
+            return tag;
+        }
+
+        tag = registeredTags.get(className);
+        if (tag == null) {
+            // inner and anonymous classes use the tag of their outermost class
+            final int index = className.indexOf('$');
+            if (index != -1) {
+                tag = registeredTags.get(className.substring(0, index));
+            }
+        }
+        if (tag == null) {
+            tag = super.createStackElementTag(element);
+        }
+
+        if (tag != null) {
+            // keep memory bounded, evict some other class instead of starting over, as every miss walks the stack
+            final Iterator<String> iterator = stackTagCache.keySet().iterator();
+            while (stackTagCache.size() >= MAX_TAG_CACHE_SIZE && iterator.hasNext()) {
+                iterator.next();
                 iterator.remove();
             }
+            stackTagCache.put(className, tag);
+        }
+        return tag;
+    }
+
+    /*
+     * Timber formats the message and derives the tag from the stack before it calls
+     * log(int, String, String, Throwable), so lines which reach no component get dropped at its entry points.
+     */
+
+    @Override public void v(String message, Object... args) {
+        if (isForwarded(Log.VERBOSE)) {
+            super.v(message, args);
+        }
+    }
+
+    @Override public void v(Throwable t, String message, Object... args) {
+        if (isForwarded(Log.VERBOSE)) {
+            super.v(t, message, args);
+        }
+    }
+
+    @Override public void d(String message, Object... args) {
+        if (isForwarded(Log.DEBUG)) {
+            super.d(message, args);
+        }
+    }
+
+    @Override public void d(Throwable t, String message, Object... args) {
+        if (isForwarded(Log.DEBUG)) {
+            super.d(t, message, args);
+        }
+    }
+
+    @Override public void i(String message, Object... args) {
+        if (isForwarded(Log.INFO)) {
+            super.i(message, args);
+        }
+    }
+
+    @Override public void i(Throwable t, String message, Object... args) {
+        if (isForwarded(Log.INFO)) {
+            super.i(t, message, args);
+        }
+    }
+
+    @Override public void w(String message, Object... args) {
+        if (isForwarded(Log.WARN)) {
+            super.w(message, args);
+        }
+    }
+
+    @Override public void w(Throwable t, String message, Object... args) {
+        if (isForwarded(Log.WARN)) {
+            super.w(t, message, args);
+        }
+    }
+
+    @Override public void e(String message, Object... args) {
+        if (isForwarded(Log.ERROR)) {
+            super.e(message, args);
+        }
+    }
+
+    @Override public void e(Throwable t, String message, Object... args) {
+        if (isForwarded(Log.ERROR)) {
+            super.e(t, message, args);
+        }
+    }
+
+    @Override public void wtf(String message, Object... args) {
+        if (isForwarded(Log.ASSERT)) {
+            super.wtf(message, args);
+        }
+    }
+
+    @Override public void wtf(Throwable t, String message, Object... args) {
+        if (isForwarded(Log.ASSERT)) {
+            super.wtf(t, message, args);
+        }
+    }
+
+    @Override public void log(int priority, String message, Object... args) {
+        if (isForwarded(priority)) {
+            super.log(priority, message, args);
+        }
+    }
+
+    @Override public void log(int priority, Throwable t, String message, Object... args) {
+        if (isForwarded(priority)) {
+            super.log(priority, t, message, args);
         }
-        return this;
+    }
+
+    /**
+     * @return True, if a line of the priority reaches any component, otherwise the explicit tag of the line gets
+     * dropped, as it only applies to the next line of the calling thread
+     */
+    private boolean isForwarded(int priority) {
+        if (isEnabled && (priority < 0 || priority >= DispatchTable.PRIORITY_COUNT
+                || dispatchTable.byPriority[priority].length != 0)) {
+            return true;
+        }
+        ExplicitTags.drop(this);
+        return false;
     }
 
     /**
@@ -134,8 +570,90 @@ public class BaseTree extends Timber.DebugTree {
             return;
         }
 
-        for (final BaseTreeComponent baseTreeComponent : baseTreeComponents) {
-            baseTreeComponent.log(priority, tag, message, t);
+        final LogThrottle throttle = logThrottle;
+        if (throttle != null && !throttle.isExempt(priority)) {
+            if (!throttle.tryAcquire(priority, tag, throttle.currentTime())) {
+                // the storm may have been the last thing the app logs for a while, do not wait for the next line
+                if (throttle.tryScheduleSweep()) {
+                    scheduleSweep(throttle);
+                }
+                return;
+            }
+        }
+        publish(priority, tag, message, t);
+    }
+
+    private void scheduleSweep(final LogThrottle throttle) {
+        sThrottleScheduler.schedule(new Runnable() {
+            @Override public void run() {
+                boolean isSuppressing = true;
+                try {
+                    isSuppressing = throttle.runScheduledSweep(throttleSummary);
+                } finally {
+                    // keep sweeping even if a component failed to log the summary
+                    if (isSuppressing) {
+                        scheduleSweep(throttle);
+                    }
+                }
+            }
+        }, LogThrottle.SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private void publish(int priority, String tag, String message, Throwable t) {
+        final AsyncDispatcher dispatcher = asyncDispatcher;
+        if (dispatcher != null && dispatcher.publish(priority, tag, message, t)) {
+            return;
+        }
+        dispatch(priority, tag, message, t);
+    }
+
+    /**
+     * Forwards the event to all {@link BaseTreeComponent BaseTreeComponents}.
+     */
+    void dispatch(int priority, String tag, String message, Throwable t) {
+        final DispatchTable table = dispatchTable;
+        final Tracer currentTracer = tracer;
+        if (currentTracer != null) {
+            dispatchTraced(currentTracer, table, priority, tag, message, t);
+            return;
+        }
+        if (priority >= 0 && priority < DispatchTable.PRIORITY_COUNT) {
+            // components with a fixed filter already accepted this priority when building the table
+            final BaseTreeComponent[] components = table.byPriority[priority];
+            final boolean[] askPerCall = table.askPerCall[priority];
+            for (int i = 0; i < components.length; i++) {
+                if (askPerCall[i]) {
+                    components[i].log(priority, tag, message, t);
+                } else {
+                    components[i].doLog(priority, tag, message, t);
+                }
+            }
+            return;
+        }
+
+        // not a priority we know about, let the components decide
+        final BaseTreeComponent[] components = table.all;
+        for (int i = 0; i < components.length; i++) {
+            components[i].log(priority, tag, message, t);
+        }
+    }
+
+    private void dispatchTraced(Tracer tracer, DispatchTable table, int priority, String tag, String message,
+            Throwable t) {
+        final boolean isKnownPriority = (priority >= 0 && priority < DispatchTable.PRIORITY_COUNT);
+        final BaseTreeComponent[] components = isKnownPriority ? table.byPriority[priority] : table.all;
+        final boolean[] askPerCall = isKnownPriority ? table.askPerCall[priority] : null;
+        // the end of a component is the start of the next one, reading the clock is not free
+        long start = Tracer.now();
+        for (int i = 0; i < components.length; i++) {
+            if (isKnownPriority && !askPerCall[i]) {
+                components[i].doLog(priority, tag, message, t);
+            } else {
+                components[i].log(priority, tag, message, t);
+            }
+            final long end = Tracer.now();
+            tracer.recordDispatch(components[i], priority, end - start);
+            start = end;
         }
     }
 
@@ -153,15 +671,35 @@ public class BaseTree extends Timber.DebugTree {
      * @return True, if we should log
      */
     public boolean shouldLog(int priority) {
-        if (!priorityFilterSet.isEmpty()) {
-            for (final int priorityFilter : priorityFilterSet) {
-                // if our priority is filtered, get out of here
-                if (priority == priorityFilter) {
-                    return false;
-                }
-            }
+        // log priorities are small enough to use cached Integer instances, so this does not allocate
+        return !priorityFilterSet.contains(priority);
+    }
+
+    /**
+     * An immutable snapshot of the components, indexed by the priorities they accept.
+     */
+    private static final class DispatchTable {
+        // Log.VERBOSE to Log.ASSERT, indexed by their values
+        private static final int PRIORITY_COUNT = Log.ASSERT + 1;
+
+        private static final BaseTreeComponent[] NONE = new BaseTreeComponent[0];
+        private static final boolean[] NONE_ASKING = new boolean[0];
+        private static final DispatchTable EMPTY = new DispatchTable(NONE, new BaseTreeComponent[][]{
+                NONE, NONE, NONE, NONE, NONE, NONE, NONE, NONE
+        }, new boolean[][]{
+                NONE_ASKING, NONE_ASKING, NONE_ASKING, NONE_ASKING, NONE_ASKING, NONE_ASKING, NONE_ASKING, NONE_ASKING
+        });
+
+        private final BaseTreeComponent[] all;
+        private final BaseTreeComponent[][] byPriority;
+        // per entry of byPriority, true if the component gets asked on every call through its log method
+        private final boolean[][] askPerCall;
+
+        private DispatchTable(BaseTreeComponent[] all, BaseTreeComponent[][] byPriority, boolean[][] askPerCall) {
+            this.all = all;
+            this.byPriority = byPriority;
+            this.askPerCall = askPerCall;
         }
-        return true;
     }
 
     /**
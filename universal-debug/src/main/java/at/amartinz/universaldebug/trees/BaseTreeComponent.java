@@ -26,6 +26,7 @@ package at.amartinz.universaldebug.trees;
 
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 
 import java.util.HashSet;
 
@@ -35,6 +36,9 @@ import java.util.HashSet;
 public abstract class BaseTreeComponent {
     protected BaseTree baseTree;
 
+    /**
+     * Change it through {@link #setPriorityFilterSet(HashSet)}, so the {@link BaseTree} notices.
+     */
     protected HashSet<Integer> priorityFilterSet;
 
     public BaseTreeComponent(@NonNull BaseTree baseTree) {
@@ -57,7 +61,10 @@ public abstract class BaseTreeComponent {
     /**
      * If a priority filter set is set, it will be used to decide whether {@link #doLog(int, String, String, Throwable)} gets
      * called.<br>
-     * If no filter is set, it will call {@link BaseTree#shouldLog(int)}.
+     * If no filter is set, it will call {@link BaseTree#shouldLog(int)}.<br>
+     * <br>
+     * If {@link #hasFixedFilter()}, the {@link BaseTree} only asks once per priority when building its dispatch
+     * table, otherwise on every log call.
      *
      * @see BaseTree#shouldLog(int)
      */
@@ -66,18 +73,49 @@ public abstract class BaseTreeComponent {
             return baseTree.shouldLog(priority);
         }
 
-        if (!priorityFilterSet.isEmpty()) {
-            for (final int priorityFilter : priorityFilterSet) {
-                // if our priority is filtered, get out of here
-                if (priority == priorityFilter) {
-                    return false;
-                }
-            }
-        }
+        // log priorities are small enough to use cached Integer instances, so this does not allocate
+        return !priorityFilterSet.contains(priority);
+    }
+
+    /**
+     * Called before the process dies, for example from an uncaught exception, and whenever everything should get
+     * persisted. Write out everything which is buffered, but return before the timeout.<br>
+     * May get called from any thread, in parallel to other components.
+     *
+     * @param timeoutMillis How long the flush may take at most
+     * @return True, if everything got flushed
+     * @see BaseTree#flush(long)
+     */
+    @WorkerThread public boolean flush(long timeoutMillis) {
         return true;
     }
 
+    /**
+     * Whether the result of {@link #shouldLog(int)} only changes along with a call to
+     * {@link BaseTree#rebuildDispatchTable()}. The {@link BaseTree} then asks once per priority and calls
+     * {@link #doLog(int, String, String, Throwable)} directly, otherwise every log call goes through
+     * {@link #log(int, String, String, Throwable)}.<br>
+     * <br>
+     * False by default, override it to opt in. The components of this library only opt in for their own class, a
+     * subclass may override {@link #shouldLog(int)} or {@link #log(int, String, String, Throwable)} and has to
+     * opt in on its own.
+     *
+     * @see #hasDefaultFixedFilter()
+     */
+    protected boolean hasFixedFilter() {
+        return false;
+    }
+
+    /**
+     * @return True, if the default {@link #shouldLog(int)} is fixed, which is the case without a priority filter
+     * set, as the caller may keep changing the set it passed, and if {@link BaseTree#hasFixedFilter()}
+     */
+    protected final boolean hasDefaultFixedFilter() {
+        return priorityFilterSet == null && baseTree.hasFixedFilter();
+    }
+
     public void setPriorityFilterSet(@Nullable HashSet<Integer> priorityFilterSet) {
         this.priorityFilterSet = priorityFilterSet;
+        baseTree.rebuildDispatchTable();
     }
 }
@@ -0,0 +1,296 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Turns files written with {@link BinaryLogEncoder} back into readable text.<br>
+ * Also understands plain text logs, gzipped logs from {@link RotatingFileLogOutput} and ring files from
+ * {@link MappedRingLogOutput}, so it can be pointed at any log file.<br>
+ * <br>
+ * Does not depend on Android and can also be run on a desktop:<br>
+ * {@code java -cp universal-debug.jar at.amartinz.universaldebug.trees.BinaryLogDecoder <file>...}
+ */
+public class BinaryLogDecoder {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String UNKNOWN_TAG = "?";
+
+    private final Writer out;
+    private final SimpleDateFormat dateFormat;
+    private final List<String> tagDictionary;
+
+    private long lastTimestamp;
+
+    public BinaryLogDecoder(@NonNull Writer out) {
+        this.out = out;
+        this.dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS", Locale.ENGLISH);
+        this.tagDictionary = new ArrayList<>();
+    }
+
+    /**
+     * Decodes a whole file, detecting its format.
+     */
+    public void decodeFile(@NonNull File file) throws IOException {
+        if (isRingFile(file)) {
+            for (final byte[] record : RingLogReader.readRecords(file)) {
+                decodeFramed(record);
+            }
+            out.flush();
+            return;
+        }
+
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try {
+            if (file.getName().endsWith(RotatingFileLogOutput.SUFFIX_ARCHIVE)) {
+                in = new BufferedInputStream(new GZIPInputStream(in));
+            }
+            decode(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Decodes a stream of binary records, or copies it if it does not start with {@link BinaryLogEncoder#MAGIC}.
+     */
+    public void decode(@NonNull InputStream inputStream) throws IOException {
+        if (!inputStream.markSupported()) {
+            inputStream = new BufferedInputStream(inputStream);
+        }
+        final DataInputStream in = new DataInputStream(inputStream);
+        in.mark(BinaryLogEncoder.MAGIC.length);
+        final byte[] magic = new byte[BinaryLogEncoder.MAGIC.length];
+        final int read = in.read(magic);
+        in.reset();
+        if (read != magic.length || !Arrays.equals(magic, BinaryLogEncoder.MAGIC)) {
+            copyText(in);
+            return;
+        }
+
+        try {
+            int type;
+            while ((type = in.read()) != -1) {
+                switch (type) {
+                    case 'U': {
+                        // a new file started, the rest of the magic and the version follow
+                        in.readFully(magic, 1, magic.length - 1);
+                        in.readByte();
+                        tagDictionary.clear();
+                        lastTimestamp = 0;
+                        break;
+                    }
+                    case BinaryLogEncoder.TYPE_TAG: {
+                        final int index = (int) readVarint(in);
+                        final String tag = readString(in);
+                        while (tagDictionary.size() < index) {
+                            tagDictionary.add(null);
+                        }
+                        tagDictionary.set(index - 1, tag);
+                        break;
+                    }
+                    case BinaryLogEncoder.TYPE_RECORD: {
+                        final long timestamp = lastTimestamp + BinaryLogEncoder.unzigzag(readVarint(in));
+                        lastTimestamp = timestamp;
+                        final int priority = in.readByte();
+                        final int flags = in.readByte();
+                        final int tagIndex = (int) readVarint(in);
+                        final String tag;
+                        if (tagIndex == 0) {
+                            tag = readString(in);
+                        } else {
+                            tag = lookupTag(tagIndex);
+                        }
+                        writeLine(in, timestamp, priority, flags, tag);
+                        break;
+                    }
+                    case BinaryLogEncoder.TYPE_FRAMED_RECORD: {
+                        decodeFramedRecord(in);
+                        break;
+                    }
+                    default: {
+                        throw new IOException("Unknown record type " + type);
+                    }
+                }
+            }
+        } catch (EOFException eofe) {
+            // the last record did not get written completely, the process probably died
+        }
+        out.flush();
+    }
+
+    /**
+     * Decodes a single record of a ring file, which is either a framed binary record or plain text.
+     */
+    public void decodeFramed(@NonNull byte[] record) throws IOException {
+        if (record.length > 0 && record[0] == BinaryLogEncoder.TYPE_FRAMED_RECORD) {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, 1, record.length - 1));
+            try {
+                decodeFramedRecord(in);
+            } catch (EOFException ignored) { }
+        } else {
+            out.write(new String(record, UTF_8));
+        }
+    }
+
+    /**
+     * @return The tag of the dictionary, or {@link #UNKNOWN_TAG} if its definition is missing, for example because
+     * it could not get written
+     */
+    private String lookupTag(int tagIndex) {
+        final String tag = (tagIndex <= tagDictionary.size()) ? tagDictionary.get(tagIndex - 1) : null;
+        return (tag != null) ? tag : UNKNOWN_TAG;
+    }
+
+    private void decodeFramedRecord(DataInputStream in) throws IOException {
+        final long timestamp = readVarint(in);
+        final int priority = in.readByte();
+        final int flags = in.readByte();
+        final String tag = readString(in);
+        writeLine(in, timestamp, priority, flags, tag);
+    }
+
+    private void writeLine(DataInputStream in, long timestamp, int priority, int flags, String tag) throws IOException {
+        final String message = readString(in);
+        final String throwable = ((flags & BinaryLogEncoder.FLAG_THROWABLE) != 0) ? readString(in) : null;
+
+        out.write(dateFormat.format(new Date(timestamp)));
+        out.write(' ');
+        out.write(mapPriorityToString(priority));
+        out.write('/');
+        out.write(tag);
+        out.write(": ");
+        out.write(message);
+        if (throwable != null && !message.contains(throwable)) {
+            out.write(" [");
+            out.write(throwable);
+            out.write(']');
+        }
+        out.write('\n');
+    }
+
+    private void copyText(InputStream in) throws IOException {
+        final Reader reader = new InputStreamReader(in, UTF_8);
+        final char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        out.flush();
+    }
+
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        while (shift < 64) {
+            final int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        final int length = (int) readVarint(in);
+        if (length == 0) {
+            return "";
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static boolean isRingFile(File file) throws IOException {
+        final DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            return in.readInt() == RecordRing.MAGIC;
+        } catch (EOFException eofe) {
+            return false;
+        } finally {
+            in.close();
+        }
+    }
+
+    // do not use BaseTree here, as it depends on Timber and Android
+    private static String mapPriorityToString(int priority) {
+        switch (priority) {
+            case 2: {
+                return "V";
+            }
+            case 3: {
+                return "D";
+            }
+            case 4: {
+                return "I";
+            }
+            case 5: {
+                return "W";
+            }
+            case 6: {
+                return "E";
+            }
+            default: {
+                return "WTF";
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BinaryLogDecoder <file>...");
+            System.exit(1);
+        }
+
+        final Writer writer = new OutputStreamWriter(System.out, UTF_8);
+        for (final String arg : args) {
+            new BinaryLogDecoder(writer).decodeFile(new File(arg));
+        }
+        writer.flush();
+    }
+}
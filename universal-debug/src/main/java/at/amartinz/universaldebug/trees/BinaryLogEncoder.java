@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+
+/**
+ * Encodes log lines into a compact binary format, use {@link BinaryLogDecoder} to turn it back into text.<br>
+ * <br>
+ * Every file starts with {@link #MAGIC} and a version byte, followed by entries which start with a type byte:
+ * <ul>
+ * <li>{@link #TYPE_TAG}: varint tag index, varint length, UTF-8 tag. Defines a tag of the per-file dictionary.</li>
+ * <li>{@link #TYPE_RECORD}: zigzag varint timestamp delta to the previous record, priority byte, flags byte,
+ * varint tag index (0 means the tag follows inline as varint length and UTF-8), varint length and UTF-8 message,
+ * and if {@link #FLAG_THROWABLE} is set, varint length and UTF-8 class name of the throwable.</li>
+ * <li>{@link #TYPE_FRAMED_RECORD}: like {@link #TYPE_RECORD}, but with an absolute timestamp and always an inline
+ * tag. Used for outputs like {@link MappedRingLogOutput}, where old records and therefore the dictionary may
+ * get overwritten.</li>
+ * </ul>
+ */
+public class BinaryLogEncoder extends LogEncoder {
+    public static final byte[] MAGIC = new byte[]{ 'U', 'D', 'B', 'L' };
+    public static final byte VERSION = 1;
+
+    public static final byte TYPE_TAG = 1;
+    public static final byte TYPE_RECORD = 2;
+    public static final byte TYPE_FRAMED_RECORD = 3;
+
+    public static final int FLAG_THROWABLE = 1;
+
+    /**
+     * Tags beyond this limit get written inline, to keep memory bounded.
+     */
+    public static final int MAX_DICTIONARY_SIZE = 1024;
+
+    private final HashMap<String, Integer> tagDictionary = new HashMap<>();
+
+    private boolean framed;
+    private long lastTimestamp;
+
+    // only committed once the record got written, the decoder never sees records which failed to get written
+    private String pendingTag;
+    private long pendingTimestamp;
+
+    @Override public void startSegment(@NonNull RecordBuffer out, boolean framed) {
+        this.framed = framed;
+        this.tagDictionary.clear();
+        this.lastTimestamp = 0;
+        this.pendingTag = null;
+
+        if (!framed) {
+            out.put(MAGIC).put(VERSION);
+        }
+    }
+
+    @Override public void encode(@NonNull RecordBuffer out, long timestamp, int priority, String tag, String message,
+            Throwable t) {
+        if (tag == null) {
+            tag = "";
+        }
+
+        if (framed) {
+            out.put(TYPE_FRAMED_RECORD)
+                    .putVarint(timestamp);
+            putPriorityAndFlags(out, priority, t);
+            out.putString(tag);
+        } else {
+            pendingTag = null;
+            final int tagIndex = lookupTag(out, tag);
+            out.put(TYPE_RECORD)
+                    .putVarint(zigzag(timestamp - lastTimestamp));
+            putPriorityAndFlags(out, priority, t);
+            out.putVarint(tagIndex);
+            if (tagIndex == 0) {
+                out.putString(tag);
+            }
+            pendingTimestamp = timestamp;
+        }
+
+        out.putString(message);
+        if (t != null) {
+            out.putString(t.getClass().getName());
+        }
+    }
+
+    @Override public void onRecordWritten() {
+        if (framed) {
+            return;
+        }
+        if (pendingTag != null) {
+            tagDictionary.put(pendingTag, tagDictionary.size() + 1);
+            pendingTag = null;
+        }
+        lastTimestamp = pendingTimestamp;
+    }
+
+    private int lookupTag(RecordBuffer out, String tag) {
+        final Integer existing = tagDictionary.get(tag);
+        if (existing != null) {
+            return existing;
+        }
+        if (tagDictionary.size() >= MAX_DICTIONARY_SIZE) {
+            return 0;
+        }
+
+        // registered in onRecordWritten(), if the write fails the tag gets defined again with the next record
+        final int tagIndex = tagDictionary.size() + 1;
+        pendingTag = tag;
+        out.put(TYPE_TAG)
+                .putVarint(tagIndex)
+                .putString(tag);
+        return tagIndex;
+    }
+
+    private static void putPriorityAndFlags(RecordBuffer out, int priority, Throwable t) {
+        out.put((byte) priority)
+                .put((byte) (t != null ? FLAG_THROWABLE : 0));
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * Wraps a {@link CrashComponent}, whose crash reporting service is not ready yet, for example because it gets
+ * initialized in the background.<br>
+ * Crashes get buffered until {@link #markReady()} gets called, then they get replayed to the wrapped component in
+ * order and all further crashes go to it directly. Logging never waits for the replay.<br>
+ * <br>
+ * Only add this component to the {@link BaseTree}, not the wrapped one. Matching and deduplication happen in this
+ * component, the wrapped one only reports.<br>
+ * The buffer is bounded and allocated up front, crashes which do not fit anymore get dropped and counted.
+ */
+public class BufferingCrashComponent extends CrashComponent {
+    public static final int DEFAULT_CAPACITY = 32;
+
+    public static final int STATE_BUFFERING = 0;
+    public static final int STATE_REPLAYING = 1;
+    public static final int STATE_READY = 2;
+
+    private final int[] priorities;
+    private final String[] tags;
+    private final String[] messages;
+    private final Throwable[] throwables;
+
+    private volatile CrashComponent delegate;
+    private volatile int state;
+
+    // only modified while holding the lock
+    private int head;
+    private int count;
+    private long droppedCount;
+
+    /**
+     * @see #BufferingCrashComponent(BaseTree, CrashComponent, int)
+     */
+    public BufferingCrashComponent(@NonNull BaseTree baseTree, @Nullable CrashComponent delegate) {
+        this(baseTree, delegate, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param baseTree The {@link BaseTree} this component belongs to
+     * @param delegate The component to replay to, may also be passed later via {@link #markReady(CrashComponent)},
+     *                 if it can not be created yet
+     * @param capacity The maximum amount of buffered crashes
+     */
+    public BufferingCrashComponent(@NonNull BaseTree baseTree, @Nullable CrashComponent delegate, int capacity) {
+        super(baseTree, (delegate != null) ? delegate.crashPrefix : DEFAULT_PREFIX_CRASH);
+        this.delegate = delegate;
+        this.priorities = new int[capacity];
+        this.tags = new String[capacity];
+        this.messages = new String[capacity];
+        this.throwables = new Throwable[capacity];
+        this.state = STATE_BUFFERING;
+    }
+
+    @Nullable public CrashComponent getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return One of {@link #STATE_BUFFERING}, {@link #STATE_REPLAYING} and {@link #STATE_READY}
+     */
+    public int getState() {
+        return state;
+    }
+
+    public synchronized int getBufferedCount() {
+        return count;
+    }
+
+    /**
+     * @return The amount of crashes, which got dropped because the buffer was full
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * Sets the component to replay to and marks it as ready, see {@link #markReady()}.
+     */
+    public void markReady(@NonNull CrashComponent delegate) {
+        this.delegate = delegate;
+        markReady();
+    }
+
+    /**
+     * Replays the buffered crashes to the wrapped component on the calling thread, crashes logged meanwhile get
+     * replayed as well. Afterwards crashes go to the wrapped component directly.
+     */
+    public void markReady() {
+        final CrashComponent component = delegate;
+        if (component == null) {
+            throw new IllegalStateException("No component to replay to");
+        }
+        synchronized (this) {
+            if (state != STATE_BUFFERING) {
+                return;
+            }
+            state = STATE_REPLAYING;
+        }
+
+        while (true) {
+            final int priority;
+            final String tag;
+            final String message;
+            final Throwable t;
+            synchronized (this) {
+                if (count == 0) {
+                    state = STATE_READY;
+                    return;
+                }
+                priority = priorities[head];
+                tag = tags[head];
+                message = messages[head];
+                t = throwables[head];
+                tags[head] = null;
+                messages[head] = null;
+                throwables[head] = null;
+                head = (head + 1) % priorities.length;
+                count--;
+            }
+
+            try {
+                component.reportCrash(priority, tag, message, t);
+            } catch (RuntimeException re) {
+                baseTree.reallyDoLog(Log.ERROR, tag, "Could not replay crash!", re);
+            }
+        }
+    }
+
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == BufferingCrashComponent.class;
+    }
+
+    @Override public boolean flush(long timeoutMillis) {
+        final boolean isReported = super.flush(timeoutMillis);
+        final CrashComponent component = delegate;
+        return ((component == null) || component.flush(timeoutMillis)) && isReported;
+    }
+
+    @Override protected void reportCrash(int priority, String tag, String message, Throwable t) {
+        if (state != STATE_READY) {
+            synchronized (this) {
+                if (state != STATE_READY) {
+                    if (count == priorities.length) {
+                        droppedCount++;
+                        return;
+                    }
+                    final int index = (head + count) % priorities.length;
+                    priorities[index] = priority;
+                    tags[index] = tag;
+                    messages[index] = message;
+                    throwables[index] = t;
+                    count++;
+                    return;
+                }
+            }
+        }
+        delegate.reportCrash(priority, tag, message, t);
+    }
+}
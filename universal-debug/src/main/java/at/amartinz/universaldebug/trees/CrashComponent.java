@@ -28,6 +28,11 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.util.Log;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import at.amartinz.universaldebug.utils.IdleScheduler;
+
 /**
  * Log with {@link timber.log.Timber#e(Throwable, String, Object...)} with the specified crashPrefix
  * to send a crash report to the specified service.
@@ -35,8 +40,16 @@ import android.util.Log;
 public abstract class CrashComponent extends BaseTreeComponent {
     public static final String DEFAULT_PREFIX_CRASH = "CRASH: ";
 
+    public static final int DEFAULT_MAX_FINGERPRINTS = 256;
+    public static final int DEFAULT_FINGERPRINT_FRAMES = 5;
+
     protected String crashPrefix;
 
+    // only needed while repeats are suppressed
+    private static final IdleScheduler sRepeatScheduler = new IdleScheduler("UniversalDebug-CrashRepeats");
+
+    private volatile CrashDeduplicator crashDeduplicator;
+
     public CrashComponent(@NonNull BaseTree baseTree) {
         this(baseTree, CrashComponent.DEFAULT_PREFIX_CRASH);
     }
@@ -51,6 +64,34 @@ public abstract class CrashComponent extends BaseTreeComponent {
         return this;
     }
 
+    /**
+     * @see #setDeduplicationWindow(long, int, int)
+     */
+    public CrashComponent setDeduplicationWindow(long window) {
+        return setDeduplicationWindow(window, DEFAULT_MAX_FINGERPRINTS, DEFAULT_FINGERPRINT_FRAMES);
+    }
+
+    /**
+     * Suppresses repeated reports of the same crash, for example from a loop.<br>
+     * Crashes are identified by a fingerprint of the tag, the exception type and its top stack frames.
+     * The first occurrence gets reported, repeats within the window get counted. Once the window ended, the last
+     * repeat gets reported with {@code (seen N times)} appended, also if the crash does not recur. {@link #flush(long)}
+     * reports the repeats of windows which did not end yet.
+     *
+     * @param window          The time window in milliseconds, 0 to report every crash
+     * @param maxFingerprints The amount of crashes to remember, the least recently seen ones get forgotten
+     * @param frameCount      The amount of top stack frames, which are part of the fingerprint
+     * @return The same {@link CrashComponent} instance to allow chained calls
+     */
+    public CrashComponent setDeduplicationWindow(long window, int maxFingerprints, int frameCount) {
+        if (window <= 0) {
+            this.crashDeduplicator = null;
+        } else {
+            this.crashDeduplicator = new CrashDeduplicator(window, maxFingerprints, frameCount);
+        }
+        return this;
+    }
+
     @Override protected boolean shouldLog(int priority) {
         return (priority == Log.ERROR);
     }
@@ -60,7 +101,8 @@ public abstract class CrashComponent extends BaseTreeComponent {
     }
 
     @NonNull protected String extractFromMessage(@NonNull String message) {
-        return message.replaceFirst(crashPrefix, "");
+        // the prefix is plain text, not a regex
+        return message.startsWith(crashPrefix) ? message.substring(crashPrefix.length()) : message;
     }
 
     protected abstract void reportCrash(int priority, String tag, String message, Throwable t);
@@ -70,8 +112,79 @@ public abstract class CrashComponent extends BaseTreeComponent {
             return;
         }
 
-        message = extractFromMessage(message);
+        message = deduplicate(this, priority, tag, extractFromMessage(message), t);
+        if (message == null) {
+            return;
+        }
 
         reportCrash(priority, tag, message, t);
     }
+
+    /**
+     * @param target   The {@link CrashComponent} which reports the crash, repeats get reported with it later
+     * @param priority The priority the crash gets reported with
+     * @return Null if the crash is a repeat and should not get reported,
+     * otherwise the message with the amount of suppressed repeats appended, if there were any
+     * @see #setDeduplicationWindow(long, int, int)
+     */
+    @Nullable protected String deduplicate(@NonNull CrashComponent target, int priority, String tag,
+            @NonNull String message, Throwable t) {
+        final CrashDeduplicator deduplicator = crashDeduplicator;
+        if (deduplicator == null) {
+            return message;
+        }
+        final int count = deduplicator.record(System.currentTimeMillis(), target, priority, tag, message, t);
+        if (count == -1) {
+            scheduleRepeatReport(deduplicator);
+            return null;
+        }
+        if (count > 1) {
+            return formatRepeats(message, count);
+        }
+        return message;
+    }
+
+    /**
+     * Reports the repeats which got suppressed so far, even if their window did not end yet.
+     */
+    @Override public boolean flush(long timeoutMillis) {
+        final CrashDeduplicator deduplicator = crashDeduplicator;
+        if (deduplicator != null) {
+            reportRepeats(deduplicator.drainRepeats(System.currentTimeMillis(), true));
+        }
+        return true;
+    }
+
+    private void scheduleRepeatReport(final CrashDeduplicator deduplicator) {
+        final long delay = deduplicator.scheduleReport(System.currentTimeMillis());
+        if (delay < 0) {
+            return;
+        }
+        sRepeatScheduler.schedule(new Runnable() {
+            @Override public void run() {
+                deduplicator.onReportStarted();
+                try {
+                    reportRepeats(deduplicator.drainRepeats(System.currentTimeMillis(), false));
+                } finally {
+                    // other crashes may still be within their window
+                    scheduleRepeatReport(deduplicator);
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void reportRepeats(List<CrashDeduplicator.Repeat> repeats) {
+        for (final CrashDeduplicator.Repeat repeat : repeats) {
+            try {
+                repeat.target.reportCrash(repeat.priority, repeat.tag, formatRepeats(repeat.message, repeat.count),
+                        repeat.throwable);
+            } catch (RuntimeException re) {
+                baseTree.reallyDoLog(Log.ERROR, repeat.tag, "Could not report repeated crash!", re);
+            }
+        }
+    }
+
+    private static String formatRepeats(String message, int count) {
+        return String.format("%s (seen %s times)", message, count);
+    }
 }
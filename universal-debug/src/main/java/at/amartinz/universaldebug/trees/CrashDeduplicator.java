@@ -0,0 +1,215 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers recently reported crashes by their fingerprint, to suppress repeats within a time window.<br>
+ * The fingerprint is a hash of the tag, the exception type and the top stack frames, or of the tag and
+ * the message for crashes without a throwable.<br>
+ * Memory is bounded by evicting the least recently seen fingerprints, along with their suppressed occurrences.
+ */
+final class CrashDeduplicator {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long window;
+    private final int frameCount;
+    private final LinkedHashMap<Long, Fingerprint> fingerprints;
+
+    private boolean isReportScheduled;
+
+    private static final class Fingerprint {
+        private long windowStart;
+        private int count;
+
+        // the last suppressed occurrence, which gets reported once the window ends
+        private CrashComponent target;
+        private int priority;
+        private String tag;
+        private String message;
+        private Throwable throwable;
+    }
+
+    /**
+     * Suppressed occurrences of a crash, which did not recur after its window ended.
+     */
+    static final class Repeat {
+        final CrashComponent target;
+        final int priority;
+        final String tag;
+        final String message;
+        final Throwable throwable;
+        final int count;
+
+        Repeat(CrashComponent target, int priority, String tag, String message, Throwable throwable, int count) {
+            this.target = target;
+            this.priority = priority;
+            this.tag = tag;
+            this.message = message;
+            this.throwable = throwable;
+            this.count = count;
+        }
+    }
+
+    CrashDeduplicator(long window, final int maxFingerprints, int frameCount) {
+        this.window = window;
+        this.frameCount = frameCount;
+        this.fingerprints = new LinkedHashMap<Long, Fingerprint>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Long, Fingerprint> eldest) {
+                return size() > maxFingerprints;
+            }
+        };
+    }
+
+    /**
+     * Records an occurrence of the crash.
+     *
+     * @param target The {@link CrashComponent} to report the crash with, if it gets reported later
+     * @return -1 if the crash should be suppressed, otherwise the amount of occurrences since it got
+     * reported the last time, including this one
+     */
+    synchronized int record(long now, CrashComponent target, int priority, String tag, String message, @Nullable Throwable t) {
+        final long hash = fingerprint(tag, message, t);
+        Fingerprint fingerprint = fingerprints.get(hash);
+        if (fingerprint == null) {
+            fingerprint = new Fingerprint();
+            fingerprint.windowStart = now;
+            fingerprints.put(hash, fingerprint);
+            return 1;
+        }
+
+        fingerprint.count++;
+        if (now - fingerprint.windowStart < window) {
+            fingerprint.target = target;
+            fingerprint.priority = priority;
+            fingerprint.tag = tag;
+            fingerprint.message = message;
+            fingerprint.throwable = t;
+            return -1;
+        }
+
+        final int count = fingerprint.count;
+        reset(fingerprint, now);
+        return count;
+    }
+
+    /**
+     * Takes the suppressed occurrences out, so they can get reported without waiting for the crash to recur.
+     *
+     * @param all Whether to also take the ones, whose window did not end yet
+     * @return The suppressed occurrences, empty if there are none
+     */
+    synchronized List<Repeat> drainRepeats(long now, boolean all) {
+        List<Repeat> repeats = Collections.emptyList();
+        for (final Fingerprint fingerprint : fingerprints.values()) {
+            if (fingerprint.count == 0 || (!all && now - fingerprint.windowStart < window)) {
+                continue;
+            }
+            if (repeats.isEmpty()) {
+                repeats = new ArrayList<>();
+            }
+            repeats.add(new Repeat(fingerprint.target, fingerprint.priority, fingerprint.tag, fingerprint.message, fingerprint.throwable,
+                    fingerprint.count));
+            reset(fingerprint, now);
+        }
+        return repeats;
+    }
+
+    /**
+     * Marks a report of the suppressed occurrences as scheduled, unless one already is.
+     *
+     * @return The delay in milliseconds until the first window with suppressed occurrences ends,
+     * -1 if there is nothing to schedule
+     */
+    synchronized long scheduleReport(long now) {
+        if (isReportScheduled) {
+            return -1;
+        }
+        long windowEnd = Long.MAX_VALUE;
+        for (final Fingerprint fingerprint : fingerprints.values()) {
+            if (fingerprint.count != 0) {
+                windowEnd = Math.min(windowEnd, fingerprint.windowStart + window);
+            }
+        }
+        if (windowEnd == Long.MAX_VALUE) {
+            return -1;
+        }
+        isReportScheduled = true;
+        return Math.max(0, windowEnd - now);
+    }
+
+    /**
+     * Called when the scheduled report runs, so the next suppressed occurrence schedules a new one.
+     */
+    synchronized void onReportStarted() {
+        isReportScheduled = false;
+    }
+
+    private static void reset(Fingerprint fingerprint, long now) {
+        fingerprint.windowStart = now;
+        fingerprint.count = 0;
+        fingerprint.target = null;
+        fingerprint.tag = null;
+        fingerprint.message = null;
+        fingerprint.throwable = null;
+    }
+
+    private long fingerprint(String tag, String message, @Nullable Throwable t) {
+        long hash = hash(FNV_OFFSET, tag);
+        if (t == null) {
+            return hash(hash, message);
+        }
+
+        hash = hash(hash, t.getClass().getName());
+        final StackTraceElement[] stackTrace = t.getStackTrace();
+        final int frames = Math.min(frameCount, stackTrace.length);
+        for (int i = 0; i < frames; i++) {
+            final StackTraceElement element = stackTrace[i];
+            hash = hash(hash, element.getClassName());
+            hash = hash(hash, element.getMethodName());
+            hash = (hash ^ element.getLineNumber()) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // 64 bit FNV-1a over the chars, to keep collisions of different crashes unlikely
+    private static long hash(long hash, @Nullable String value) {
+        if (value == null) {
+            return hash * FNV_PRIME;
+        }
+        for (int i = 0, length = value.length(); i < length; i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash * FNV_PRIME;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Matches log messages against a set of rules, each consisting of a message prefix and an optional tag pattern.<br>
+ * <br>
+ * The prefixes get compiled into a trie once after rules changed, so matching is a single pass over the start of
+ * the message, independent of the amount of rules, and does not allocate.<br>
+ * If several rules match, the one with the longest prefix wins, for equal prefixes the one added first.<br>
+ * <br>
+ * Tag patterns are either null to match any tag, an exact tag, or a tag prefix ending with {@code *}.<br>
+ * Rules are meant to be added once while setting up. Changing them recompiles the trie, matches of calls running
+ * in parallel stay valid, as they come from the trie they started with.
+ *
+ * @param <T> The type of the targets, the rules route to
+ */
+public final class CrashMatcher<T> {
+    public static final int SEVERITY_UNCHANGED = -1;
+
+    private final List<Rule<T>> rules = new ArrayList<>();
+
+    private volatile Trie<T> trie;
+
+    public static final class Rule<T> {
+        private final String prefix;
+        private final String tagPattern;
+        private final boolean isTagPrefix;
+        private final int severity;
+        private final T target;
+
+        private Rule(String prefix, String tagPattern, int severity, T target) {
+            this.prefix = prefix;
+            if (tagPattern != null && tagPattern.endsWith("*")) {
+                this.tagPattern = tagPattern.substring(0, tagPattern.length() - 1);
+                this.isTagPrefix = true;
+            } else {
+                this.tagPattern = tagPattern;
+                this.isTagPrefix = false;
+            }
+            this.severity = severity;
+            this.target = target;
+        }
+
+        private boolean matchesTag(String tag) {
+            if (tagPattern == null) {
+                return true;
+            }
+            if (tag == null) {
+                return false;
+            }
+            return isTagPrefix ? tag.startsWith(tagPattern) : tag.equals(tagPattern);
+        }
+
+        /**
+         * @return The length of the prefix of the rule, to cut it off the message
+         */
+        public int getPrefixLength() {
+            return prefix.length();
+        }
+
+        /**
+         * @return The priority to report with, or {@link #SEVERITY_UNCHANGED} to keep the priority of the log call
+         */
+        public int getSeverity() {
+            return severity;
+        }
+
+        @NonNull public T getTarget() {
+            return target;
+        }
+    }
+
+    /**
+     * The compiled trie, every node owns a sorted range of edges and a range of rules.
+     */
+    private static final class Trie<T> {
+        private final int[] edgeStart;
+        private final char[] edgeChars;
+        private final int[] edgeTargets;
+        private final int[] ruleStart;
+        private final int[] ruleIndices;
+        private final List<Rule<T>> rules;
+
+        private Trie(int[] edgeStart, char[] edgeChars, int[] edgeTargets, int[] ruleStart, int[] ruleIndices,
+                List<Rule<T>> rules) {
+            this.edgeStart = edgeStart;
+            this.edgeChars = edgeChars;
+            this.edgeTargets = edgeTargets;
+            this.ruleStart = ruleStart;
+            this.ruleIndices = ruleIndices;
+            this.rules = rules;
+        }
+
+        private int findChild(int node, char c) {
+            int low = edgeStart[node];
+            int high = edgeStart[node + 1] - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final char value = edgeChars[middle];
+                if (value < c) {
+                    low = middle + 1;
+                } else if (value > c) {
+                    high = middle - 1;
+                } else {
+                    return edgeTargets[middle];
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Adds a rule, which keeps the priority of the log call.
+     *
+     * @see #addRule(String, String, int, Object)
+     */
+    public CrashMatcher<T> addRule(@NonNull String prefix, @Nullable String tagPattern, @NonNull T target) {
+        return addRule(prefix, tagPattern, SEVERITY_UNCHANGED, target);
+    }
+
+    /**
+     * @param prefix     The prefix, the message has to start with. Gets removed from the message when reporting.
+     * @param tagPattern The tag, a tag prefix ending with {@code *}, or null to match any tag
+     * @param severity   The priority to report with, or {@link #SEVERITY_UNCHANGED} to keep the priority of the
+     *                   log call
+     * @param target     The target to route matching messages to
+     * @return The same {@link CrashMatcher} instance to allow chained calls
+     */
+    public synchronized CrashMatcher<T> addRule(@NonNull String prefix, @Nullable String tagPattern, int severity,
+            @NonNull T target) {
+        rules.add(new Rule<>(prefix, tagPattern, severity, target));
+        trie = null;
+        return this;
+    }
+
+    public synchronized CrashMatcher<T> clearRules() {
+        rules.clear();
+        trie = null;
+        return this;
+    }
+
+    /**
+     * @return The matching rule, or null
+     */
+    @Nullable public Rule<T> match(@Nullable String tag, @Nullable String message) {
+        if (message == null) {
+            return null;
+        }
+        // everything below has to come from this one trie, the rules may change meanwhile
+        final Trie<T> current = getTrie();
+        int node = 0;
+        Rule<T> match = matchRules(current, node, tag);
+        for (int i = 0, length = message.length(); i < length; i++) {
+            node = current.findChild(node, message.charAt(i));
+            if (node == -1) {
+                break;
+            }
+            final Rule<T> rule = matchRules(current, node, tag);
+            if (rule != null) {
+                match = rule;
+            }
+        }
+        return match;
+    }
+
+    private Rule<T> matchRules(Trie<T> current, int node, String tag) {
+        for (int i = current.ruleStart[node]; i < current.ruleStart[node + 1]; i++) {
+            final Rule<T> rule = current.rules.get(current.ruleIndices[i]);
+            if (rule.matchesTag(tag)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private Trie<T> getTrie() {
+        final Trie<T> current = trie;
+        return (current != null) ? current : compile();
+    }
+
+    private synchronized Trie<T> compile() {
+        if (trie != null) {
+            return trie;
+        }
+
+        // build a trie of plain nodes first, then flatten it into arrays in breadth first order
+        final List<TreeMap<Character, Integer>> children = new ArrayList<>();
+        final List<List<Integer>> nodeRules = new ArrayList<>();
+        children.add(new TreeMap<Character, Integer>());
+        nodeRules.add(new ArrayList<Integer>());
+
+        for (int ruleIndex = 0; ruleIndex < rules.size(); ruleIndex++) {
+            final String prefix = rules.get(ruleIndex).prefix;
+            int node = 0;
+            for (int i = 0; i < prefix.length(); i++) {
+                final Character c = prefix.charAt(i);
+                Integer child = children.get(node).get(c);
+                if (child == null) {
+                    child = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    nodeRules.add(new ArrayList<Integer>());
+                    children.get(node).put(c, child);
+                }
+                node = child;
+            }
+            nodeRules.get(node).add(ruleIndex);
+        }
+
+        final int nodeCount = children.size();
+        final int[] edgeStart = new int[nodeCount + 1];
+        final char[] edgeChars = new char[nodeCount - 1];
+        final int[] edgeTargets = new int[nodeCount - 1];
+        final int[] ruleStart = new int[nodeCount + 1];
+        final int[] ruleIndices = new int[rules.size()];
+
+        int edge = 0;
+        int ruleOffset = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            edgeStart[node] = edge;
+            for (final Map.Entry<Character, Integer> entry : children.get(node).entrySet()) {
+                edgeChars[edge] = entry.getKey();
+                edgeTargets[edge] = entry.getValue();
+                edge++;
+            }
+            ruleStart[node] = ruleOffset;
+            for (final Integer rule : nodeRules.get(node)) {
+                ruleIndices[ruleOffset++] = rule;
+            }
+        }
+        edgeStart[nodeCount] = edge;
+        ruleStart[nodeCount] = ruleOffset;
+
+        trie = new Trie<>(edgeStart, edgeChars, edgeTargets, ruleStart, ruleIndices,
+                new ArrayList<>(rules));
+        return trie;
+    }
+}
@@ -0,0 +1,351 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import at.amartinz.universaldebug.utils.DurableQueue;
+
+/**
+ * A single, long-lived background thread which persists {@link CrashReport CrashReports} into a
+ * {@link DurableQueue} and delivers them to a {@link CrashBackend}, retrying with exponential backoff.
+ */
+final class CrashOutbox implements Runnable {
+    private static final String TAG = "CrashOutbox";
+
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int MAX_BATCH_SIZE = 32;
+
+    /**
+     * Reports, which make the backend throw this often in a row, get dropped.
+     */
+    private static final int MAX_FAILED_ATTEMPTS = 10;
+
+    /**
+     * After the durable queue could not get opened, the next report or flush tries again after this delay.
+     */
+    static final long OPEN_RETRY_DELAY = 5000;
+
+    // wakes up the outbox thread, never gets persisted
+    private static final CrashReport WAKE_UP = new CrashReport(0, 0, null, null, null);
+
+    private final BaseTree baseTree;
+    private final File directory;
+    private final CrashBackend backend;
+    private final ArrayBlockingQueue<CrashReport> incoming;
+    private final ArrayList<CrashReport> batch;
+    private final AtomicLong droppedCount;
+
+    private volatile long initialBackoff;
+    private volatile long maxBackoff;
+    // between start() and shutdown(), the thread may have stopped in between, see abandon()
+    private volatile boolean isStarted;
+    private volatile boolean isRunning;
+    private volatile long nextOpenAttempt;
+    private volatile DurableQueue durableQueue;
+    private volatile CountDownLatch flushLatch;
+    private Thread thread;
+
+    private long backoff;
+    private long nextAttempt;
+    private int failedAttempts;
+
+    CrashOutbox(@NonNull BaseTree baseTree, @NonNull File directory, @NonNull CrashBackend backend,
+            long initialBackoff, long maxBackoff) {
+        this.baseTree = baseTree;
+        this.directory = directory;
+        this.backend = backend;
+        this.incoming = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.batch = new ArrayList<>(MAX_BATCH_SIZE);
+        this.droppedCount = new AtomicLong();
+
+        setBackoff(initialBackoff, maxBackoff);
+    }
+
+    void setBackoff(long initialBackoff, long maxBackoff) {
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return The amount of reports, which did not get delivered yet
+     */
+    int getPendingCount() {
+        final DurableQueue queue = durableQueue;
+        return incoming.size() + ((queue != null) ? queue.size() : 0);
+    }
+
+    /**
+     * Starts the outbox thread, which also delivers reports left over from previous runs.
+     */
+    synchronized void start() {
+        isStarted = true;
+        nextOpenAttempt = 0;
+        startThread();
+    }
+
+    /**
+     * Starts the outbox thread again, if it stopped because the durable queue could not get opened.
+     */
+    private void ensureStarted() {
+        if (isRunning || !isStarted) {
+            return;
+        }
+        synchronized (this) {
+            if (isStarted && System.currentTimeMillis() >= nextOpenAttempt) {
+                startThread();
+            }
+        }
+    }
+
+    private void startThread() {
+        if (isRunning) {
+            return;
+        }
+        isRunning = true;
+        thread = new Thread(this, "UniversalDebug-CrashOutbox");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queues a report for persisting. Never blocks, if the queue is full the report gets dropped and counted.
+     */
+    void enqueue(@NonNull CrashReport report) {
+        ensureStarted();
+        if (!incoming.offer(report)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Stops the outbox thread after it has persisted all queued reports.<br>
+     * Reports, which did not get delivered yet, get delivered after the next start.
+     */
+    void shutdown() {
+        synchronized (this) {
+            isStarted = false;
+            if (!isRunning) {
+                return;
+            }
+            isRunning = false;
+            thread = null;
+        }
+        // do not interrupt, as an interrupt would close the file channel while writing
+        incoming.offer(WAKE_UP);
+    }
+
+    /**
+     * Waits until all reports, which got queued before, got persisted.
+     *
+     * @param timeoutMillis How long to wait at most
+     * @return True, if everything got persisted in time
+     */
+    boolean flush(long timeoutMillis) {
+        ensureStarted();
+        CountDownLatch latch;
+        synchronized (this) {
+            if (!isRunning) {
+                // the durable queue could not get opened recently, there is nothing to wait for
+                return incoming.isEmpty();
+            }
+            latch = flushLatch;
+            if (latch == null) {
+                latch = new CountDownLatch(1);
+                flushLatch = latch;
+            }
+        }
+        incoming.offer(WAKE_UP);
+        try {
+            // the thread also releases the latch when it has to abandon the queued reports
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS) && (isRunning || incoming.isEmpty());
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        final DurableQueue queue;
+        try {
+            queue = new DurableQueue(directory);
+        } catch (IOException ioe) {
+            baseTree.reallyDoLog(Log.ERROR, TAG, "Could not open crash outbox!", ioe);
+            abandon();
+            return;
+        }
+        durableQueue = queue;
+        backoff = initialBackoff;
+
+        while (isRunning || !incoming.isEmpty()) {
+            final CrashReport first;
+            try {
+                first = incoming.poll(computeWait(queue), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                continue;
+            }
+
+            if (first != null) {
+                batch.add(first);
+                incoming.drainTo(batch, MAX_BATCH_SIZE - 1);
+                persist(queue);
+            }
+
+            final CountDownLatch latch = flushLatch;
+            if (latch != null && incoming.isEmpty()) {
+                synchronized (this) {
+                    flushLatch = null;
+                }
+                latch.countDown();
+            }
+
+            if (isRunning && queue.size() > 0 && System.currentTimeMillis() >= nextAttempt) {
+                deliver(queue);
+            }
+        }
+
+        try {
+            queue.close();
+        } catch (IOException ioe) {
+            baseTree.reallyDoLog(Log.ERROR, TAG, "Could not close crash outbox!", ioe);
+        }
+    }
+
+    /**
+     * Stops after the durable queue could not get opened, for example because another outbox uses the directory.
+     * Queued reports stay queued, the next report or flush after {@link #OPEN_RETRY_DELAY} tries again.
+     */
+    private void abandon() {
+        nextOpenAttempt = System.currentTimeMillis() + OPEN_RETRY_DELAY;
+        isRunning = false;
+
+        final CountDownLatch latch;
+        synchronized (this) {
+            latch = flushLatch;
+            flushLatch = null;
+        }
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    private long computeWait(DurableQueue queue) {
+        if (queue.size() == 0) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, nextAttempt - System.currentTimeMillis());
+    }
+
+    private void persist(DurableQueue queue) {
+        try {
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                final CrashReport report = batch.get(i);
+                if (report != WAKE_UP) {
+                    queue.append(report.toBytes());
+                }
+            }
+            // a single sync for the whole batch
+            queue.sync();
+        } catch (IOException ioe) {
+            baseTree.reallyDoLog(Log.ERROR, TAG, "Could not persist crash reports!", ioe);
+        }
+        batch.clear();
+    }
+
+    private void deliver(DurableQueue queue) {
+        boolean failed = false;
+        try {
+            final List<byte[]> records = queue.peek(MAX_BATCH_SIZE);
+            int delivered = 0;
+            for (final byte[] record : records) {
+                final CrashReport report;
+                try {
+                    report = CrashReport.fromBytes(record);
+                } catch (IOException ioe) {
+                    // can never be delivered, skip it
+                    delivered++;
+                    continue;
+                }
+
+                if (!send(report)) {
+                    failed = true;
+                    break;
+                }
+                delivered++;
+            }
+            queue.remove(delivered);
+        } catch (IOException ioe) {
+            baseTree.reallyDoLog(Log.ERROR, TAG, "Could not read crash outbox!", ioe);
+            failed = true;
+        }
+
+        if (failed) {
+            nextAttempt = System.currentTimeMillis() + backoff;
+            backoff = Math.min(backoff * 2, maxBackoff);
+        } else {
+            nextAttempt = 0;
+            backoff = initialBackoff;
+        }
+    }
+
+    /**
+     * @return True, if the report got delivered or has to be dropped
+     */
+    private boolean send(CrashReport report) {
+        try {
+            if (!backend.send(report)) {
+                // the backend is not ready, retry later without counting it against the report
+                return false;
+            }
+        } catch (Throwable throwable) {
+            // also errors, like a NoClassDefFoundError if the SDK of the backend is missing
+            failedAttempts++;
+            if (failedAttempts < MAX_FAILED_ATTEMPTS) {
+                return false;
+            }
+            baseTree.reallyDoLog(Log.ERROR, TAG, "Dropping crash report, delivering it failed repeatedly",
+                    throwable);
+        }
+        failedAttempts = 0;
+        return true;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A crash, which got reported via a {@link CrashComponent}, in a form which can be persisted.<br>
+ * The throwable is kept as its class name, message and stack trace, along with the ones of its causes, use
+ * {@link #toThrowable()} to get a throwable which can be passed to crash reporting services.
+ */
+public final class CrashReport {
+    private static final int VERSION = 2;
+    // reports of the previous version have no causes, they may still be waiting in an outbox
+    private static final int VERSION_WITHOUT_CAUSES = 1;
+
+    /**
+     * Only the top frames get persisted, that is what crash reporting services group by anyway.
+     */
+    public static final int MAX_FRAMES = 64;
+    /**
+     * The amount of causes, which get persisted, the root cause is usually within the first few.
+     */
+    public static final int MAX_CAUSES = 8;
+    /**
+     * Only the top frames of every cause get persisted.
+     */
+    public static final int MAX_CAUSE_FRAMES = 32;
+
+    private static final Cause[] NO_CAUSES = new Cause[0];
+
+    private final long timestamp;
+    private final int priority;
+    private final String tag;
+    private final String message;
+    private final String throwableClassName;
+    private final String throwableMessage;
+    private final StackTraceElement[] stackTrace;
+    private final Cause[] causes;
+
+    private static final class Cause {
+        private final String className;
+        private final String message;
+        private final StackTraceElement[] stackTrace;
+
+        private Cause(String className, String message, StackTraceElement[] stackTrace) {
+            this.className = className;
+            this.message = message;
+            this.stackTrace = stackTrace;
+        }
+    }
+
+    public CrashReport(long timestamp, int priority, @Nullable String tag, @Nullable String message,
+            @Nullable Throwable t) {
+        this(timestamp, priority, tag, message,
+                (t != null) ? t.getClass().getName() : null,
+                (t != null) ? t.getMessage() : null,
+                (t != null) ? t.getStackTrace() : new StackTraceElement[0],
+                collectCauses(t));
+    }
+
+    private CrashReport(long timestamp, int priority, String tag, String message, String throwableClassName,
+            String throwableMessage, StackTraceElement[] stackTrace, Cause[] causes) {
+        this.timestamp = timestamp;
+        this.priority = priority;
+        this.tag = tag;
+        this.message = message;
+        this.throwableClassName = throwableClassName;
+        this.throwableMessage = throwableMessage;
+        this.stackTrace = stackTrace;
+        this.causes = causes;
+    }
+
+    private static Cause[] collectCauses(Throwable t) {
+        if (t == null || t.getCause() == null) {
+            return NO_CAUSES;
+        }
+        final Cause[] causes = new Cause[MAX_CAUSES];
+        int count = 0;
+        // bounded, which also stops at cause chains with a cycle
+        for (Throwable cause = t.getCause(); cause != null && count < MAX_CAUSES; cause = cause.getCause()) {
+            final StackTraceElement[] frames = cause.getStackTrace();
+            causes[count++] = new Cause(cause.getClass().getName(), cause.getMessage(),
+                    Arrays.copyOf(frames, Math.min(frames.length, MAX_CAUSE_FRAMES)));
+        }
+        return Arrays.copyOf(causes, count);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    @Nullable public String getTag() {
+        return tag;
+    }
+
+    @Nullable public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return The class name of the reported throwable, or null if there was none
+     */
+    @Nullable public String getThrowableClassName() {
+        return throwableClassName;
+    }
+
+    /**
+     * @return True, if a throwable got reported
+     */
+    public boolean hasThrowable() {
+        return throwableClassName != null;
+    }
+
+    /**
+     * Creates a throwable with the message {@code tag: message}, which carries the stack trace of the reported
+     * throwable, or none if there was none. Its causes get restored as causes of the throwable.<br>
+     * The original classes can not be restored, their names are part of the messages instead.
+     */
+    @NonNull public Throwable toThrowable() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(tag).append(": ").append(message);
+        if (throwableClassName != null) {
+            builder.append(" [").append(throwableClassName);
+            if (throwableMessage != null) {
+                builder.append(": ").append(throwableMessage);
+            }
+            builder.append(']');
+        }
+        final RuntimeException exception = new RuntimeException(builder.toString());
+        exception.setStackTrace(stackTrace);
+
+        Throwable last = exception;
+        for (final Cause cause : causes) {
+            final String causeMessage = (cause.message != null)
+                    ? cause.className + ": " + cause.message : cause.className;
+            final RuntimeException causeException = new RuntimeException(causeMessage);
+            causeException.setStackTrace(cause.stackTrace);
+            last.initCause(causeException);
+            last = causeException;
+        }
+        return exception;
+    }
+
+    @NonNull byte[] toBytes() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(VERSION);
+            out.writeLong(timestamp);
+            out.writeByte(priority);
+            writeString(out, tag);
+            writeString(out, message);
+            writeString(out, throwableClassName);
+            writeString(out, throwableMessage);
+
+            writeStackTrace(out, stackTrace, MAX_FRAMES);
+
+            out.writeByte(causes.length);
+            for (final Cause cause : causes) {
+                writeString(out, cause.className);
+                writeString(out, cause.message);
+                writeStackTrace(out, cause.stackTrace, MAX_CAUSE_FRAMES);
+            }
+            out.flush();
+        } catch (IOException ignored) {
+            // does not happen when writing to a ByteArrayOutputStream
+        }
+        return bytes.toByteArray();
+    }
+
+    @NonNull static CrashReport fromBytes(@NonNull byte[] bytes) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        final int version = in.readByte();
+        if (version != VERSION && version != VERSION_WITHOUT_CAUSES) {
+            throw new IOException("Unknown crash report version " + version);
+        }
+        final long timestamp = in.readLong();
+        final int priority = in.readByte();
+        final String tag = readString(in);
+        final String message = readString(in);
+        final String throwableClassName = readString(in);
+        final String throwableMessage = readString(in);
+
+        final StackTraceElement[] stackTrace = readStackTrace(in);
+
+        Cause[] causes = NO_CAUSES;
+        if (version != VERSION_WITHOUT_CAUSES) {
+            causes = new Cause[in.readUnsignedByte()];
+            for (int i = 0; i < causes.length; i++) {
+                final String className = readString(in);
+                final String causeMessage = readString(in);
+                causes[i] = new Cause(String.valueOf(className), causeMessage, readStackTrace(in));
+            }
+        }
+        return new CrashReport(timestamp, priority, tag, message, throwableClassName, throwableMessage, stackTrace,
+                causes);
+    }
+
+    private static void writeStackTrace(DataOutputStream out, StackTraceElement[] stackTrace, int maxFrames)
+            throws IOException {
+        final int frames = Math.min(stackTrace.length, maxFrames);
+        out.writeShort(frames);
+        for (int i = 0; i < frames; i++) {
+            final StackTraceElement element = stackTrace[i];
+            writeString(out, element.getClassName());
+            writeString(out, element.getMethodName());
+            writeString(out, element.getFileName());
+            out.writeInt(element.getLineNumber());
+        }
+    }
+
+    private static StackTraceElement[] readStackTrace(DataInputStream in) throws IOException {
+        final StackTraceElement[] stackTrace = new StackTraceElement[in.readShort()];
+        for (int i = 0; i < stackTrace.length; i++) {
+            final String className = readString(in);
+            final String methodName = readString(in);
+            final String fileName = readString(in);
+            final int lineNumber = in.readInt();
+            stackTrace[i] = new StackTraceElement(String.valueOf(className), String.valueOf(methodName),
+                    fileName, lineNumber);
+        }
+        return stackTrace;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        // writeUTF is limited to 64K
+        final byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link LogOutput} which keeps a single {@link FileChannel} open and appends to it through a direct buffer.
+ */
+public class FileLogOutput extends LogOutput {
+    public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;
+
+    private final File file;
+    private final ByteBuffer buffer;
+
+    private FileOutputStream outputStream;
+    private FileChannel channel;
+
+    public FileLogOutput(@NonNull File file) {
+        this(file, DEFAULT_BUFFER_SIZE);
+    }
+
+    public FileLogOutput(@NonNull File file, int bufferSize) {
+        this.file = file;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @Override public void open() throws IOException {
+        outputStream = new FileOutputStream(file, true);
+        channel = outputStream.getChannel();
+    }
+
+    @Override public void write(@NonNull ByteBuffer src) throws IOException {
+        if (src.remaining() > buffer.remaining()) {
+            flush();
+            // too big for our buffer anyway, hand it over directly
+            if (src.remaining() > buffer.capacity()) {
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+                return;
+            }
+        }
+        buffer.put(src);
+    }
+
+    @Override public void flush() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            outputStream.close();
+            outputStream = null;
+            channel = null;
+        }
+    }
+
+    @NonNull @Override public File getCurrentFile() {
+        return file;
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Records every log call into a fixed size, off-heap ring buffer, older records get overwritten.<br>
+ * Nothing gets written to disk during normal operation, memory usage does not depend on the log volume.<br>
+ * When an event with at least the dump priority (default {@link Log#ERROR}) gets logged, the ring gets dumped
+ * to a file, to have the full context around the failure. The dumps can be read with {@link BinaryLogDecoder}.<br>
+ * The logging thread only copies the ring, writing it happens on a background thread.<br>
+ * <br>
+ * Accepts every priority by default, regardless of the filter of the {@link BaseTree}. Note that this also means
+ * Timber formats every message.
+ */
+public class FlightRecorderComponent extends BaseTreeComponent {
+    public static final int DEFAULT_SIZE = 256 * 1024;
+
+    public static final int DEFAULT_DUMP_PRIORITY = Log.ERROR;
+    public static final long DEFAULT_MIN_DUMP_INTERVAL = 10 * 1000;
+    public static final int DEFAULT_MAX_DUMP_FILES = 5;
+
+    private static final String PREFIX_DUMP = "flight_";
+    private static final String SUFFIX_DUMP = ".ring";
+
+    private final File dumpDirectory;
+
+    private final ByteBuffer ringBuffer;
+    private final RecordRing ring;
+    private final BinaryLogEncoder encoder;
+    private final RecordBuffer recordBuffer;
+
+    private int dumpPriority = DEFAULT_DUMP_PRIORITY;
+    private long minDumpInterval = DEFAULT_MIN_DUMP_INTERVAL;
+    private int maxDumpFiles = DEFAULT_MAX_DUMP_FILES;
+
+    private final ExecutorService dumpExecutor;
+
+    private long lastDumpTime;
+    // an error loop must not queue up copies of the ring faster than the disk can write them
+    private boolean isAutomaticDumpPending;
+    private volatile File lastDumpFile;
+
+    public FlightRecorderComponent(@NonNull BaseTree baseTree) {
+        this(baseTree, DEFAULT_SIZE, null);
+    }
+
+    /**
+     * @param baseTree      The {@link BaseTree} this component belongs to
+     * @param size          The size of the ring buffer in bytes
+     * @param dumpDirectory The directory to dump into, defaults to the cache directory
+     */
+    public FlightRecorderComponent(@NonNull BaseTree baseTree, int size, @Nullable File dumpDirectory) {
+        super(baseTree);
+        this.dumpDirectory = (dumpDirectory != null) ? dumpDirectory : baseTree.getApplicationContext().getCacheDir();
+
+        // off-heap, so it does not add to the garbage collector's work
+        this.ringBuffer = ByteBuffer.allocateDirect(size);
+        this.ring = RecordRing.attach(ringBuffer);
+        this.encoder = new BinaryLogEncoder();
+        this.recordBuffer = new RecordBuffer(256);
+        this.encoder.startSegment(recordBuffer, true);
+
+        this.dumpExecutor = createDumpExecutor();
+    }
+
+    /**
+     * @param dumpPriority The minimum priority, which dumps the ring to a file, {@link Integer#MAX_VALUE} to never dump
+     * @return The same {@link FlightRecorderComponent} instance to allow chained calls
+     */
+    public FlightRecorderComponent setDumpPriority(int dumpPriority) {
+        this.dumpPriority = dumpPriority;
+        return this;
+    }
+
+    /**
+     * @param minDumpInterval The minimum time between two automatic dumps in milliseconds, so an error loop does
+     *                        not keep the disk busy
+     * @return The same {@link FlightRecorderComponent} instance to allow chained calls
+     */
+    public FlightRecorderComponent setMinDumpInterval(long minDumpInterval) {
+        this.minDumpInterval = minDumpInterval;
+        return this;
+    }
+
+    /**
+     * @param maxDumpFiles The amount of automatic dumps to keep, older ones get deleted
+     * @return The same {@link FlightRecorderComponent} instance to allow chained calls
+     */
+    public FlightRecorderComponent setMaxDumpFiles(int maxDumpFiles) {
+        this.maxDumpFiles = maxDumpFiles;
+        return this;
+    }
+
+    @Override protected boolean shouldLog(int priority) {
+        if (priorityFilterSet == null) {
+            return true;
+        }
+        return super.shouldLog(priority);
+    }
+
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == FlightRecorderComponent.class && priorityFilterSet == null;
+    }
+
+    @Override protected void doLog(int priority, String tag, String message, Throwable t) {
+        final long timestamp = System.currentTimeMillis();
+        byte[] snapshot = null;
+        synchronized (ring) {
+            recordBuffer.clear();
+            encoder.encode(recordBuffer, timestamp, priority, tag, message, t);
+            ring.append(recordBuffer.flip());
+            encoder.onRecordWritten();
+
+            if (priority >= dumpPriority && timestamp - lastDumpTime >= minDumpInterval
+                    && !isAutomaticDumpPending) {
+                lastDumpTime = timestamp;
+                isAutomaticDumpPending = true;
+                snapshot = snapshot();
+            }
+        }
+
+        if (snapshot != null) {
+            // the disk may be slow, never let the logging thread wait for it
+            scheduleDump(timestamp, snapshot, true);
+        }
+    }
+
+    /**
+     * Dumps the ring to a file, regardless of the minimum dump interval.
+     */
+    @Override public boolean flush(long timeoutMillis) {
+        final long timestamp = System.currentTimeMillis();
+        final byte[] snapshot;
+        synchronized (ring) {
+            lastDumpTime = timestamp;
+            snapshot = snapshot();
+        }
+
+        // dumps run one after the other, so this also waits for pending automatic dumps
+        final Future<Boolean> dump = scheduleDump(timestamp, snapshot, false);
+        try {
+            return dump.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException te) {
+            return false;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException ee) {
+            baseTree.reallyDoLog(Log.ERROR, "FlightRecorderComponent", "Could not dump", ee.getCause());
+            return false;
+        }
+    }
+
+    private Future<Boolean> scheduleDump(final long timestamp, final byte[] snapshot, final boolean isAutomatic) {
+        return dumpExecutor.submit(new Callable<Boolean>() {
+            @Override public Boolean call() {
+                if (isAutomatic) {
+                    synchronized (ring) {
+                        isAutomaticDumpPending = false;
+                    }
+                }
+                return dump(timestamp, snapshot);
+            }
+        });
+    }
+
+    private boolean dump(long timestamp, byte[] snapshot) {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd_HHmmss_SSS", Locale.ENGLISH);
+        final File file = new File(dumpDirectory, PREFIX_DUMP + dateFormat.format(new Date(timestamp)) + SUFFIX_DUMP);
+        try {
+            write(file, snapshot);
+            lastDumpFile = file;
+        } catch (IOException ioe) {
+            baseTree.reallyDoLog(Log.ERROR, "FlightRecorderComponent", "Could not dump to " + file, ioe);
+            return false;
+        }
+        deleteOldDumps();
+        return true;
+    }
+
+    private void deleteOldDumps() {
+        final File[] files = dumpDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        final String[] dumps = new String[files.length];
+        int count = 0;
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.startsWith(PREFIX_DUMP) && name.endsWith(SUFFIX_DUMP)) {
+                dumps[count++] = name;
+            }
+        }
+        // the names are sortable by time
+        Arrays.sort(dumps, 0, count);
+        for (int i = 0; i < count - maxDumpFiles; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            new File(dumpDirectory, dumps[i]).delete();
+        }
+    }
+
+    /**
+     * Writes the current content of the ring to the given file, in the format of {@link MappedRingLogOutput}.<br>
+     * Blocks until the file is synced to the disk, call it from a worker thread.
+     *
+     * @param file The file to write to
+     */
+    @WorkerThread public void dumpTo(@NonNull File file) throws IOException {
+        final byte[] snapshot;
+        synchronized (ring) {
+            snapshot = snapshot();
+        }
+        write(file, snapshot);
+    }
+
+    /**
+     * Copies the whole ring including its header, must be called while holding the lock of the ring.
+     */
+    private byte[] snapshot() {
+        final ByteBuffer source = ringBuffer.duplicate();
+        source.clear();
+        final byte[] snapshot = new byte[source.remaining()];
+        source.get(snapshot);
+        return snapshot;
+    }
+
+    private static void write(File file, byte[] snapshot) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(snapshot);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+    }
+
+    private static ExecutorService createDumpExecutor() {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override public Thread newThread(@NonNull Runnable runnable) {
+                final Thread thread = new Thread(runnable, "UniversalDebug-FlightRecorder");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        // dumps are rare, do not keep a thread around for them
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Decodes the current content of the ring, for example to attach it to a crash report.
+     *
+     * @return The recorded log lines from oldest to newest
+     */
+    @NonNull public String dumpToString() {
+        final List<byte[]> records;
+        synchronized (ring) {
+            records = ring.readRecords();
+        }
+
+        final StringWriter writer = new StringWriter();
+        final BinaryLogDecoder decoder = new BinaryLogDecoder(writer);
+        try {
+            for (final byte[] record : records) {
+                decoder.decodeFramed(record);
+            }
+        } catch (IOException ignored) {
+            // does not happen when writing to a StringWriter
+        }
+        return writer.toString();
+    }
+
+    /**
+     * @return The file of the last automatic dump, or null if there was none yet
+     */
+    @Nullable public File getLastDumpFile() {
+        return lastDumpFile;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.util.Log;
+
+/**
+ * Decides when the writer thread of {@link WriterComponent} flushes its buffer to the file.<br>
+ * A flush happens as soon as any of the configured conditions is met.
+ */
+public class FlushPolicy {
+    public static final int DEFAULT_FLUSH_BYTES = 8 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private int flushBytes = DEFAULT_FLUSH_BYTES;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private int flushPriority = Log.ERROR;
+
+    /**
+     * @param flushBytes Flush once this many bytes got written since the last flush
+     * @return The same {@link FlushPolicy} instance to allow chained calls
+     */
+    public FlushPolicy setFlushBytes(int flushBytes) {
+        this.flushBytes = flushBytes;
+        return this;
+    }
+
+    /**
+     * @param flushInterval Flush at the latest this many milliseconds after the first unflushed write
+     * @return The same {@link FlushPolicy} instance to allow chained calls
+     */
+    public FlushPolicy setFlushInterval(long flushInterval) {
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    /**
+     * @param flushPriority Flush immediately after writing a log with this or a higher priority,
+     *                      pass {@link Integer#MAX_VALUE} to disable
+     * @return The same {@link FlushPolicy} instance to allow chained calls
+     */
+    public FlushPolicy setFlushPriority(int flushPriority) {
+        this.flushPriority = flushPriority;
+        return this;
+    }
+
+    public int getFlushBytes() {
+        return flushBytes;
+    }
+
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public int getFlushPriority() {
+        return flushPriority;
+    }
+}
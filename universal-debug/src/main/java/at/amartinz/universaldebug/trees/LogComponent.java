@@ -34,6 +34,10 @@ public class LogComponent extends BaseTreeComponent {
         super(baseTree);
     }
 
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == LogComponent.class && hasDefaultFixedFilter();
+    }
+
     @Override protected void doLog(int priority, String tag, String message, Throwable t) {
         baseTree.reallyDoLog(priority, tag, message, t);
     }
@@ -0,0 +1,58 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Turns log lines into bytes for a {@link LogOutput}.<br>
+ * Only ever called from the writer thread of {@link WriterComponent}, so implementations may keep state.
+ */
+public abstract class LogEncoder {
+    /**
+     * Called before the first record of every new file.
+     *
+     * @param out    The buffer to write a header into, if needed
+     * @param framed Whether the output stores every record separately and may drop old ones,
+     *               see {@link LogOutput#isRecordFramed()}. Records then have to be self-contained.
+     */
+    public void startSegment(@NonNull RecordBuffer out, boolean framed) { }
+
+    /**
+     * Encodes a single log line.
+     *
+     * @param out       The buffer to write the record into
+     * @param timestamp The time of the log call, in milliseconds since epoch
+     */
+    public abstract void encode(@NonNull RecordBuffer out, long timestamp, int priority, String tag, String message,
+            Throwable t);
+
+    /**
+     * Called after the record of the last {@link #encode(RecordBuffer, long, int, String, String, Throwable)} call
+     * got handed to the output. Records which failed to get written never get here, so state which later records
+     * depend on, like a dictionary, should only get committed here.
+     */
+    public void onRecordWritten() { }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A destination for encoded log records, used by the writer thread of {@link WriterComponent}.<br>
+ * All methods are only ever called from the writer thread.
+ */
+public abstract class LogOutput {
+    /**
+     * Opens the output. Called before the first {@link #write(ByteBuffer)} and again after {@link #close()},
+     * if the writer thread gets started again.
+     */
+    public abstract void open() throws IOException;
+
+    /**
+     * Called before every {@link #write(ByteBuffer)}, allows to start a new file.
+     *
+     * @param length The size of the next record in bytes
+     * @return True, if a new file got started and the {@link LogEncoder} has to start a new segment
+     */
+    public boolean rotateIfNeeded(int length) throws IOException {
+        return false;
+    }
+
+    /**
+     * @return True, if every {@link #write(ByteBuffer)} gets stored as a separate record and old records may
+     * get dropped, which requires every record to be self-contained
+     */
+    public boolean isRecordFramed() {
+        return false;
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer.
+     *
+     * @param buffer The encoded record
+     */
+    public abstract void write(@NonNull ByteBuffer buffer) throws IOException;
+
+    /**
+     * Hands all buffered bytes to the operating system.
+     */
+    public abstract void flush() throws IOException;
+
+    public abstract void close() throws IOException;
+
+    /**
+     * @return The file which currently receives the writes, if any
+     */
+    @Nullable public abstract File getCurrentFile();
+}
@@ -0,0 +1,284 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free token buckets per tag, or per tag and priority, which limit how many lines a single source may log.<br>
+ * <br>
+ * The buckets live in a bounded open addressing table. Each bucket packs the time of its last refill and its
+ * tokens into a single long, which gets updated with compare-and-set, so checking a line never locks or
+ * allocates once its tag got seen. If the table is full, a new tag takes over the bucket of a source, which did not
+ * log for a while. Only if there is none, lines of the new tag are not limited.<br>
+ * Lines exceeding the budget get counted per bucket, see {@link #sweep(boolean, Summary)} and
+ * {@link #tryScheduleSweep()}.
+ */
+final class LogThrottle {
+    private static final int CAPACITY = 512;
+    private static final int MAX_PROBES = 16;
+
+    // tokens are stored in thousandths, so refilling per millisecond is exact
+    private static final int TOKEN_SCALE = 1000;
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final int MAX_BURST = (int) (TOKEN_MASK / TOKEN_SCALE);
+
+    /**
+     * How often to look for storms, which ended, while lines are suppressed.
+     */
+    static final long SWEEP_INTERVAL = 1000;
+    /**
+     * How often to report an ongoing storm.
+     */
+    private static final long SUMMARY_INTERVAL = 10 * 1000;
+    /**
+     * How long a source has to be quiet, before a new tag may take over its bucket.
+     */
+    private static final long IDLE_TIME = 60 * 1000;
+
+    private static final String NULL_TAG = "null";
+
+    private final int linesPerSecond;
+    private final long maxTokens;
+    private final boolean isPerPriority;
+    private final int exemptPriority;
+    private final long startTime;
+
+    private final AtomicReferenceArray<Key> keys;
+    // time of the last refill in milliseconds since the start << TOKEN_BITS | scaled tokens
+    private final AtomicLongArray states;
+    private final AtomicLongArray suppressedCounts;
+    private final AtomicLongArray lastSummaries;
+    private final AtomicBoolean isSweepScheduled;
+
+    private static final class Key {
+        private final String tag;
+        private final int priority;
+
+        private Key(String tag, int priority) {
+            this.tag = tag;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * Gets told about sources, whose lines got suppressed.
+     */
+    abstract static class Summary {
+        abstract void onSuppressed(int priority, @NonNull String tag, long count, boolean isOngoing);
+    }
+
+    LogThrottle(int linesPerSecond, int burst, boolean isPerPriority, int exemptPriority) {
+        this.linesPerSecond = linesPerSecond;
+        this.maxTokens = (long) Math.min(Math.max(burst, 1), MAX_BURST) * TOKEN_SCALE;
+        this.isPerPriority = isPerPriority;
+        this.exemptPriority = exemptPriority;
+        this.startTime = System.nanoTime();
+
+        this.keys = new AtomicReferenceArray<>(CAPACITY);
+        this.states = new AtomicLongArray(CAPACITY);
+        this.suppressedCounts = new AtomicLongArray(CAPACITY);
+        this.lastSummaries = new AtomicLongArray(CAPACITY);
+        this.isSweepScheduled = new AtomicBoolean();
+    }
+
+    /**
+     * @return True, if lines of this priority never get dropped
+     */
+    boolean isExempt(int priority) {
+        return priority >= exemptPriority;
+    }
+
+    /**
+     * @param now The current time, see {@link #currentTime()}
+     * @return True, if the line is within the budget of its source and should get logged
+     */
+    boolean tryAcquire(int priority, String tag, long now) {
+        if (tag == null) {
+            tag = NULL_TAG;
+        }
+        final int slot = findSlot(tag, isPerPriority ? priority : 0, now);
+        if (slot < 0) {
+            // the table is full, rather log too much than drop lines of sources we can not track
+            return true;
+        }
+
+        while (true) {
+            final long state = states.get(slot);
+            final long tokens = refill(state, now);
+            final boolean isAllowed = tokens >= TOKEN_SCALE;
+            final long updated = (now << TOKEN_BITS) | (isAllowed ? tokens - TOKEN_SCALE : tokens);
+            if (states.compareAndSet(slot, state, updated)) {
+                if (!isAllowed) {
+                    suppressedCounts.incrementAndGet(slot);
+                }
+                return isAllowed;
+            }
+        }
+    }
+
+    /**
+     * Call it after a line got suppressed, summaries must not depend on further lines getting logged.
+     *
+     * @return True, if the caller has to schedule {@link #runScheduledSweep(Summary)} in {@link #SWEEP_INTERVAL},
+     * only returns true if no sweep is scheduled yet
+     */
+    boolean tryScheduleSweep() {
+        return !isSweepScheduled.get() && isSweepScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Reports the storms which ended, see {@link #tryScheduleSweep()}.
+     *
+     * @return True, if lines are still suppressed and the sweep has to get scheduled again
+     */
+    boolean runScheduledSweep(@NonNull Summary summary) {
+        sweep(false, summary);
+        if (hasSuppressedLines()) {
+            return true;
+        }
+        isSweepScheduled.set(false);
+        // a line may have been suppressed right before the flag got cleared
+        return hasSuppressedLines() && tryScheduleSweep();
+    }
+
+    private boolean hasSuppressedLines() {
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            if (suppressedCounts.get(slot) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reports the suppressed lines of every source, whose storm ended or went on for too long without a report.
+     *
+     * @param force Whether to report all suppressed lines, even of ongoing storms
+     */
+    void sweep(boolean force, @NonNull Summary summary) {
+        final long now = currentTime();
+        for (int slot = 0; slot < CAPACITY; slot++) {
+            final Key key = keys.get(slot);
+            if (key == null || suppressedCounts.get(slot) == 0) {
+                continue;
+            }
+            // the storm ended, once the bucket got refilled completely
+            final boolean isOngoing = refill(states.get(slot), now) < maxTokens;
+            final long lastSummary = lastSummaries.get(slot);
+            if (isOngoing && !force && now - lastSummary < SUMMARY_INTERVAL) {
+                continue;
+            }
+            if (!lastSummaries.compareAndSet(slot, lastSummary, now)) {
+                // another thread reports it
+                continue;
+            }
+            final long count = suppressedCounts.getAndSet(slot, 0);
+            if (count > 0) {
+                summary.onSuppressed(key.priority, key.tag, count, isOngoing);
+            }
+        }
+    }
+
+    private long refill(long state, long now) {
+        final long lastRefill = state >>> TOKEN_BITS;
+        final long tokens = state & TOKEN_MASK;
+        if (lastRefill == 0) {
+            // a new bucket starts full
+            return maxTokens;
+        }
+        final long elapsed = Math.max(0, now - lastRefill);
+        // linesPerSecond tokens per second are linesPerSecond thousandths per millisecond
+        return Math.min(maxTokens, tokens + elapsed * linesPerSecond);
+    }
+
+    /**
+     * @return The milliseconds since the throttle got created, read it once per line as the clock is not free
+     */
+    long currentTime() {
+        // never 0, that marks a new bucket
+        return (System.nanoTime() - startTime) / 1000000L + 1;
+    }
+
+    private int findSlot(String tag, int priority, long now) {
+        int hash = tag.hashCode() * 31 + priority;
+        // spread the bits, as the table index only uses the lower ones
+        hash ^= (hash >>> 16);
+        hash *= 0x85EBCA6B;
+        hash ^= (hash >>> 13);
+
+        Key created = null;
+        int idleSlot = -1;
+        Key idleKey = null;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            final int slot = (hash + probe) & (CAPACITY - 1);
+            Key key = keys.get(slot);
+            if (key == null) {
+                if (created == null) {
+                    created = new Key(tag, priority);
+                }
+                if (keys.compareAndSet(slot, null, created)) {
+                    return slot;
+                }
+                key = keys.get(slot);
+            }
+            if (key.priority == priority && key.tag.equals(tag)) {
+                return slot;
+            }
+            if (idleKey == null && isIdle(slot, now)) {
+                idleSlot = slot;
+                idleKey = key;
+            }
+        }
+
+        // slots never get emptied, so probing stays correct, the tag of an idle one gets replaced instead
+        if (idleKey != null) {
+            if (created == null) {
+                created = new Key(tag, priority);
+            }
+            if (keys.compareAndSet(idleSlot, idleKey, created)) {
+                // a line of the previous tag racing with this may still count against the new one, which is fine
+                states.set(idleSlot, 0);
+                suppressedCounts.set(idleSlot, 0);
+                lastSummaries.set(idleSlot, 0);
+                return idleSlot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return True, if the source of the slot did not log for {@link #IDLE_TIME} and has nothing left to report
+     */
+    private boolean isIdle(int slot, long now) {
+        final long lastRefill = states.get(slot) >>> TOKEN_BITS;
+        return lastRefill != 0 && now - lastRefill >= IDLE_TIME && suppressedCounts.get(slot) == 0;
+    }
+}
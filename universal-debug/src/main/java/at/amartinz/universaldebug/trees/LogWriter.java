@@ -0,0 +1,433 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single, long-lived background thread which drains queued log lines in batches into a {@link LogOutput}.
+ */
+final class LogWriter implements Runnable {
+    private static final String TAG = "LogWriter";
+
+    private static final int MAX_BATCH_SIZE = 256;
+    private static final long IDLE_WAIT = 1000;
+    // after the output could not get opened, lines get dropped for a while instead of retrying for every line
+    private static final long OPEN_RETRY_DELAY = 5000;
+
+    static final class Entry {
+        long timestamp;
+        int priority;
+        String tag;
+        String message;
+        Throwable throwable;
+
+        void clear() {
+            tag = null;
+            message = null;
+            throwable = null;
+        }
+    }
+
+    // wakes up the writer thread, never gets written
+    private static final Entry WAKE_UP = new Entry();
+
+    private final BaseTree baseTree;
+    private final LogOutput output;
+    private final LogEncoder encoder;
+    private final ArrayBlockingQueue<Entry> queue;
+    // recycled entries, so queueing a line does not allocate once the queue got filled up once
+    private final ArrayBlockingQueue<Entry> freeEntries;
+    private final ArrayList<Entry> batch;
+    private final AtomicLong droppedCount;
+
+    private final RecordBuffer recordBuffer;
+
+    // guards starting and stopping, never held while waiting for a thread
+    private final Object lifecycleLock = new Object();
+
+    private volatile FlushPolicy flushPolicy;
+    private volatile boolean isRunning;
+    private volatile CountDownLatch flushLatch;
+    private volatile long nextOpenAttempt;
+    // the current writer thread, a previous one stops once it got replaced
+    private volatile Thread thread;
+    // guarded by lifecycleLock, the new writer thread waits for it before it touches the output
+    private Thread predecessor;
+
+    private int unflushedBytes;
+    private long firstUnflushedWrite;
+
+    LogWriter(@NonNull BaseTree baseTree, @NonNull LogOutput output, @NonNull LogEncoder encoder, int queueCapacity,
+            @NonNull FlushPolicy flushPolicy) {
+        this.baseTree = baseTree;
+        this.output = output;
+        this.encoder = encoder;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.freeEntries = new ArrayBlockingQueue<>(queueCapacity);
+        this.batch = new ArrayList<>(MAX_BATCH_SIZE);
+        this.droppedCount = new AtomicLong();
+        this.recordBuffer = new RecordBuffer(512);
+        this.flushPolicy = flushPolicy;
+    }
+
+    void setFlushPolicy(@NonNull FlushPolicy flushPolicy) {
+        this.flushPolicy = flushPolicy;
+    }
+
+    LogOutput getOutput() {
+        return output;
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Queues a line for writing. Never blocks, if the queue is full the line gets dropped and counted.
+     */
+    void enqueue(int priority, String tag, String message, Throwable t) {
+        if (!ensureStarted()) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        Entry entry = freeEntries.poll();
+        if (entry == null) {
+            entry = new Entry();
+        }
+        entry.timestamp = System.currentTimeMillis();
+        entry.priority = priority;
+        entry.tag = tag;
+        entry.message = message;
+        entry.throwable = t;
+        if (!queue.offer(entry)) {
+            recycle(entry);
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    private void recycle(Entry entry) {
+        entry.clear();
+        freeEntries.offer(entry);
+    }
+
+    /**
+     * @return False, if the output could not get opened recently and the line should get dropped
+     */
+    private boolean ensureStarted() {
+        if (isRunning) {
+            return true;
+        }
+        synchronized (lifecycleLock) {
+            if (isRunning) {
+                return true;
+            }
+            if (System.currentTimeMillis() < nextOpenAttempt) {
+                return false;
+            }
+
+            final Thread previous = thread;
+            if (previous == Thread.currentThread()) {
+                return false;
+            }
+
+            // the previous writer may still drain the queue, the new one waits for it in the background, so two
+            // threads never share the output and the logging thread never waits for the disk
+            final Thread writerThread = new Thread(this, "UniversalDebug-Writer");
+            writerThread.setDaemon(true);
+            predecessor = previous;
+            thread = writerThread;
+            isRunning = true;
+            writerThread.start();
+        }
+        return true;
+    }
+
+    private static void joinUninterruptibly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the writer thread after it has written all queued lines.<br>
+     * A line logged afterwards starts a new writer thread, which takes over once the previous one has finished.
+     */
+    void shutdown() {
+        synchronized (lifecycleLock) {
+            if (!isRunning) {
+                return;
+            }
+            isRunning = false;
+        }
+        // do not interrupt, as an interrupt would close the file channel while writing
+        queue.offer(WAKE_UP);
+    }
+
+    /**
+     * Waits until all lines, which got queued before, got written and flushed.
+     *
+     * @param timeoutMillis How long to wait at most
+     * @return True, if everything got flushed in time
+     */
+    boolean flush(long timeoutMillis) {
+        if (!isRunning) {
+            // a writer thread, which got shut down, may still drain the queue, it flushes when it closes the output
+            return awaitStopped(thread, timeoutMillis);
+        }
+        CountDownLatch latch;
+        synchronized (this) {
+            if (!isRunning) {
+                return awaitStopped(thread, timeoutMillis);
+            }
+            latch = flushLatch;
+            if (latch == null) {
+                latch = new CountDownLatch(1);
+                flushLatch = latch;
+            }
+        }
+        queue.offer(WAKE_UP);
+        try {
+            return latch.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static boolean awaitStopped(Thread writerThread, long timeoutMillis) {
+        if (writerThread == null) {
+            return true;
+        }
+        if (writerThread == Thread.currentThread()) {
+            return false;
+        }
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        return !writerThread.isAlive();
+    }
+
+    @Override public void run() {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+        final Thread previous;
+        synchronized (lifecycleLock) {
+            previous = predecessor;
+            predecessor = null;
+        }
+        if (previous != null) {
+            joinUninterruptibly(previous);
+        }
+        if (!isCurrentWriter()) {
+            // got replaced while waiting, the newer writer waits for this one and takes over
+            return;
+        }
+
+        try {
+            output.open();
+            startSegment();
+        } catch (IOException ioe) {
+            baseTree.reallyDoLog(Log.ERROR, TAG, "Could not open log output!", ioe);
+            abandon();
+            return;
+        }
+
+        long reportedDropped = 0;
+        // a replaced writer stops after its batch, the lines left in the queue are written by the new one
+        while (isCurrentWriter() && (isRunning || !queue.isEmpty())) {
+            final Entry first;
+            try {
+                first = queue.poll(computeWait(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ie) {
+                continue;
+            }
+
+            if (first != null) {
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            }
+
+            final long dropped = droppedCount.get();
+            if (dropped != reportedDropped) {
+                final String message = String.format("Dropped %s lines, queue was full", dropped - reportedDropped);
+                writeRecord(System.currentTimeMillis(), Log.WARN, TAG, message, null);
+                reportedDropped = dropped;
+            }
+
+            boolean forceFlush = false;
+            final int flushPriority = flushPolicy.getFlushPriority();
+            for (int i = 0, size = batch.size(); i < size; i++) {
+                final Entry entry = batch.get(i);
+                if (entry == WAKE_UP) {
+                    continue;
+                }
+                writeRecord(entry.timestamp, entry.priority, entry.tag, entry.message, entry.throwable);
+                forceFlush |= (entry.priority >= flushPriority);
+                recycle(entry);
+            }
+            batch.clear();
+
+            maybeFlush(forceFlush);
+
+            final CountDownLatch latch = flushLatch;
+            if (latch != null && queue.isEmpty()) {
+                maybeFlush(true);
+                synchronized (this) {
+                    flushLatch = null;
+                }
+                latch.countDown();
+            }
+        }
+
+        try {
+            output.close();
+        } catch (IOException ioe) {
+            baseTree.reallyDoLog(Log.ERROR, TAG, "Could not close log output!", ioe);
+        }
+        if (isCurrentWriter()) {
+            // otherwise the new writer has not written the lines a waiting flush is waiting for yet
+            releaseFlushLatch();
+        }
+    }
+
+    private boolean isCurrentWriter() {
+        return thread == Thread.currentThread();
+    }
+
+    /**
+     * Stops after the output could not get opened. Queued lines get dropped and counted, new lines get dropped
+     * until the next attempt to open the output.
+     */
+    private void abandon() {
+        if (!isCurrentWriter()) {
+            // got shut down and replaced meanwhile, the queued lines belong to the new writer
+            return;
+        }
+        nextOpenAttempt = System.currentTimeMillis() + OPEN_RETRY_DELAY;
+        isRunning = false;
+
+        Entry entry;
+        while ((entry = queue.poll()) != null) {
+            if (entry != WAKE_UP) {
+                recycle(entry);
+                droppedCount.incrementAndGet();
+            }
+        }
+        releaseFlushLatch();
+    }
+
+    private void releaseFlushLatch() {
+        final CountDownLatch latch;
+        synchronized (this) {
+            latch = flushLatch;
+            flushLatch = null;
+        }
+        if (latch != null) {
+            latch.countDown();
+        }
+    }
+
+    private long computeWait() {
+        if (unflushedBytes == 0) {
+            return IDLE_WAIT;
+        }
+        final long wait = firstUnflushedWrite + flushPolicy.getFlushInterval() - System.currentTimeMillis();
+        return Math.max(0, wait);
+    }
+
+    private void startSegment() throws IOException {
+        recordBuffer.clear();
+        encoder.startSegment(recordBuffer, output.isRecordFramed());
+        if (recordBuffer.length() > 0) {
+            write(recordBuffer.flip());
+        }
+    }
+
+    private void writeRecord(long timestamp, int priority, String tag, String message, Throwable t) {
+        recordBuffer.clear();
+        encoder.encode(recordBuffer, timestamp, priority, tag, message, t);
+
+        try {
+            if (output.rotateIfNeeded(recordBuffer.length())) {
+                // the record may depend on the state of the previous segment, encode it again
+                startSegment();
+                recordBuffer.clear();
+                encoder.encode(recordBuffer, timestamp, priority, tag, message, t);
+            }
+            write(recordBuffer.flip());
+            encoder.onRecordWritten();
+        } catch (IOException ioe) {
+            baseTree.reallyDoLog(priority, tag, "Could not write log to file!", ioe);
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        final int length = buffer.remaining();
+        output.write(buffer);
+
+        if (unflushedBytes == 0) {
+            firstUnflushedWrite = System.currentTimeMillis();
+        }
+        unflushedBytes += length;
+    }
+
+    private void maybeFlush(boolean force) {
+        if (unflushedBytes == 0) {
+            return;
+        }
+        final FlushPolicy policy = flushPolicy;
+        if (force || unflushedBytes >= policy.getFlushBytes()
+                || System.currentTimeMillis() - firstUnflushedWrite >= policy.getFlushInterval()) {
+            try {
+                output.flush();
+            } catch (IOException ioe) {
+                baseTree.reallyDoLog(Log.ERROR, TAG, "Could not flush log to file!", ioe);
+            }
+            unflushedBytes = 0;
+        }
+    }
+}
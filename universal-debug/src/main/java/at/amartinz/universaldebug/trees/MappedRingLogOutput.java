@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A {@link LogOutput} which preallocates a file of fixed size, maps it into memory and uses it as a
+ * circular buffer of log records.<br>
+ * <br>
+ * Writing a record is a plain memory copy, the operating system persists the mapped pages even if the process
+ * gets killed. Disk usage never exceeds the configured size, older records get overwritten.<br>
+ * If the file already holds a ring, new records get appended after the existing ones.<br>
+ * Use {@link RingLogReader} to read the records back in order.
+ */
+public class MappedRingLogOutput extends LogOutput {
+    public static final int DEFAULT_SIZE = 4 * 1024 * 1024;
+
+    private final File file;
+    private final int size;
+
+    private MappedByteBuffer mappedBuffer;
+    private RecordRing ring;
+
+    public MappedRingLogOutput(@NonNull File file) {
+        this(file, DEFAULT_SIZE);
+    }
+
+    /**
+     * @param file The file to map
+     * @param size The size of the file in bytes, including a small header
+     */
+    public MappedRingLogOutput(@NonNull File file, int size) {
+        this.file = file;
+        this.size = size;
+    }
+
+    @Override public void open() throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(size);
+            // the mapping stays valid after closing the file
+            mappedBuffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            randomAccessFile.close();
+        }
+        ring = RecordRing.attach(mappedBuffer);
+    }
+
+    @Override public boolean isRecordFramed() {
+        return true;
+    }
+
+    @Override public void write(@NonNull ByteBuffer buffer) throws IOException {
+        ring.append(buffer);
+    }
+
+    @Override public void flush() throws IOException {
+        // nothing to do, the mapped pages get written back by the operating system
+    }
+
+    @Override public void close() throws IOException {
+        if (mappedBuffer != null) {
+            mappedBuffer.force();
+            mappedBuffer = null;
+            ring = null;
+        }
+    }
+
+    @NonNull @Override public File getCurrentFile() {
+        return file;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+
+/**
+ * A {@link CrashComponent} which does not talk to a crash reporting service on the logging thread.<br>
+ * Reports get appended to a durable queue on the disk by a background thread, which then delivers them to the
+ * {@link CrashBackend} and retries with exponential backoff if that fails.<br>
+ * Reports survive process death and get delivered on the next start, if they could not be delivered before.
+ */
+public class OutboxCrashComponent extends CrashComponent {
+    public static final String DEFAULT_DIRECTORY = "crash-outbox";
+
+    public static final long DEFAULT_INITIAL_BACKOFF = 5 * 1000;
+    public static final long DEFAULT_MAX_BACKOFF = 10 * 60 * 1000;
+
+    private final CrashOutbox crashOutbox;
+
+    public OutboxCrashComponent(@NonNull BaseTree baseTree, @NonNull CrashBackend crashBackend) {
+        this(baseTree, crashBackend, null);
+    }
+
+    /**
+     * @param baseTree     The {@link BaseTree} this component belongs to
+     * @param crashBackend The {@link CrashBackend} to deliver the reports to
+     * @param directory    The directory to persist reports in, defaults to a directory in the files directory
+     */
+    public OutboxCrashComponent(@NonNull BaseTree baseTree, @NonNull CrashBackend crashBackend,
+            @Nullable File directory) {
+        super(baseTree);
+        if (directory == null) {
+            directory = new File(baseTree.getApplicationContext().getFilesDir(), DEFAULT_DIRECTORY);
+        }
+        this.crashOutbox = new CrashOutbox(baseTree, directory, crashBackend,
+                DEFAULT_INITIAL_BACKOFF, DEFAULT_MAX_BACKOFF);
+        this.crashOutbox.start();
+    }
+
+    /**
+     * @param initialBackoff The time to wait after the first failed delivery in milliseconds
+     * @param maxBackoff     The maximum time to wait, the time doubles with every failed delivery
+     * @return The same {@link OutboxCrashComponent} instance to allow chained calls
+     */
+    public OutboxCrashComponent setBackoff(long initialBackoff, long maxBackoff) {
+        crashOutbox.setBackoff(initialBackoff, maxBackoff);
+        return this;
+    }
+
+    /**
+     * @return The amount of reports, which did not get delivered yet
+     */
+    public int getPendingCount() {
+        return crashOutbox.getPendingCount();
+    }
+
+    /**
+     * @return The amount of reports, which got dropped because too many were waiting to be persisted
+     */
+    public long getDroppedCount() {
+        return crashOutbox.getDroppedCount();
+    }
+
+    /**
+     * Stops the background thread after it has persisted all queued reports.
+     */
+    public void shutdown() {
+        crashOutbox.shutdown();
+    }
+
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == OutboxCrashComponent.class;
+    }
+
+    /**
+     * Waits until all queued reports got persisted, they get delivered after the next start at the latest.
+     */
+    @Override public boolean flush(long timeoutMillis) {
+        // queues the suppressed repeats first
+        final boolean isReported = super.flush(timeoutMillis);
+        return crashOutbox.flush(timeoutMillis) && isReported;
+    }
+
+    @Override protected void reportCrash(int priority, String tag, String message, Throwable t) {
+        crashOutbox.enqueue(new CrashReport(System.currentTimeMillis(), priority, tag, message, t));
+    }
+}
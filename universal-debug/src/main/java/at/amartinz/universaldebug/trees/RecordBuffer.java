@@ -0,0 +1,186 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A growable, reusable buffer which a {@link LogEncoder} encodes a single record into.<br>
+ * Once grown to the size of the largest record, writing into it does not allocate anymore.
+ */
+public final class RecordBuffer {
+    private ByteBuffer buffer;
+
+    public RecordBuffer(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    public void clear() {
+        buffer.clear();
+    }
+
+    /**
+     * @return The amount of bytes written since the last {@link #clear()}
+     */
+    public int length() {
+        return buffer.position();
+    }
+
+    public RecordBuffer put(byte value) {
+        ensureCapacity(1);
+        buffer.put(value);
+        return this;
+    }
+
+    public RecordBuffer put(@NonNull byte[] bytes) {
+        return put(bytes, 0, bytes.length);
+    }
+
+    public RecordBuffer put(@NonNull byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        buffer.put(bytes, offset, length);
+        return this;
+    }
+
+    /**
+     * Writes an unsigned variable length integer, 7 bits per byte, least significant group first.
+     */
+    public RecordBuffer putVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+        return this;
+    }
+
+    /**
+     * Writes the string as UTF-8 bytes, prefixed with their length as varint.
+     */
+    public RecordBuffer putString(@Nullable CharSequence value) {
+        if (value == null) {
+            return putVarint(0);
+        }
+        putVarint(utf8Length(value));
+        return putText(value);
+    }
+
+    /**
+     * Writes the string as UTF-8 bytes, without any length.<br>
+     * Encodes directly into the buffer, without any intermediate objects.
+     */
+    public RecordBuffer putText(@Nullable CharSequence value) {
+        if (value == null) {
+            return this;
+        }
+        final int length = value.length();
+        // a char never takes more than 3 bytes, surrogate pairs take 4 bytes for 2 chars
+        ensureCapacity(length * 3);
+
+        final byte[] array = buffer.array();
+        final int offset = buffer.arrayOffset();
+        int position = offset + buffer.position();
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                array[position++] = (byte) c;
+            } else if (c < 0x800) {
+                array[position++] = (byte) (0xC0 | (c >> 6));
+                array[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                final char next = (i + 1 < length) ? value.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(next)) {
+                    final int codePoint = Character.toCodePoint(c, next);
+                    array[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    array[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    array[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    array[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                    i++;
+                } else {
+                    // unpaired surrogate, same as String#getBytes
+                    array[position++] = '?';
+                }
+            } else {
+                array[position++] = (byte) (0xE0 | (c >> 12));
+                array[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                array[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer.position(position - offset);
+        return this;
+    }
+
+    /**
+     * @return The amount of bytes {@link #putText(CharSequence)} writes for the given string
+     */
+    public static int utf8Length(@NonNull CharSequence value) {
+        final int length = value.length();
+        int bytes = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                final char next = (i + 1 < length) ? value.charAt(i + 1) : 0;
+                if (Character.isHighSurrogate(c) && Character.isLowSurrogate(next)) {
+                    bytes += 4;
+                    i++;
+                } else {
+                    bytes += 1;
+                }
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Prepares the buffer for reading what got written since the last {@link #clear()}.
+     *
+     * @return The underlying buffer, only valid until the next call to this {@link RecordBuffer}
+     */
+    @NonNull public ByteBuffer flip() {
+        buffer.flip();
+        return buffer;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (buffer.remaining() >= needed) {
+            return;
+        }
+        final int newCapacity = Math.max(buffer.capacity() * 2, buffer.position() + needed);
+        final ByteBuffer newBuffer = ByteBuffer.allocate(newCapacity);
+        buffer.flip();
+        newBuffer.put(buffer);
+        buffer = newBuffer;
+    }
+}
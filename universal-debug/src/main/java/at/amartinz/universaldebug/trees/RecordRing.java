@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A circular buffer of variable sized records on top of a {@link ByteBuffer}.<br>
+ * <br>
+ * Layout: a header of {@link #HEADER_SIZE} bytes, followed by the data area.<br>
+ * The header holds magic, version, capacity of the data area and the logical head and tail positions.
+ * Physical positions are the logical ones modulo the capacity.<br>
+ * Every record is stored as an int length followed by its bytes and never wraps around the end of the
+ * data area. A length of 0 (or less than 4 bytes left) marks the rest of the data area as unused.<br>
+ * <br>
+ * Appending is not thread safe and has to be synchronized by the caller.
+ */
+final class RecordRing {
+    static final int MAGIC = 0x55445247; // UDRG
+    static final int VERSION = 1;
+
+    static final int HEADER_SIZE = 32;
+
+    private static final int OFFSET_MAGIC = 0;
+    private static final int OFFSET_VERSION = 4;
+    private static final int OFFSET_CAPACITY = 8;
+    private static final int OFFSET_HEAD = 16;
+    private static final int OFFSET_TAIL = 24;
+
+    private final ByteBuffer buffer;
+    private final ByteBuffer writeBuffer;
+    private final int capacity;
+    private final int maxRecordSize;
+
+    private long head;
+    private long tail;
+
+    private RecordRing(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.writeBuffer = buffer.duplicate();
+        this.capacity = buffer.capacity() - HEADER_SIZE;
+        this.maxRecordSize = capacity / 4;
+    }
+
+    /**
+     * Attaches to the given buffer and continues after its existing records, if it holds a valid ring.
+     * Otherwise a new, empty ring gets initialized.
+     */
+    static RecordRing attach(@NonNull ByteBuffer buffer) {
+        final RecordRing ring = new RecordRing(buffer);
+        if (!ring.readHeader()) {
+            ring.reset();
+        }
+        return ring;
+    }
+
+    /**
+     * @param buffer A buffer with a ring, written by {@link #append(ByteBuffer)}
+     * @return The records from oldest to newest, or an empty list if the buffer does not hold a valid ring
+     */
+    static List<byte[]> readRecords(@NonNull ByteBuffer buffer) {
+        final RecordRing ring = new RecordRing(buffer);
+        if (!ring.readHeader()) {
+            return new ArrayList<>(0);
+        }
+        return ring.readRecords();
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    void reset() {
+        head = 0;
+        tail = 0;
+        buffer.putInt(OFFSET_MAGIC, MAGIC);
+        buffer.putInt(OFFSET_VERSION, VERSION);
+        buffer.putInt(OFFSET_CAPACITY, capacity);
+        buffer.putLong(OFFSET_HEAD, head);
+        buffer.putLong(OFFSET_TAIL, tail);
+    }
+
+    private boolean readHeader() {
+        if (capacity <= 0
+                || buffer.getInt(OFFSET_MAGIC) != MAGIC
+                || buffer.getInt(OFFSET_VERSION) != VERSION
+                || buffer.getInt(OFFSET_CAPACITY) != capacity) {
+            return false;
+        }
+        final long storedHead = buffer.getLong(OFFSET_HEAD);
+        final long storedTail = buffer.getLong(OFFSET_TAIL);
+        if (storedHead < 0 || storedHead > storedTail || storedTail - storedHead > capacity) {
+            return false;
+        }
+        head = storedHead;
+        tail = storedTail;
+        return true;
+    }
+
+    /**
+     * Appends the remaining bytes of the source as a single record, evicting the oldest records if needed.<br>
+     * Records bigger than a quarter of the capacity get truncated, empty records are ignored.
+     */
+    void append(@NonNull ByteBuffer source) {
+        final int length = Math.min(source.remaining(), maxRecordSize);
+        if (length == 0) {
+            return;
+        }
+        final int recordSize = 4 + length;
+
+        int position = (int) (tail % capacity);
+        final int toEnd = capacity - position;
+        final int padding = (toEnd < recordSize) ? toEnd : 0;
+
+        final long needed = padding + recordSize;
+        boolean evicted = false;
+        while (capacity - (tail - head) < needed) {
+            evictHead();
+            evicted = true;
+        }
+        if (evicted) {
+            // persist the new head before overwriting its old records
+            buffer.putLong(OFFSET_HEAD, head);
+        }
+
+        if (padding > 0) {
+            if (toEnd >= 4) {
+                buffer.putInt(HEADER_SIZE + position, 0);
+            }
+            tail += padding;
+            position = 0;
+        }
+
+        buffer.putInt(HEADER_SIZE + position, length);
+
+        final int sourceLimit = source.limit();
+        source.limit(source.position() + length);
+        writeBuffer.clear();
+        writeBuffer.position(HEADER_SIZE + position + 4);
+        writeBuffer.put(source);
+        source.limit(sourceLimit);
+
+        tail += recordSize;
+        // publish the record only after it got written completely
+        buffer.putLong(OFFSET_TAIL, tail);
+    }
+
+    private void evictHead() {
+        final int position = (int) (head % capacity);
+        final int toEnd = capacity - position;
+        if (toEnd < 4) {
+            head += toEnd;
+            return;
+        }
+        final int length = buffer.getInt(HEADER_SIZE + position);
+        if (length <= 0) {
+            head += toEnd;
+        } else {
+            head += 4 + length;
+        }
+    }
+
+    /**
+     * @return The records from oldest to newest
+     */
+    List<byte[]> readRecords() {
+        final List<byte[]> records = new ArrayList<>();
+        final ByteBuffer readBuffer = buffer.duplicate();
+
+        long current = head;
+        while (current < tail) {
+            final int position = (int) (current % capacity);
+            final int toEnd = capacity - position;
+            if (toEnd < 4) {
+                current += toEnd;
+                continue;
+            }
+            final int length = buffer.getInt(HEADER_SIZE + position);
+            if (length == 0) {
+                current += toEnd;
+                continue;
+            }
+            // the process died while writing, or the ring is corrupted
+            if (length < 0 || length > toEnd - 4 || current + 4 + length > tail) {
+                break;
+            }
+
+            final byte[] record = new byte[length];
+            readBuffer.clear();
+            readBuffer.position(HEADER_SIZE + position + 4);
+            readBuffer.get(record);
+            records.add(record);
+
+            current += 4 + length;
+        }
+        return records;
+    }
+}
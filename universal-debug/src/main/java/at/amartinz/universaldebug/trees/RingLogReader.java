@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * Reads the records of a file written by {@link MappedRingLogOutput} from oldest to newest.<br>
+ * Does not depend on Android and can also be run on a desktop:<br>
+ * {@code java -cp universal-debug.jar at.amartinz.universaldebug.trees.RingLogReader <file>}
+ */
+public class RingLogReader {
+    private RingLogReader() { }
+
+    /**
+     * @param file The ring file
+     * @return The records from oldest to newest, or an empty list if the file does not hold a valid ring
+     */
+    @NonNull public static List<byte[]> readRecords(@NonNull File file) throws IOException {
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = randomAccessFile.getChannel();
+            final ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // keep reading
+            }
+            return RecordRing.readRecords(buffer);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Writes all records from oldest to newest into the given stream.
+     *
+     * @param file The ring file
+     * @param out  The stream to write to
+     */
+    public static void dump(@NonNull File file, @NonNull OutputStream out) throws IOException {
+        final List<byte[]> records = readRecords(file);
+        for (final byte[] record : records) {
+            out.write(record);
+        }
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: RingLogReader <file>");
+            System.exit(1);
+        }
+        dump(new File(args[0]), System.out);
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@link LogOutput} which writes into a series of files, named {@code <prefix><timestamp><suffix>}.<br>
+ * A new file gets started according to the {@link RotationPolicy}. Compressing closed files and deleting
+ * old ones happens on a separate thread, so rotating never stalls the writer thread.
+ */
+public class RotatingFileLogOutput extends LogOutput {
+    private static final String TAG = "RotatingFileLogOutput";
+
+    public static final String SUFFIX_ARCHIVE = ".gz";
+
+    private final File directory;
+    private final String prefix;
+    private final String suffix;
+
+    private ExecutorService archiveExecutor;
+
+    private volatile RotationPolicy rotationPolicy;
+    private volatile File currentFile;
+
+    private FileLogOutput segment;
+    private long segmentSize;
+    private long segmentStart;
+
+    private String lastBaseName;
+    private int lastIndex;
+
+    public RotatingFileLogOutput(@NonNull File directory, @NonNull String prefix, @NonNull String suffix) {
+        this(directory, prefix, suffix, new RotationPolicy());
+    }
+
+    public RotatingFileLogOutput(@NonNull File directory, @NonNull String prefix, @NonNull String suffix,
+            @NonNull RotationPolicy rotationPolicy) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.rotationPolicy = rotationPolicy;
+
+        this.currentFile = createSegmentFile();
+    }
+
+    public void setRotationPolicy(@NonNull RotationPolicy rotationPolicy) {
+        this.rotationPolicy = rotationPolicy;
+    }
+
+    @NonNull public File getDirectory() {
+        return directory;
+    }
+
+    @NonNull @Override public File getCurrentFile() {
+        return currentFile;
+    }
+
+    @Override public void open() throws IOException {
+        openSegment(currentFile);
+        // a closed output may get opened again, the executor of the previous run got shut down
+        archiveExecutor = createArchiveExecutor();
+        // clean up after previous runs
+        archiveExecutor.execute(new SweepRunnable());
+    }
+
+    @Override public boolean rotateIfNeeded(int length) throws IOException {
+        // without a segment the last rotation failed, try again
+        if (segment == null || shouldRotate(length)) {
+            return rotate();
+        }
+        return false;
+    }
+
+    @Override public void write(@NonNull ByteBuffer buffer) throws IOException {
+        if (segment == null) {
+            throw new IOException("No log file is open");
+        }
+        segmentSize += buffer.remaining();
+        segment.write(buffer);
+    }
+
+    @Override public void flush() throws IOException {
+        if (segment != null) {
+            segment.flush();
+        }
+    }
+
+    @Override public void close() throws IOException {
+        try {
+            if (segment != null) {
+                segment.close();
+            }
+        } finally {
+            segment = null;
+            if (archiveExecutor != null) {
+                archiveExecutor.shutdown();
+                archiveExecutor = null;
+            }
+        }
+    }
+
+    private static ExecutorService createArchiveExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override public Thread newThread(@NonNull Runnable runnable) {
+                final Thread thread = new Thread(runnable, "UniversalDebug-Archiver");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    private boolean shouldRotate(int length) {
+        // never rotate an empty segment, a single huge record would keep rotating forever
+        if (segmentSize == 0) {
+            return false;
+        }
+        final RotationPolicy policy = rotationPolicy;
+        final long maxSize = policy.getMaxSegmentSize();
+        if (maxSize > 0 && segmentSize + length > maxSize) {
+            return true;
+        }
+        final long maxAge = policy.getMaxSegmentAge();
+        return (maxAge > 0 && System.currentTimeMillis() - segmentStart >= maxAge);
+    }
+
+    /**
+     * @return True, if a new file got started, false if the previous file got opened again
+     */
+    private boolean rotate() throws IOException {
+        final File closedFile = currentFile;
+        final FileLogOutput closedSegment = segment;
+        // if closing fails, the segment is gone anyway and the next record tries to rotate again
+        segment = null;
+        if (closedSegment != null) {
+            closedSegment.close();
+        }
+
+        final File nextFile = createSegmentFile();
+        try {
+            openSegment(nextFile);
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not start " + nextFile, ioe);
+            nextFile.delete();
+            // keep appending to the previous file, if that fails as well no segment is open
+            openSegment(closedFile);
+            return false;
+        }
+        currentFile = nextFile;
+
+        archiveExecutor.execute(new ArchiveRunnable(closedFile));
+        return true;
+    }
+
+    private void openSegment(File file) throws IOException {
+        final FileLogOutput output = new FileLogOutput(file);
+        output.open();
+        segment = output;
+        segmentSize = file.length();
+        segmentStart = System.currentTimeMillis();
+    }
+
+    private File createSegmentFile() {
+        final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ENGLISH);
+        final String baseName = prefix + sdf.format(new Date());
+
+        // more than one rotation per second, keep the names unique and sortable
+        int index = (baseName.equals(lastBaseName) ? lastIndex + 1 : 0);
+        File file = createSegmentFile(baseName, index);
+        while (file.exists() || new File(file.getPath() + SUFFIX_ARCHIVE).exists()) {
+            file = createSegmentFile(baseName, ++index);
+        }
+        lastBaseName = baseName;
+        lastIndex = index;
+
+        try {
+            file.createNewFile();
+        } catch (IOException ignored) { }
+        return file;
+    }
+
+    private File createSegmentFile(String baseName, int index) {
+        if (index == 0) {
+            return new File(directory, baseName + suffix);
+        }
+        return new File(directory, String.format(Locale.ENGLISH, "%s_%03d%s", baseName, index, suffix));
+    }
+
+    private class ArchiveRunnable implements Runnable {
+        private final File closedFile;
+
+        ArchiveRunnable(File closedFile) {
+            this.closedFile = closedFile;
+        }
+
+        @Override public void run() {
+            final RotationPolicy policy = rotationPolicy;
+            if (policy.isCompress()) {
+                compress(closedFile);
+            }
+            applyRetention(policy);
+        }
+    }
+
+    /**
+     * Finishes the work a previous run could not finish anymore, as the process died or the output got closed
+     * before its archive thread got to it.
+     */
+    private class SweepRunnable implements Runnable {
+        @Override public void run() {
+            final RotationPolicy policy = rotationPolicy;
+            final File[] files = directory.listFiles();
+            if (files != null) {
+                final File current = currentFile;
+                for (final File file : files) {
+                    final String name = file.getName();
+                    if (!name.startsWith(prefix) || file.equals(current)) {
+                        continue;
+                    }
+                    if (name.endsWith(SUFFIX_ARCHIVE + ".tmp")) {
+                        // an interrupted compression, the closed segment it belongs to is still there
+                        file.delete();
+                    } else if (policy.isCompress() && name.endsWith(suffix) && !name.endsWith(SUFFIX_ARCHIVE)) {
+                        compress(file);
+                    }
+                }
+            }
+            applyRetention(policy);
+        }
+    }
+
+    private void compress(File file) {
+        final File archive = new File(file.getPath() + SUFFIX_ARCHIVE);
+        final File tmpArchive = new File(archive.getPath() + ".tmp");
+
+        InputStream in = null;
+        OutputStream out = null;
+        try {
+            in = new FileInputStream(file);
+            out = new GZIPOutputStream(new FileOutputStream(tmpArchive));
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.close();
+            out = null;
+
+            if (tmpArchive.renameTo(archive)) {
+                file.delete();
+            }
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not compress " + file, ioe);
+            tmpArchive.delete();
+        } finally {
+            closeQuietly(in);
+            closeQuietly(out);
+        }
+    }
+
+    private void applyRetention(RotationPolicy policy) {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        final ArrayList<File> logFiles = new ArrayList<>(files.length);
+        final File current = currentFile;
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.startsWith(prefix) && !name.endsWith(".tmp") && !file.equals(current)) {
+                logFiles.add(file);
+            }
+        }
+
+        // the timestamp in the name lets us sort from oldest to newest
+        final File[] sorted = logFiles.toArray(new File[logFiles.size()]);
+        Arrays.sort(sorted);
+
+        // the current file counts as well
+        long totalSize = current.length();
+        for (final File file : sorted) {
+            totalSize += file.length();
+        }
+        int fileCount = sorted.length + 1;
+
+        final long maxTotalSize = policy.getMaxTotalSize();
+        final int maxFileCount = policy.getMaxFileCount();
+        for (final File file : sorted) {
+            final boolean tooBig = (maxTotalSize > 0 && totalSize > maxTotalSize);
+            final boolean tooMany = (maxFileCount > 0 && fileCount > maxFileCount);
+            if (!tooBig && !tooMany) {
+                break;
+            }
+
+            final long size = file.length();
+            if (file.delete()) {
+                totalSize -= size;
+                fileCount--;
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) { }
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+/**
+ * Decides when {@link RotatingFileLogOutput} starts a new log file and how many old log files are kept.<br>
+ * Pass 0 to any limit to disable it.
+ */
+public class RotationPolicy {
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 2 * 1024 * 1024;
+    public static final long DEFAULT_MAX_SEGMENT_AGE = 24 * 60 * 60 * 1000;
+    public static final long DEFAULT_MAX_TOTAL_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_FILE_COUNT = 10;
+
+    private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+    private long maxSegmentAge = DEFAULT_MAX_SEGMENT_AGE;
+    private long maxTotalSize = DEFAULT_MAX_TOTAL_SIZE;
+    private int maxFileCount = DEFAULT_MAX_FILE_COUNT;
+    private boolean compress = true;
+
+    /**
+     * @param maxSegmentSize Start a new file once the current one reached this size in bytes
+     * @return The same {@link RotationPolicy} instance to allow chained calls
+     */
+    public RotationPolicy setMaxSegmentSize(long maxSegmentSize) {
+        this.maxSegmentSize = maxSegmentSize;
+        return this;
+    }
+
+    /**
+     * @param maxSegmentAge Start a new file once the current one is older than this many milliseconds
+     * @return The same {@link RotationPolicy} instance to allow chained calls
+     */
+    public RotationPolicy setMaxSegmentAge(long maxSegmentAge) {
+        this.maxSegmentAge = maxSegmentAge;
+        return this;
+    }
+
+    /**
+     * @param maxTotalSize Delete the oldest files until all log files together are smaller than this in bytes
+     * @return The same {@link RotationPolicy} instance to allow chained calls
+     */
+    public RotationPolicy setMaxTotalSize(long maxTotalSize) {
+        this.maxTotalSize = maxTotalSize;
+        return this;
+    }
+
+    /**
+     * @param maxFileCount Delete the oldest files until at most this many log files are left
+     * @return The same {@link RotationPolicy} instance to allow chained calls
+     */
+    public RotationPolicy setMaxFileCount(int maxFileCount) {
+        this.maxFileCount = maxFileCount;
+        return this;
+    }
+
+    /**
+     * @param compress Whether closed log files should get gzipped
+     * @return The same {@link RotationPolicy} instance to allow chained calls
+     */
+    public RotationPolicy setCompress(boolean compress) {
+        this.compress = compress;
+        return this;
+    }
+
+    public long getMaxSegmentSize() {
+        return maxSegmentSize;
+    }
+
+    public long getMaxSegmentAge() {
+        return maxSegmentAge;
+    }
+
+    public long getMaxTotalSize() {
+        return maxTotalSize;
+    }
+
+    public int getMaxFileCount() {
+        return maxFileCount;
+    }
+
+    public boolean isCompress() {
+        return compress;
+    }
+}
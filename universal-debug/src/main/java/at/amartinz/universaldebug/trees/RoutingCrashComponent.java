@@ -0,0 +1,97 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * A {@link CrashComponent} which routes crashes to other {@link CrashComponent CrashComponents} based on
+ * the prefix of the message and the tag, for example:<br>
+ * {@code new RoutingCrashComponent(baseTree).addRoute("CRASH: ", crashlytics).addRoute("FATAL: ", null, Log.ASSERT,
+ * outbox)}<br>
+ * <br>
+ * Only add the routing component to the {@link BaseTree}, not the targets, otherwise they report twice.<br>
+ * The rules get compiled into a {@link CrashMatcher}, messages which do not match do not allocate anything.
+ */
+public class RoutingCrashComponent extends CrashComponent {
+    private final CrashMatcher<CrashComponent> crashMatcher;
+
+    public RoutingCrashComponent(@NonNull BaseTree baseTree) {
+        super(baseTree);
+        this.crashMatcher = new CrashMatcher<>();
+    }
+
+    /**
+     * @see #addRoute(String, String, int, CrashComponent)
+     */
+    public RoutingCrashComponent addRoute(@NonNull String prefix, @NonNull CrashComponent target) {
+        return addRoute(prefix, null, CrashMatcher.SEVERITY_UNCHANGED, target);
+    }
+
+    /**
+     * @param prefix     The prefix, the message has to start with, gets removed before reporting
+     * @param tagPattern The tag, a tag prefix ending with {@code *}, or null to match any tag
+     * @param severity   The priority to report with, or {@link CrashMatcher#SEVERITY_UNCHANGED}
+     * @param target     The {@link CrashComponent} to report matching crashes with
+     * @return The same {@link RoutingCrashComponent} instance to allow chained calls
+     */
+    public RoutingCrashComponent addRoute(@NonNull String prefix, @Nullable String tagPattern, int severity,
+            @NonNull CrashComponent target) {
+        crashMatcher.addRule(prefix, tagPattern, severity, target);
+        return this;
+    }
+
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == RoutingCrashComponent.class;
+    }
+
+    @Override protected boolean matchMessage(@Nullable String message) {
+        return crashMatcher.match(null, message) != null;
+    }
+
+    @Override protected void doLog(int priority, String tag, String message, Throwable t) {
+        final CrashMatcher.Rule<CrashComponent> rule = crashMatcher.match(tag, message);
+        if (rule == null) {
+            return;
+        }
+
+        final int severity = rule.getSeverity();
+        if (severity != CrashMatcher.SEVERITY_UNCHANGED) {
+            priority = severity;
+        }
+        final CrashComponent target = rule.getTarget();
+
+        message = deduplicate(target, priority, tag, message.substring(rule.getPrefixLength()), t);
+        if (message == null) {
+            return;
+        }
+        target.reportCrash(priority, tag, message, t);
+    }
+
+    @Override protected void reportCrash(int priority, String tag, String message, Throwable t) {
+        // never called, crashes get reported by the target of the matching route
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Encodes log lines as plain text, for example {@code 2016-04-18 13:37:00.042 D/MainActivity: OnCreate got called!}.
+ */
+public class TextLogEncoder extends LogEncoder {
+    private static final String SEPARATOR_TAG = ": ";
+
+    private final TimestampFormatter timestampFormatter;
+
+    public TextLogEncoder() {
+        this(true);
+    }
+
+    /**
+     * @param withTimestamps Whether every line should start with its timestamp
+     */
+    public TextLogEncoder(boolean withTimestamps) {
+        this.timestampFormatter = withTimestamps ? new TimestampFormatter() : null;
+    }
+
+    @Override public void encode(@NonNull RecordBuffer out, long timestamp, int priority, String tag, String message,
+            Throwable t) {
+        if (timestampFormatter != null) {
+            timestampFormatter.format(timestamp, out);
+            out.put((byte) ' ');
+        }
+
+        // encode every part directly, to not create any intermediate strings
+        out.putText(BaseTree.mapPriorityToString(priority))
+                .put((byte) '/')
+                .putText(String.valueOf(tag))
+                .putText(SEPARATOR_TAG)
+                .putText(String.valueOf(message))
+                .put((byte) '\n');
+    }
+}
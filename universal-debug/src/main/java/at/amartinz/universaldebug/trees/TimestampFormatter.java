@@ -0,0 +1,121 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Formats timestamps as {@code yyyy-MM-dd HH:mm:ss.SSS} in the default time zone.<br>
+ * <br>
+ * The date, hour and minute part gets cached and only formatted again once a timestamp of another minute
+ * comes along, seconds and milliseconds are plain arithmetic.<br>
+ * The cache is an immutable object which gets swapped as a whole, which makes the formatter safe to use from
+ * any thread without locking. Unlike {@link java.text.SimpleDateFormat}, formatting does not allocate.
+ */
+public class TimestampFormatter {
+    private static final long MINUTE = 60 * 1000;
+
+    private static final class MinuteCache {
+        final long minuteStart;
+        final byte[] prefix;
+
+        MinuteCache(long minuteStart, byte[] prefix) {
+            this.minuteStart = minuteStart;
+            this.prefix = prefix;
+        }
+    }
+
+    private volatile MinuteCache cache = new MinuteCache(Long.MIN_VALUE, new byte[0]);
+
+    /**
+     * Writes the formatted timestamp into the buffer.
+     *
+     * @param timestamp Milliseconds since epoch
+     */
+    public void format(long timestamp, @NonNull RecordBuffer out) {
+        MinuteCache minuteCache = cache;
+        final long offset = timestamp - minuteCache.minuteStart;
+        if (offset < 0 || offset >= MINUTE) {
+            minuteCache = createCache(timestamp);
+            // another thread might do the same at the same time, which does not matter
+            cache = minuteCache;
+        }
+
+        final int millisOfMinute = (int) (timestamp - minuteCache.minuteStart);
+        final int seconds = millisOfMinute / 1000;
+        final int millis = millisOfMinute % 1000;
+
+        out.put(minuteCache.prefix)
+                .put((byte) ('0' + seconds / 10))
+                .put((byte) ('0' + seconds % 10))
+                .put((byte) '.')
+                .put((byte) ('0' + millis / 100))
+                .put((byte) ('0' + (millis / 10) % 10))
+                .put((byte) ('0' + millis % 10));
+    }
+
+    /**
+     * @param timestamp Milliseconds since epoch
+     * @return The formatted timestamp
+     */
+    @NonNull public String format(long timestamp) {
+        final RecordBuffer buffer = new RecordBuffer(32);
+        format(timestamp, buffer);
+        final ByteBuffer byteBuffer = buffer.flip();
+        return new String(byteBuffer.array(), 0, byteBuffer.limit());
+    }
+
+    private static MinuteCache createCache(long timestamp) {
+        final Calendar calendar = Calendar.getInstance(TimeZone.getDefault());
+        calendar.setTimeInMillis(timestamp);
+        // do not set the fields to 0, a local time may occur twice when daylight saving time ends
+        final long minuteStart = timestamp
+                - calendar.get(Calendar.SECOND) * 1000 - calendar.get(Calendar.MILLISECOND);
+
+        final StringBuilder sb = new StringBuilder(17);
+        sb.append(calendar.get(Calendar.YEAR)).append('-');
+        appendTwoDigits(sb, calendar.get(Calendar.MONTH) + 1).append('-');
+        appendTwoDigits(sb, calendar.get(Calendar.DAY_OF_MONTH)).append(' ');
+        appendTwoDigits(sb, calendar.get(Calendar.HOUR_OF_DAY)).append(':');
+        appendTwoDigits(sb, calendar.get(Calendar.MINUTE)).append(':');
+
+        final byte[] prefix = new byte[sb.length()];
+        for (int i = 0; i < prefix.length; i++) {
+            prefix[i] = (byte) sb.charAt(i);
+        }
+        return new MinuteCache(minuteStart, prefix);
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder sb, int value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        return sb.append(value);
+    }
+}
@@ -70,6 +70,10 @@ public class VibrationComponent extends BaseTreeComponent {
         }
     }
 
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == VibrationComponent.class && hasDefaultFixedFilter();
+    }
+
     @Override protected void doLog(int priority, String tag, String message, Throwable t) {
         if (vibrator != null) {
             vibrator.cancel();
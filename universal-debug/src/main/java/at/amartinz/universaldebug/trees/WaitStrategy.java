@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decides how the dispatcher thread of an asynchronous {@link BaseTree} waits for new events.<br>
+ * See {@link BaseTree#setAsync(int, WaitStrategy, boolean)}.
+ */
+public abstract class WaitStrategy {
+    /**
+     * Called by the dispatcher thread whenever no event is available.
+     *
+     * @param counter How often this got called since the last event, starts at 0
+     * @return The counter for the next call
+     */
+    protected abstract int idle(int counter);
+
+    /**
+     * Called by the logging threads after publishing an event.
+     */
+    protected void signal() { }
+
+    /**
+     * Spins without ever giving up the CPU. Lowest latency, but burns a whole core. Only useful for benchmarks.
+     */
+    @NonNull public static WaitStrategy busySpin() {
+        return new WaitStrategy() {
+            @Override protected int idle(int counter) {
+                return counter + 1;
+            }
+        };
+    }
+
+    /**
+     * Spins for a while, then yields to other threads.
+     */
+    @NonNull public static WaitStrategy yielding() {
+        return new WaitStrategy() {
+            @Override protected int idle(int counter) {
+                if (counter > 100) {
+                    Thread.yield();
+                }
+                return counter + 1;
+            }
+        };
+    }
+
+    /**
+     * Spins, yields and finally parks the thread for short periods.<br>
+     * Logging threads never have to signal anything, which keeps them fast. This is the default.
+     */
+    @NonNull public static WaitStrategy sleeping() {
+        return new WaitStrategy() {
+            @Override protected int idle(int counter) {
+                if (counter > 200) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                } else if (counter > 100) {
+                    Thread.yield();
+                }
+                return counter + 1;
+            }
+        };
+    }
+
+    /**
+     * Blocks on a lock until a logging thread signals a new event.<br>
+     * Uses no CPU while idle, but every log call has to take the lock for signalling.
+     */
+    @NonNull public static WaitStrategy blocking() {
+        return new BlockingWaitStrategy();
+    }
+
+    private static final class BlockingWaitStrategy extends WaitStrategy {
+        private static final long MAX_WAIT = TimeUnit.MILLISECONDS.toNanos(100);
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition condition = lock.newCondition();
+        private volatile boolean isSignalled;
+
+        @Override protected int idle(int counter) {
+            lock.lock();
+            try {
+                // an event may have been published since the dispatcher checked for it
+                if (!isSignalled) {
+                    condition.awaitNanos(MAX_WAIT);
+                }
+                isSignalled = false;
+            } catch (InterruptedException ignored) {
+                // do not set the flag again, the next awaitNanos would throw right away and we would spin.
+                // the dispatcher thread stops through its own flag, an interrupt only wakes it up
+            } finally {
+                lock.unlock();
+            }
+            return counter + 1;
+        }
+
+        @Override protected void signal() {
+            isSignalled = true;
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -25,26 +25,28 @@
 package at.amartinz.universaldebug.trees;
 
 import android.content.Context;
-import android.os.AsyncTask;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
-import android.util.Pair;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.Locale;
 
 import timber.log.Timber;
 
 /**
- * Logs and writes the log to a file.
+ * Logs and writes the log to a file.<br>
+ * Lines are queued and written by a single background thread, which keeps the file open and flushes
+ * according to the {@link FlushPolicy}.<br>
+ * Log files get rotated, compressed and cleaned up according to the {@link RotationPolicy}.<br>
+ * <br>
+ * For always-on logging with a fixed disk usage, pass a {@link MappedRingLogOutput}.
  */
 public class WriterComponent extends BaseTreeComponent {
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+
     private final File logDirectory;
-    private final File logFile;
+
+    private final LogOutput logOutput;
+    private final LogWriter logWriter;
 
     public WriterComponent(@NonNull BaseTree baseTree) {
         this(baseTree, false);
@@ -54,9 +56,30 @@ public class WriterComponent extends BaseTreeComponent {
         super(baseTree);
         final Context applicationContext = baseTree.getApplicationContext();
 
-        final Pair<File, File> logFilePair = sanitizeFileDirectories(applicationContext, logDirectory);
-        this.logDirectory = logFilePair.first;
-        this.logFile = logFilePair.second;
+        this.logDirectory = sanitizeLogDirectory(applicationContext, logDirectory);
+        this.logOutput = createLogOutput(applicationContext, this.logDirectory);
+        this.logWriter = createLogWriter(logOutput, new TextLogEncoder());
+    }
+
+    /**
+     * @param baseTree  The {@link BaseTree} this component belongs to
+     * @param logOutput The {@link LogOutput} which receives all log lines
+     */
+    public WriterComponent(@NonNull BaseTree baseTree, @NonNull LogOutput logOutput) {
+        this(baseTree, logOutput, new TextLogEncoder());
+    }
+
+    /**
+     * @param baseTree   The {@link BaseTree} this component belongs to
+     * @param logOutput  The {@link LogOutput} which receives all log lines
+     * @param logEncoder The {@link LogEncoder} to use, for example a {@link BinaryLogEncoder}
+     */
+    public WriterComponent(@NonNull BaseTree baseTree, @NonNull LogOutput logOutput, @NonNull LogEncoder logEncoder) {
+        super(baseTree);
+        final File currentFile = logOutput.getCurrentFile();
+        this.logDirectory = (currentFile != null) ? currentFile.getParentFile() : null;
+        this.logOutput = logOutput;
+        this.logWriter = createLogWriter(logOutput, logEncoder);
     }
 
     public WriterComponent(@NonNull BaseTree baseTree, boolean saveOnExternalStorage) {
@@ -73,66 +96,89 @@ public class WriterComponent extends BaseTreeComponent {
             logDir = applicationContext.getFilesDir();
         }
 
-        final Pair<File, File> logFilePair = sanitizeFileDirectories(applicationContext, logDir);
-        this.logDirectory = logFilePair.first;
-        this.logFile = logFilePair.second;
+        this.logDirectory = sanitizeLogDirectory(applicationContext, logDir);
+        this.logOutput = createLogOutput(applicationContext, this.logDirectory);
+        this.logWriter = createLogWriter(logOutput, new TextLogEncoder());
     }
 
-    private String generateFileName(Context applicationContext) {
-        final SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.ENGLISH);
-        final Date date = new Date();
-        final String currentTime = sdf.format(date);
-        return String.format("log_%s_%s.txt", applicationContext.getPackageName(), currentTime);
+    private LogWriter createLogWriter(@NonNull LogOutput logOutput, @NonNull LogEncoder logEncoder) {
+        return new LogWriter(baseTree, logOutput, logEncoder, DEFAULT_QUEUE_CAPACITY, new FlushPolicy());
     }
 
-    private Pair<File, File> sanitizeFileDirectories(Context applicationContext, @Nullable File logDirectory) {
-        final File dir;
-        if (logDirectory != null && logDirectory.exists() && logDirectory.canRead() && logDirectory.canWrite()) {
-            dir = logDirectory;
-        } else {
-            dir = applicationContext.getFilesDir();
-        }
+    private RotatingFileLogOutput createLogOutput(Context applicationContext, File logDirectory) {
+        final String prefix = String.format("log_%s_", applicationContext.getPackageName());
+        final RotatingFileLogOutput output = new RotatingFileLogOutput(logDirectory, prefix, ".txt");
+        Timber.d("Created %s", output.getCurrentFile());
+        return output;
+    }
 
-        final File file = new File(dir, generateFileName(applicationContext));
-        if (!file.exists()) {
-            try {
-                Timber.d("Creating %s -> %s", file, file.createNewFile());
-            } catch (Exception ignored) { }
+    private File sanitizeLogDirectory(Context applicationContext, @Nullable File logDirectory) {
+        if (logDirectory != null && logDirectory.exists() && logDirectory.canRead() && logDirectory.canWrite()) {
+            return logDirectory;
         }
-        return new Pair<>(dir, file);
+        return applicationContext.getFilesDir();
     }
 
     public File getLogDirectory() {
         return logDirectory;
     }
 
-    public File getLogFile() {
-        return logFile;
-    }
-
-    @Override protected void doLog(final int priority, final String tag, final String message, final Throwable t) {
-        // never do that on the main thread!
-        AsyncTask.execute(new Runnable() {
-            @Override public void run() {
-                writeLogToFile(priority, tag, message, t);
-            }
-        });
-    }
-
-    private void writeLogToFile(int priority, String tag, String message, Throwable t) {
-        FileWriter fileWriter = null;
-        try {
-            fileWriter = new FileWriter(logFile, true);
-            fileWriter.write(String.format("%s/%s: %s\n", BaseTree.mapPriorityToString(priority), tag, message));
-            fileWriter.flush();
-        } catch (IOException ioe) {
-            baseTree.reallyDoLog(priority, tag, "Could not write log to file!", ioe);
-        } finally {
-            if (fileWriter != null) {
-                try {
-                    fileWriter.close();
-                } catch (IOException ignored) { }
-            }
+    /**
+     * @return The log file which currently gets written to, changes whenever the log gets rotated
+     */
+    @Nullable public File getLogFile() {
+        return logOutput.getCurrentFile();
+    }
+
+    /**
+     * @param flushPolicy The {@link FlushPolicy} to use for writing to the file
+     * @return The same {@link WriterComponent} instance to allow chained calls
+     */
+    public WriterComponent setFlushPolicy(@NonNull FlushPolicy flushPolicy) {
+        logWriter.setFlushPolicy(flushPolicy);
+        return this;
+    }
+
+    /**
+     * Has no effect if a custom {@link LogOutput} got passed.
+     *
+     * @param rotationPolicy The {@link RotationPolicy} to use for rotating and cleaning up log files
+     * @return The same {@link WriterComponent} instance to allow chained calls
+     */
+    public WriterComponent setRotationPolicy(@NonNull RotationPolicy rotationPolicy) {
+        if (logOutput instanceof RotatingFileLogOutput) {
+            ((RotatingFileLogOutput) logOutput).setRotationPolicy(rotationPolicy);
         }
+        return this;
+    }
+
+    /**
+     * @return The amount of lines which got dropped, because the write queue was full
+     */
+    public long getDroppedCount() {
+        return logWriter.getDroppedCount();
+    }
+
+    /**
+     * Stops the writer thread after all queued lines got written.
+     */
+    public void shutdown() {
+        logWriter.shutdown();
+    }
+
+    @Override protected boolean hasFixedFilter() {
+        return getClass() == WriterComponent.class && hasDefaultFixedFilter();
+    }
+
+    /**
+     * Waits until all queued lines got written and flushed to the file.
+     */
+    @Override public boolean flush(long timeoutMillis) {
+        return logWriter.flush(timeoutMillis);
+    }
+
+    @Override protected void doLog(int priority, String tag, String message, Throwable t) {
+        // the writer thread takes care of the IO, never do that on the calling thread!
+        logWriter.enqueue(priority, tag, message, t);
     }
 }
@@ -0,0 +1,425 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import android.support.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent FIFO queue of byte records, which survives process death.<br>
+ * <br>
+ * Records get appended to a data file, each framed with its length and a CRC32 of its content.
+ * Appending does not touch the disk until {@link #sync()} gets called, so callers can sync once per batch.
+ * A record which did not get written completely, because the process died, gets detected by its frame
+ * and dropped when opening the queue again.<br>
+ * <br>
+ * Consumed records get acknowledged with {@link #remove(int)}, which persists the read position in a separate
+ * checkpoint file. Once enough records got consumed, the remaining ones get copied into a new data file
+ * and the old one gets deleted.<br>
+ * <br>
+ * All methods are synchronized, but meant to be used by a single background thread.<br>
+ * The directory gets locked while the queue is open, a second queue on the same directory fails to open until the
+ * first one got closed, also across processes.
+ */
+public final class DurableQueue {
+    private static final String PREFIX_DATA = "queue-";
+    private static final String SUFFIX_DATA = ".dat";
+    private static final String NAME_CHECKPOINT = "queue.ack";
+    private static final String SUFFIX_TEMP = ".tmp";
+    private static final String NAME_LOCK = "queue.lock";
+
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int CHECKPOINT_SIZE = 20;
+
+    /**
+     * The amount of consumed bytes, after which the data file gets compacted.
+     */
+    private static final long COMPACT_THRESHOLD = 64 * 1024;
+
+    /**
+     * Frames claiming to be bigger than this are treated as corrupted.
+     */
+    public static final int MAX_RECORD_SIZE = 1024 * 1024;
+
+    private final File directory;
+    private final ByteBuffer frameHeader = ByteBuffer.allocate(FRAME_HEADER_SIZE);
+    private final CRC32 crc32 = new CRC32();
+
+    private RandomAccessFile lockFile;
+    private FileLock lock;
+    private RandomAccessFile dataFile;
+    private FileChannel channel;
+
+    private long generation;
+    private long readOffset;
+    private long writeOffset;
+    private int size;
+
+    /**
+     * Opens the queue in the given directory, creating it if needed.
+     *
+     * @throws IOException Also if another open queue uses the directory
+     */
+    public DurableQueue(@NonNull File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        lock();
+        try {
+            open();
+        } catch (IOException ioe) {
+            unlock();
+            throw ioe;
+        }
+    }
+
+    private void lock() throws IOException {
+        lockFile = new RandomAccessFile(new File(directory, NAME_LOCK), "rw");
+        try {
+            lock = lockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException ofle) {
+            // another queue of this process holds it
+            lock = null;
+        } catch (IOException ioe) {
+            lockFile.close();
+            throw ioe;
+        }
+        if (lock == null) {
+            lockFile.close();
+            throw new IOException("Queue is in use: " + directory);
+        }
+    }
+
+    private void unlock() throws IOException {
+        if (lockFile != null) {
+            // closing the file releases the lock
+            lockFile.close();
+            lockFile = null;
+            lock = null;
+        }
+    }
+
+    private void open() throws IOException {
+        readCheckpoint();
+        deleteStaleFiles();
+
+        dataFile = new RandomAccessFile(dataFile(generation), "rw");
+        channel = dataFile.getChannel();
+
+        // count the complete records and cut off a partially written one
+        final long length = channel.size();
+        if (readOffset > length) {
+            readOffset = 0;
+        }
+        long offset = readOffset;
+        int count = 0;
+        while (true) {
+            final int recordLength = readValidFrame(offset, length);
+            if (recordLength < 0) {
+                break;
+            }
+            offset += FRAME_HEADER_SIZE + recordLength;
+            count++;
+        }
+        if (offset < length) {
+            channel.truncate(offset);
+        }
+        writeOffset = offset;
+        size = count;
+    }
+
+    /**
+     * @return The amount of records, which got appended but not removed yet
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * Appends a record, call {@link #sync()} to make sure it got persisted.
+     */
+    public synchronized void append(@NonNull byte[] record) throws IOException {
+        if (record.length > MAX_RECORD_SIZE) {
+            throw new IOException("Record too big: " + record.length);
+        }
+        crc32.reset();
+        crc32.update(record, 0, record.length);
+
+        frameHeader.clear();
+        frameHeader.putInt(record.length).putInt((int) crc32.getValue()).flip();
+        writeFully(frameHeader, writeOffset);
+        writeFully(ByteBuffer.wrap(record), writeOffset + FRAME_HEADER_SIZE);
+
+        writeOffset += FRAME_HEADER_SIZE + record.length;
+        size++;
+    }
+
+    /**
+     * Forces all appended records to the disk.
+     */
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    /**
+     * @param maxCount The maximum amount of records to return
+     * @return The oldest records, without removing them
+     */
+    @NonNull public synchronized List<byte[]> peek(int maxCount) throws IOException {
+        final int count = Math.min(maxCount, size);
+        final List<byte[]> records = new ArrayList<>(count);
+        long offset = readOffset;
+        for (int i = 0; i < count; i++) {
+            final int recordLength = readFrameLength(offset);
+            final ByteBuffer record = ByteBuffer.allocate(recordLength);
+            readFully(record, offset + FRAME_HEADER_SIZE);
+            records.add(record.array());
+            offset += FRAME_HEADER_SIZE + recordLength;
+        }
+        return records;
+    }
+
+    /**
+     * Removes the oldest records and persists the new read position.
+     *
+     * @param count The amount of records to remove
+     */
+    public synchronized void remove(int count) throws IOException {
+        count = Math.min(count, size);
+        if (count <= 0) {
+            return;
+        }
+        long offset = readOffset;
+        for (int i = 0; i < count; i++) {
+            offset += FRAME_HEADER_SIZE + readFrameLength(offset);
+        }
+        readOffset = offset;
+        size -= count;
+
+        if (readOffset >= COMPACT_THRESHOLD && readOffset > writeOffset / 2) {
+            compact();
+        } else {
+            writeCheckpoint();
+        }
+    }
+
+    public synchronized void close() throws IOException {
+        try {
+            if (dataFile != null) {
+                channel.force(false);
+                dataFile.close();
+                dataFile = null;
+                channel = null;
+            }
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Copies the remaining records into a new data file.<br>
+     * The checkpoint decides which data file is valid, so dying at any point leaves a consistent queue.
+     */
+    private void compact() throws IOException {
+        final long nextGeneration = generation + 1;
+        final File nextFile = dataFile(nextGeneration);
+        final RandomAccessFile nextDataFile = new RandomAccessFile(nextFile, "rw");
+        final FileChannel nextChannel = nextDataFile.getChannel();
+        try {
+            nextChannel.truncate(0);
+            long position = readOffset;
+            while (position < writeOffset) {
+                position += channel.transferTo(position, writeOffset - position, nextChannel);
+            }
+            nextChannel.force(false);
+        } catch (IOException ioe) {
+            nextDataFile.close();
+            //noinspection ResultOfMethodCallIgnored
+            nextFile.delete();
+            throw ioe;
+        }
+
+        final File previousFile = dataFile(generation);
+        final long remaining = writeOffset - readOffset;
+        generation = nextGeneration;
+        readOffset = 0;
+        writeOffset = remaining;
+        writeCheckpoint();
+
+        dataFile.close();
+        dataFile = nextDataFile;
+        channel = nextChannel;
+        //noinspection ResultOfMethodCallIgnored
+        previousFile.delete();
+    }
+
+    private void readCheckpoint() throws IOException {
+        // without a valid checkpoint, start at the beginning of the newest data file,
+        // delivering records twice is better than losing them
+        generation = findNewestGeneration();
+        readOffset = 0;
+
+        final File file = new File(directory, NAME_CHECKPOINT);
+        if (!file.exists()) {
+            return;
+        }
+        final RandomAccessFile checkpoint = new RandomAccessFile(file, "r");
+        try {
+            if (checkpoint.length() != CHECKPOINT_SIZE) {
+                return;
+            }
+            final long storedGeneration = checkpoint.readLong();
+            final long storedOffset = checkpoint.readLong();
+            final int storedCrc = checkpoint.readInt();
+            if (storedCrc == checkpointCrc(storedGeneration, storedOffset) && storedOffset >= 0) {
+                generation = storedGeneration;
+                readOffset = storedOffset;
+            }
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(CHECKPOINT_SIZE);
+        buffer.putLong(generation).putLong(readOffset).putInt(checkpointCrc(generation, readOffset)).flip();
+
+        // write to a temporary file and rename it, so the checkpoint gets replaced atomically
+        final File file = new File(directory, NAME_CHECKPOINT);
+        final File tempFile = new File(directory, NAME_CHECKPOINT + SUFFIX_TEMP);
+        final FileOutputStream out = new FileOutputStream(tempFile);
+        try {
+            out.getChannel().write(buffer);
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Could not write " + file);
+        }
+    }
+
+    private int checkpointCrc(long generation, long offset) {
+        final ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putLong(generation).putLong(offset);
+        crc32.reset();
+        crc32.update(buffer.array(), 0, 16);
+        return (int) crc32.getValue();
+    }
+
+    private long findNewestGeneration() {
+        long newest = 0;
+        final String[] names = directory.list();
+        if (names == null) {
+            return newest;
+        }
+        for (final String name : names) {
+            if (!name.startsWith(PREFIX_DATA) || !name.endsWith(SUFFIX_DATA)) {
+                continue;
+            }
+            try {
+                final String value = name.substring(PREFIX_DATA.length(), name.length() - SUFFIX_DATA.length());
+                newest = Math.max(newest, Long.parseLong(value));
+            } catch (NumberFormatException ignored) { }
+        }
+        return newest;
+    }
+
+    private void deleteStaleFiles() {
+        final String current = dataFile(generation).getName();
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            final String name = file.getName();
+            if (name.startsWith(PREFIX_DATA) && !name.equals(current)) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+    }
+
+    private File dataFile(long generation) {
+        return new File(directory, PREFIX_DATA + generation + SUFFIX_DATA);
+    }
+
+    /**
+     * @return The length of the record at the given offset, or -1 if there is no complete and valid record
+     */
+    private int readValidFrame(long offset, long fileLength) throws IOException {
+        if (offset + FRAME_HEADER_SIZE > fileLength) {
+            return -1;
+        }
+        frameHeader.clear();
+        readFully(frameHeader, offset);
+        final int length = frameHeader.getInt(0);
+        final int crc = frameHeader.getInt(4);
+        if (length < 0 || length > MAX_RECORD_SIZE || offset + FRAME_HEADER_SIZE + length > fileLength) {
+            return -1;
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(length);
+        readFully(record, offset + FRAME_HEADER_SIZE);
+        crc32.reset();
+        crc32.update(record.array(), 0, length);
+        return ((int) crc32.getValue() == crc) ? length : -1;
+    }
+
+    private int readFrameLength(long offset) throws IOException {
+        frameHeader.clear();
+        frameHeader.limit(4);
+        readFully(frameHeader, offset);
+        return frameHeader.getInt(0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read == -1) {
+                throw new IOException("Unexpected end of queue file");
+            }
+            position += read;
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
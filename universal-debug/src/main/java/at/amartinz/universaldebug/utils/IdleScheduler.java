@@ -0,0 +1,72 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single daemon thread for occasional delayed work, which only gets created once something got scheduled and
+ * goes away again once it was idle for a second.<br>
+ * Meant to be kept in a static field, so all instances of a class share the thread.
+ */
+public final class IdleScheduler {
+    private static final long KEEP_ALIVE = 1000;
+
+    private final String threadName;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    /**
+     * @param threadName The name of the thread, should start with {@code UniversalDebug-}
+     */
+    public IdleScheduler(@NonNull String threadName) {
+        this.threadName = threadName;
+    }
+
+    @NonNull public ScheduledFuture<?> schedule(@NonNull Runnable runnable, long delay, @NonNull TimeUnit unit) {
+        return getExecutor().schedule(runnable, delay, unit);
+    }
+
+    private synchronized ScheduledThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final ScheduledThreadPoolExecutor newExecutor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override public Thread newThread(@NonNull Runnable runnable) {
+                    final Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            newExecutor.setKeepAliveTime(KEEP_ALIVE, TimeUnit.MILLISECONDS);
+            newExecutor.allowCoreThreadTimeOut(true);
+            executor = newExecutor;
+        }
+        return executor;
+    }
+}
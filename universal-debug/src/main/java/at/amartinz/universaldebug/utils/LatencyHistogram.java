@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations in nanoseconds, which can be recorded into from any thread.<br>
+ * Values get counted in logarithmic buckets, every power of two is split into {@value #SUB_BUCKET_COUNT} linear
+ * sub buckets, similar to an HdrHistogram. That keeps the memory constant and percentiles within about 12% of
+ * the real value, while the maximum is exact.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // values below SUB_BUCKET_COUNT get their own bucket, then SUB_BUCKET_COUNT buckets per power of two
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Costs a single atomic increment, unless the value is a new maximum.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets.incrementAndGet(bucketIndex(nanos));
+
+        long currentMax;
+        while (nanos > (currentMax = max.get())) {
+            if (max.compareAndSet(currentMax, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return The amount of recorded values, counted from the buckets, so recording stays cheap
+     */
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += buckets.get(i);
+        }
+        return count;
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile The percentile, between 0 and 100
+     * @return The upper bound of the bucket containing the percentile, but never more than the maximum
+     */
+    public long getPercentile(double percentile) {
+        final long currentCount = getCount();
+        if (currentCount == 0) {
+            return 0;
+        }
+        final long rank = Math.max(1, (long) Math.ceil(currentCount * percentile / 100d));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears all recorded values, values recorded concurrently may or may not get cleared.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        max.set(0);
+    }
+
+    @Override public String toString() {
+        return String.format(Locale.ENGLISH, "count=%d, p50=%s, p99=%s, max=%s", getCount(),
+                formatNanos(getPercentile(50)), formatNanos(getPercentile(99)), formatNanos(getMax()));
+    }
+
+    public static String formatNanos(long nanos) {
+        if (nanos < 1000) {
+            return nanos + "ns";
+        }
+        if (nanos < 1000000) {
+            return String.format(Locale.ENGLISH, "%.1fus", nanos / 1000d);
+        }
+        return String.format(Locale.ENGLISH, "%.2fms", nanos / 1000000d);
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + (exponent - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int exponent = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT + SUB_BUCKET_BITS;
+        final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return ((SUB_BUCKET_COUNT + subBucket + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A thread-safe, lock-free copy-on-write registry.<br>
+ * Readers get an immutable array snapshot and can iterate it without any locking, writers atomically swap in a
+ * modified copy. Meant for data which is read on every call, but rarely modified, like components.
+ *
+ * @param <T> The type of the registered elements
+ */
+public final class SnapshotRegistry<T> {
+    private final AtomicReference<T[]> elements;
+
+    /**
+     * @param empty An empty array, used to create arrays of the correct type
+     */
+    public SnapshotRegistry(@NonNull T[] empty) {
+        this.elements = new AtomicReference<>(Arrays.copyOf(empty, 0));
+    }
+
+    /**
+     * @return The current elements, the returned array must not be modified
+     */
+    @NonNull public T[] snapshot() {
+        return elements.get();
+    }
+
+    public boolean isEmpty() {
+        return elements.get().length == 0;
+    }
+
+    /**
+     * Adds the element, even if it is already registered.
+     */
+    public void add(@NonNull T element) {
+        while (true) {
+            final T[] current = elements.get();
+            final T[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = element;
+            if (elements.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds the element, if it is not registered yet.
+     *
+     * @return True, if the element got added
+     */
+    public boolean addIfAbsent(@NonNull T element) {
+        while (true) {
+            final T[] current = elements.get();
+            if (indexOf(current, element) != -1) {
+                return false;
+            }
+            final T[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = element;
+            if (elements.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the first occurrence of the element.
+     *
+     * @return True, if the element got removed
+     */
+    public boolean remove(@NonNull T element) {
+        while (true) {
+            final T[] current = elements.get();
+            final int index = indexOf(current, element);
+            if (index == -1) {
+                return false;
+            }
+            final T[] updated = Arrays.copyOf(current, current.length - 1);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            if (elements.compareAndSet(current, updated)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes all elements, which are an instance of the given class.
+     *
+     * @return True, if any element got removed
+     */
+    public boolean removeInstancesOf(@NonNull Class<?> clazz) {
+        while (true) {
+            final T[] current = elements.get();
+            final T[] updated = Arrays.copyOf(current, current.length);
+            int count = 0;
+            for (final T element : current) {
+                if (!clazz.isInstance(element)) {
+                    updated[count++] = element;
+                }
+            }
+            if (count == current.length) {
+                return false;
+            }
+            if (elements.compareAndSet(current, Arrays.copyOf(updated, count))) {
+                return true;
+            }
+        }
+    }
+
+    private static int indexOf(Object[] array, Object element) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(element)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter for frequent concurrent increments, in the style of {@code LongAdder}, which is not available before
+ * API level 24.<br>
+ * The count is spread over several cells, every thread increments the cell picked by its id, so threads rarely
+ * contend on the same cell. Cells are spaced a cache line apart, to avoid false sharing.
+ */
+public final class StripedCounter {
+    // 8 longs = 64 bytes, the size of a typical cache line
+    private static final int CELL_SPACING = 8;
+    private static final int MAX_CELLS = 16;
+
+    private static final int CELL_COUNT;
+
+    static {
+        int cells = 1;
+        final int processors = Runtime.getRuntime().availableProcessors();
+        while (cells < processors && cells < MAX_CELLS) {
+            cells <<= 1;
+        }
+        CELL_COUNT = cells;
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELL_COUNT * CELL_SPACING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long value) {
+        cells.getAndAdd(cellIndex(), value);
+    }
+
+    /**
+     * @return The current count, not an atomic snapshot if there are concurrent increments
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            sum += cells.get(i * CELL_SPACING);
+        }
+        return sum;
+    }
+
+    /**
+     * Resets the counter and returns its count. Concurrent increments either get counted now or after the reset,
+     * none get lost.
+     */
+    public long sumThenReset() {
+        long sum = 0;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            sum += cells.getAndSet(i * CELL_SPACING, 0);
+        }
+        return sum;
+    }
+
+    private static int cellIndex() {
+        long id = Thread.currentThread().getId();
+        // spread sequential thread ids
+        id ^= (id >>> 16);
+        id *= 0x9E3779B97F4A7C15L;
+        return (int) ((id >>> 32) & (CELL_COUNT - 1)) * CELL_SPACING;
+    }
+}
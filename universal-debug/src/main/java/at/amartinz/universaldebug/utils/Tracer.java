@@ -0,0 +1,278 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects timings of install phases and of the dispatch to every component per priority in
+ * {@link LatencyHistogram LatencyHistograms}.<br>
+ * Tracing is opt-in, without a tracer the traced code paths only check for null.
+ */
+public final class Tracer {
+    private static final String TAG = "Tracer";
+
+    // Log.VERBOSE to Log.ASSERT, indexed by their values
+    private static final int PRIORITY_COUNT = Log.ASSERT + 1;
+
+    private final ConcurrentHashMap<Object, AtomicReferenceArray<LatencyHistogram>> dispatchHistograms;
+    // in the order the phases got recorded first, guarded by itself
+    private final LinkedHashMap<String, LatencyHistogram> phaseHistograms;
+
+    /**
+     * A summary of a single histogram.
+     */
+    public static final class Summary {
+        /**
+         * The priority of phases, which are not about logging.
+         */
+        public static final int NO_PRIORITY = -1;
+
+        private final String name;
+        private final int priority;
+        private final long count;
+        private final long p50;
+        private final long p99;
+        private final long max;
+
+        private Summary(String name, int priority, LatencyHistogram histogram) {
+            this.name = name;
+            this.priority = priority;
+            this.count = histogram.getCount();
+            this.p50 = histogram.getPercentile(50);
+            this.p99 = histogram.getPercentile(99);
+            this.max = histogram.getMax();
+        }
+
+        @NonNull public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The log priority, or {@link #NO_PRIORITY} for phases
+         */
+        public int getPriority() {
+            return priority;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        @Override public String toString() {
+            final String prefix = (priority == NO_PRIORITY) ? name : String.format(Locale.ENGLISH, "%s [%s]",
+                    name, mapPriorityToString(priority));
+            return String.format(Locale.ENGLISH, "%s: count=%d, p50=%s, p99=%s, max=%s", prefix, count,
+                    LatencyHistogram.formatNanos(p50), LatencyHistogram.formatNanos(p99),
+                    LatencyHistogram.formatNanos(max));
+        }
+    }
+
+    public Tracer() {
+        this.dispatchHistograms = new ConcurrentHashMap<>();
+        this.phaseHistograms = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return The current time for measuring durations, from a clock which never jumps
+     */
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param phase    The name of the phase, for example the installation of an extension
+     * @param duration The duration in nanoseconds
+     */
+    public void recordPhase(@NonNull String phase, long duration) {
+        LatencyHistogram histogram;
+        synchronized (phaseHistograms) {
+            histogram = phaseHistograms.get(phase);
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                phaseHistograms.put(phase, histogram);
+            }
+        }
+        histogram.record(duration);
+    }
+
+    /**
+     * @param component The component, which handled a log line
+     * @param priority  The priority of the log line
+     * @param duration  The duration in nanoseconds
+     */
+    public void recordDispatch(@NonNull Object component, int priority, long duration) {
+        if (priority < 0 || priority >= PRIORITY_COUNT) {
+            return;
+        }
+        AtomicReferenceArray<LatencyHistogram> histograms = dispatchHistograms.get(component);
+        if (histograms == null) {
+            final AtomicReferenceArray<LatencyHistogram> created = new AtomicReferenceArray<>(PRIORITY_COUNT);
+            histograms = dispatchHistograms.putIfAbsent(component, created);
+            if (histograms == null) {
+                histograms = created;
+            }
+        }
+        LatencyHistogram histogram = histograms.get(priority);
+        if (histogram == null) {
+            histograms.compareAndSet(priority, null, new LatencyHistogram());
+            histogram = histograms.get(priority);
+        }
+        histogram.record(duration);
+    }
+
+    /**
+     * @return The phases in the order they got recorded first, followed by the components and their priorities
+     */
+    @NonNull public List<Summary> snapshot() {
+        final List<Summary> summaries = new ArrayList<>();
+        synchronized (phaseHistograms) {
+            for (final Map.Entry<String, LatencyHistogram> entry : phaseHistograms.entrySet()) {
+                summaries.add(new Summary(entry.getKey(), Summary.NO_PRIORITY, entry.getValue()));
+            }
+        }
+        for (final Map.Entry<Object, AtomicReferenceArray<LatencyHistogram>> entry : dispatchHistograms.entrySet()) {
+            final Class<?> clazz = entry.getKey().getClass();
+            // anonymous classes do not have a simple name
+            final String name = clazz.isAnonymousClass() ? clazz.getName() : clazz.getSimpleName();
+            final AtomicReferenceArray<LatencyHistogram> histograms = entry.getValue();
+            for (int priority = 0; priority < PRIORITY_COUNT; priority++) {
+                final LatencyHistogram histogram = histograms.get(priority);
+                if (histogram != null) {
+                    summaries.add(new Summary(name, priority, histogram));
+                }
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Clears all recorded timings.
+     */
+    public void reset() {
+        synchronized (phaseHistograms) {
+            phaseHistograms.clear();
+        }
+        dispatchHistograms.clear();
+    }
+
+    /**
+     * Writes a line per summary, see {@link #snapshot()}.
+     */
+    public void dump(@NonNull Writer writer) throws IOException {
+        for (final Summary summary : snapshot()) {
+            writer.write(summary.toString());
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    /**
+     * Logs a line per summary with {@link Log#INFO}, directly to logcat, so it does not get traced itself.
+     */
+    public void dumpToLog() {
+        for (final Summary summary : snapshot()) {
+            Log.i(TAG, summary.toString());
+        }
+    }
+
+    /**
+     * @return True, if the file got written
+     */
+    public boolean dumpTo(@NonNull File file) {
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+            dump(writer);
+            return true;
+        } catch (IOException ioe) {
+            Log.e(TAG, "Could not dump traces to " + file, ioe);
+            return false;
+        } finally {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Writer writer) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException ignored) { }
+    }
+
+    // do not use BaseTree here, utils must not depend on trees
+    private static String mapPriorityToString(int priority) {
+        switch (priority) {
+            case Log.VERBOSE: {
+                return "V";
+            }
+            case Log.DEBUG: {
+                return "D";
+            }
+            case Log.INFO: {
+                return "I";
+            }
+            case Log.WARN: {
+                return "W";
+            }
+            case Log.ERROR: {
+                return "E";
+            }
+            default: {
+                return "WTF";
+            }
+        }
+    }
+}
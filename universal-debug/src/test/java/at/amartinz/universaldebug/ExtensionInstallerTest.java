@@ -0,0 +1,107 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the deferred installation of {@link ExtensionInstaller}, especially with failing extensions.
+ */
+public class ExtensionInstallerTest {
+    private static final long TIMEOUT = 5000;
+
+    @Test public void failingExtensionDoesNotBlockTheOthers() {
+        final FailingExtension failing = new FailingExtension();
+        final DependentExtension dependent = new DependentExtension();
+        final RecordingListener listener = new RecordingListener();
+
+        final ExtensionInstaller installer = new ExtensionInstaller(
+                Arrays.<UniversalDebugExtension>asList(dependent, failing),
+                Collections.<InstallListener>singletonList(listener));
+        installer.start();
+
+        assertTrue(installer.await(TIMEOUT));
+        assertTrue(dependent.isInstalled);
+        assertEquals(Collections.<UniversalDebugExtension>singletonList(failing), listener.failed);
+        assertTrue(listener.throwables.get(0) instanceof LinkageError);
+        assertEquals(Collections.<UniversalDebugExtension>singletonList(dependent), listener.installed);
+    }
+
+    private static class FailingExtension extends UniversalDebugExtension {
+        @Override public void install() {
+            // an error, not an exception, like a missing class of an optional SDK
+            throw new NoClassDefFoundError("com/example/Sdk");
+        }
+
+        @Override public boolean requiresMainThread() {
+            return false;
+        }
+    }
+
+    private static class DependentExtension extends UniversalDebugExtension {
+        volatile boolean isInstalled;
+
+        @Override public void install() {
+            isInstalled = true;
+        }
+
+        @Override public boolean requiresMainThread() {
+            return false;
+        }
+
+        @NonNull @Override public Collection<Class<? extends UniversalDebugExtension>> getDependencies() {
+            return Collections.<Class<? extends UniversalDebugExtension>>singletonList(FailingExtension.class);
+        }
+    }
+
+    private static class RecordingListener extends InstallListener {
+        final List<UniversalDebugExtension> installed = Collections.synchronizedList(
+                new ArrayList<UniversalDebugExtension>());
+        final List<UniversalDebugExtension> failed = Collections.synchronizedList(
+                new ArrayList<UniversalDebugExtension>());
+        final List<Throwable> throwables = Collections.synchronizedList(new ArrayList<Throwable>());
+
+        @Override public void onExtensionInstalled(@NonNull UniversalDebugExtension extension, long duration) {
+            installed.add(extension);
+        }
+
+        @Override public void onExtensionFailed(@NonNull UniversalDebugExtension extension,
+                @NonNull Throwable throwable) {
+            failed.add(extension);
+            throwables.add(throwable);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import at.amartinz.universaldebug.trees.BaseTree;
+import at.amartinz.universaldebug.trees.BaseTreeComponent;
+import timber.log.Timber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class FlushingExceptionHandlerTest {
+    private static final long TIMEOUT = 5000;
+
+    private Thread.UncaughtExceptionHandler originalHandler;
+    private BaseTree baseTree;
+    private RecordingHandler previousHandler;
+
+    @Before public void setUp() {
+        originalHandler = Thread.getDefaultUncaughtExceptionHandler();
+        baseTree = new BaseTree(mock(Context.class), Collections.<Integer>emptySet());
+        previousHandler = new RecordingHandler();
+    }
+
+    @After public void tearDown() {
+        Thread.setDefaultUncaughtExceptionHandler(originalHandler);
+        Timber.uprootAll();
+    }
+
+    @Test public void installChainsToPreviousHandler() {
+        final FlushingComponent component = new FlushingComponent(baseTree, null);
+        baseTree.addComponent(component);
+        Thread.setDefaultUncaughtExceptionHandler(previousHandler);
+
+        new UniversalDebug(mock(Context.class))
+                .withTimber(true)
+                .withDebug(true)
+                .withDebugTree(baseTree)
+                .install();
+
+        final Thread.UncaughtExceptionHandler handler = Thread.getDefaultUncaughtExceptionHandler();
+        assertTrue(handler instanceof FlushingExceptionHandler);
+
+        final RuntimeException crash = new RuntimeException("crash");
+        handler.uncaughtException(Thread.currentThread(), crash);
+
+        assertEquals(1, component.flushCount.get());
+        assertEquals(1, previousHandler.throwables.size());
+        assertSame(crash, previousHandler.throwables.get(0));
+        assertSame(Thread.currentThread(), previousHandler.threads.get(0));
+    }
+
+    @Test public void flushesOnceWhenTwoThreadsCrash() throws InterruptedException {
+        // the first flush waits until the second crash got passed on, so both crashes overlap
+        final CountDownLatch secondPassedOn = new CountDownLatch(1);
+        final FlushingComponent component = new FlushingComponent(baseTree, secondPassedOn);
+        baseTree.addComponent(component);
+        previousHandler.passedOn = secondPassedOn;
+        final FlushingExceptionHandler handler = new FlushingExceptionHandler(baseTree, TIMEOUT, previousHandler);
+
+        final Thread first = crash(handler, "first");
+        assertTrue(component.flushStarted.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        final Thread second = crash(handler, "second");
+        first.join(TIMEOUT);
+        second.join(TIMEOUT);
+
+        assertEquals(1, component.flushCount.get());
+        assertEquals(2, previousHandler.throwables.size());
+    }
+
+    @Test public void blockingComponentGetsCutOffAtDeadline() throws InterruptedException {
+        final CountDownLatch never = new CountDownLatch(1);
+        final FlushingComponent component = new FlushingComponent(baseTree, never);
+        baseTree.addComponent(component);
+        final FlushingExceptionHandler handler = new FlushingExceptionHandler(baseTree, 200, previousHandler);
+
+        try {
+            final long start = System.nanoTime();
+            handler.uncaughtException(Thread.currentThread(), new RuntimeException("crash"));
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            assertTrue("flushing took " + elapsedMillis + "ms", elapsedMillis < 2000);
+            assertEquals(1, component.flushCount.get());
+            assertEquals(1, previousHandler.throwables.size());
+        } finally {
+            never.countDown();
+        }
+    }
+
+    private static Thread crash(final FlushingExceptionHandler handler, String name) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                handler.uncaughtException(Thread.currentThread(), new RuntimeException("crash"));
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+
+    private static final class FlushingComponent extends BaseTreeComponent {
+        final AtomicInteger flushCount = new AtomicInteger();
+        final CountDownLatch flushStarted = new CountDownLatch(1);
+        private final CountDownLatch release;
+
+        FlushingComponent(BaseTree baseTree, CountDownLatch release) {
+            super(baseTree);
+            this.release = release;
+        }
+
+        @Override public boolean flush(long timeoutMillis) {
+            flushCount.incrementAndGet();
+            flushStarted.countDown();
+            if (release != null) {
+                try {
+                    return release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override protected void doLog(int priority, String tag, String message, Throwable t) { }
+    }
+
+    private static final class RecordingHandler implements Thread.UncaughtExceptionHandler {
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+        final List<Throwable> throwables = Collections.synchronizedList(new ArrayList<Throwable>());
+        volatile CountDownLatch passedOn;
+
+        @Override public void uncaughtException(Thread thread, Throwable throwable) {
+            threads.add(thread);
+            throwables.add(throwable);
+            final CountDownLatch latch = passedOn;
+            if (latch != null) {
+                latch.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug;
+
+/**
+ * A minimal harness for the benchmarks of the unit tests, which runs an operation in rounds after a warm-up
+ * and reports the fastest round.<br>
+ * The numbers are only meant for comparing two approaches on the same machine. Wall clock measurements are not
+ * reliable on a busy machine, so test classes named {@code *Benchmark} only run with
+ * {@code ./gradlew test -Pbenchmarks}.
+ */
+public final class Microbenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // keeps the results alive, so the JIT can not remove the measured code
+    private static volatile long sink;
+
+    public static abstract class Operation {
+        /**
+         * @param iteration The index of the current iteration
+         * @return Any value depending on the work done, it gets consumed to keep the work from getting optimized away
+         */
+        public abstract long run(int iteration);
+    }
+
+    private Microbenchmark() { }
+
+    /**
+     * @param iterations How often the operation runs per round
+     * @return The nanoseconds per operation of the fastest round
+     */
+    public static double measure(int iterations, Operation operation) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runRound(iterations, operation);
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            best = Math.min(best, runRound(iterations, operation));
+        }
+
+        return (double) best / iterations;
+    }
+
+    private static long runRound(int iterations, Operation operation) {
+        long result = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            result += operation.run(i);
+        }
+        final long duration = System.nanoTime() - start;
+        sink += result;
+        return duration;
+    }
+}
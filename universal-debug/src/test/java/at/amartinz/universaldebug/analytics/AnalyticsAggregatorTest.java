@@ -0,0 +1,149 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the counting of {@link AnalyticsAggregator}, which must neither lose nor double count events.
+ */
+public class AnalyticsAggregatorTest {
+    // long enough to never flush on its own during a test
+    private static final long INTERVAL = 60 * 60 * 1000;
+
+    private final Analytics analytics = Analytics.get();
+    private SummaryComponent component;
+    private AnalyticsAggregator aggregator;
+
+    @Before public void setUp() {
+        component = new SummaryComponent();
+        analytics.addComponent(component);
+        aggregator = new AnalyticsAggregator(analytics, INTERVAL);
+    }
+
+    @After public void tearDown() {
+        aggregator.shutdown();
+        analytics.removeComponent(component);
+    }
+
+    @Test public void countsPerAttributeValue() {
+        aggregator.count("screen", "name", "main");
+        aggregator.count("screen", "name", "main");
+        aggregator.count("screen", "name", "settings");
+        aggregator.count("click", "name", "main");
+        aggregator.flush();
+
+        assertEquals(3, component.summaries.size());
+        assertEquals(2L, (long) component.summaries.get("screen/name=main"));
+        assertEquals(1L, (long) component.summaries.get("screen/name=settings"));
+        assertEquals(1L, (long) component.summaries.get("click/name=main"));
+
+        // the counters got reset, nothing to report
+        aggregator.flush();
+        assertEquals(3, component.eventCount);
+    }
+
+    @Test public void valuesBeyondLimitGetCountedAsOther() {
+        for (int i = 0; i < 300; i++) {
+            aggregator.count("screen", "name", "screen" + i);
+        }
+        aggregator.flush();
+
+        assertEquals(257, component.summaries.size());
+        assertEquals(44L, (long) component.summaries.get("screen/name=other"));
+    }
+
+    @Test public void concurrentCountsSurviveConcurrentFlushes() throws InterruptedException {
+        final int threadCount = 4;
+        final int countsPerThread = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            final String value = (t % 2 == 0) ? "even" : "odd";
+            threads[t] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    for (int i = 0; i < countsPerThread; i++) {
+                        aggregator.count("click", "name", value);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        final AtomicBoolean isCounting = new AtomicBoolean(true);
+        final Thread flusher = new Thread(new Runnable() {
+            @Override public void run() {
+                while (isCounting.get()) {
+                    aggregator.flush();
+                }
+            }
+        });
+        flusher.start();
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        isCounting.set(false);
+        flusher.join();
+        aggregator.flush();
+
+        assertEquals(2L * countsPerThread, (long) component.summaries.get("click/name=even"));
+        assertEquals(2L * countsPerThread, (long) component.summaries.get("click/name=odd"));
+        assertTrue(component.eventCount >= 2);
+    }
+
+    /**
+     * Sums the counts of all summary events per event, attribute and value.
+     */
+    private static final class SummaryComponent extends CountingAnalyticsComponent {
+        final Map<String, Long> summaries = new HashMap<>();
+        int eventCount;
+
+        @Override public synchronized void logEvent(@NonNull AnalyticsEvent event) {
+            super.logEvent(event);
+            eventCount++;
+            final String key = event.getName() + "/" + event.getKey(0) + "=" + event.getString(0);
+            final Long sum = summaries.get(key);
+            summaries.put(key, ((sum != null) ? sum : 0) + event.getLong(1));
+        }
+    }
+}
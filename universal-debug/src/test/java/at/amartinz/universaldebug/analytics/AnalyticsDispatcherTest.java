@@ -0,0 +1,171 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the asynchronous mode of {@link Analytics}, especially its backpressure policies.
+ */
+public class AnalyticsDispatcherTest {
+    private static final long TIMEOUT = 5000;
+    private static final String BLOCK = "block";
+
+    private final Analytics analytics = Analytics.get();
+    private RecordingComponent component;
+
+    @Before public void setUp() {
+        component = new RecordingComponent();
+        analytics.addComponent(component);
+    }
+
+    @After public void tearDown() throws InterruptedException {
+        component.release.countDown();
+        analytics.shutdownAsync(TIMEOUT);
+        analytics.removeComponent(component);
+    }
+
+    @Test public void dropOldestKeepsTheNewestEvents() throws InterruptedException {
+        analytics.setAsync(4, Analytics.BACKPRESSURE_DROP_OLDEST);
+        blockDelivery();
+        for (int i = 1; i <= 6; i++) {
+            analytics.logCustom(String.valueOf(i), null);
+        }
+        assertEquals(4, analytics.getQueueDepth());
+        assertEquals(2, analytics.getDroppedCount());
+
+        component.release.countDown();
+        assertTrue(analytics.flush(TIMEOUT));
+        assertEquals(Arrays.asList(BLOCK, "3", "4", "5", "6"), component.getNames());
+        assertEquals(0, analytics.getQueueDepth());
+    }
+
+    @Test public void dropLowPriorityKeepsImportantEvents() throws InterruptedException {
+        analytics.setAsync(2, Analytics.BACKPRESSURE_DROP_LOW_PRIORITY);
+        blockDelivery();
+        analytics.logCustom("low", null, Analytics.PRIORITY_LOW);
+        analytics.logCustom("normal", null, Analytics.PRIORITY_NORMAL);
+        // replaces the low priority event
+        analytics.logCustom("high", null, Analytics.PRIORITY_HIGH);
+        // nothing queued has a lower priority, the new event gets dropped
+        analytics.logCustom("late", null, Analytics.PRIORITY_LOW);
+        assertEquals(2, analytics.getQueueDepth());
+        assertEquals(2, analytics.getDroppedCount());
+
+        component.release.countDown();
+        assertTrue(analytics.flush(TIMEOUT));
+        assertEquals(Arrays.asList(BLOCK, "normal", "high"), component.getNames());
+    }
+
+    @Test public void blockWaitsForSpace() throws InterruptedException {
+        analytics.setAsync(1, Analytics.BACKPRESSURE_BLOCK);
+        blockDelivery();
+        analytics.logCustom("queued", null);
+
+        final Thread logger = new Thread(new Runnable() {
+            @Override public void run() {
+                analytics.logCustom("waiting", null);
+            }
+        });
+        logger.start();
+        logger.join(100);
+        assertTrue(logger.isAlive());
+        assertEquals(1, analytics.getQueueDepth());
+
+        component.release.countDown();
+        logger.join(TIMEOUT);
+        assertFalse(logger.isAlive());
+        assertTrue(analytics.flush(TIMEOUT));
+        assertEquals(Arrays.asList(BLOCK, "queued", "waiting"), component.getNames());
+        assertEquals(0, analytics.getDroppedCount());
+    }
+
+    @Test public void errorsOfComponentsDoNotStopDelivery() throws InterruptedException {
+        analytics.setAsync(4, Analytics.BACKPRESSURE_BLOCK);
+        component.throwError = true;
+        analytics.logCustom("error", null);
+        assertTrue(analytics.flush(TIMEOUT));
+
+        // the queue must keep draining, a logging thread would wait forever otherwise
+        for (int i = 0; i < 10; i++) {
+            analytics.logCustom(String.valueOf(i), null);
+        }
+        assertTrue(analytics.flush(TIMEOUT));
+        assertEquals(10, component.getNames().size());
+    }
+
+    private void blockDelivery() throws InterruptedException {
+        analytics.logCustom(BLOCK, null);
+        assertTrue(component.entered.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    private static class RecordingComponent extends CountingAnalyticsComponent {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> names = new ArrayList<>();
+        volatile boolean throwError;
+
+        @Override public void logCustom(@NonNull String eventName, @Nullable Map<Object, Object> attributes) {
+            if (throwError) {
+                throwError = false;
+                throw new NoClassDefFoundError("com/example/Sdk");
+            }
+            if (BLOCK.equals(eventName)) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (names) {
+                names.add(eventName);
+            }
+            super.logCustom(eventName, attributes);
+        }
+
+        List<String> getNames() {
+            synchronized (names) {
+                return new ArrayList<>(names);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the typed attributes of {@link AnalyticsEvent} and how events get pooled and recycled.
+ */
+public class AnalyticsEventTest {
+    // the capacity of the pool
+    private static final int POOL_SIZE = 32;
+
+    @Test public void recycledEventGetsReusedEmpty() {
+        // empties the pool, so the next event obtained is the one recycled below
+        final AnalyticsEvent[] drained = new AnalyticsEvent[POOL_SIZE];
+        for (int i = 0; i < POOL_SIZE; i++) {
+            drained[i] = AnalyticsEvent.obtain("drained");
+        }
+        try {
+            final AnalyticsEvent event = AnalyticsEvent.obtain("first").put("key", "value").put("count", 1L);
+            event.recycle();
+            assertNull(event.name);
+            assertEquals(0, event.size());
+
+            final AnalyticsEvent reused = AnalyticsEvent.obtain("second");
+            assertSame(event, reused);
+            assertEquals("second", reused.getName());
+            assertEquals(Analytics.PRIORITY_NORMAL, reused.getPriority());
+            assertEquals(0, reused.size());
+            reused.recycle();
+        } finally {
+            for (final AnalyticsEvent event : drained) {
+                event.recycle();
+            }
+        }
+    }
+
+    @Test public void attributesGrowBeyondInitialCapacity() {
+        final AnalyticsEvent event = AnalyticsEvent.obtain("event");
+        for (int i = 0; i < 10; i++) {
+            event.put("long" + i, (long) i);
+        }
+        event.put("double", 2.5).put("string", "value");
+
+        assertEquals(12, event.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals("long" + i, event.getKey(i));
+            assertEquals(AnalyticsEvent.VALUE_LONG, event.getValueType(i));
+            assertEquals(i, event.getLong(i));
+        }
+        assertEquals(AnalyticsEvent.VALUE_DOUBLE, event.getValueType(10));
+        assertEquals(2.5, event.getDouble(10), 0);
+        assertEquals(AnalyticsEvent.VALUE_STRING, event.getValueType(11));
+        assertEquals("value", event.getString(11));
+        event.recycle();
+    }
+
+    @Test public void releaseRecyclesAfterLastReference() {
+        final AnalyticsEvent event = AnalyticsEvent.obtain("shared").put("key", "value");
+        event.retain(2);
+
+        event.release();
+        assertEquals("shared", event.getName());
+        assertEquals(1, event.size());
+
+        event.release();
+        assertNull(event.name);
+        assertEquals(0, event.size());
+    }
+
+    @Test public void copyKeepsContentAfterRecycle() {
+        final AnalyticsEvent event = AnalyticsEvent.obtain("original").setPriority(Analytics.PRIORITY_HIGH)
+                .put("key", "value").put("count", 3L);
+        final AnalyticsEvent copy = AnalyticsEvent.allocate();
+        copy.copyFrom(event);
+        event.recycle();
+
+        assertEquals("original", copy.getName());
+        assertEquals(Analytics.PRIORITY_HIGH, copy.getPriority());
+        assertEquals(2, copy.size());
+        assertEquals("value", copy.getString(0));
+        assertEquals(3, copy.getLong(1));
+    }
+
+    @Test public void bytesRoundTrip() throws IOException {
+        final Map<Object, Object> attributes = new HashMap<>();
+        attributes.put("int", 1);
+        attributes.put("float", 1.5f);
+        attributes.put("string", "value");
+        final AnalyticsEvent event = AnalyticsEvent.obtain(AnalyticsEvent.TYPE_CUSTOM, Analytics.PRIORITY_LOW,
+                "custom", attributes).put("long", 42L).put("double", 0.25).put("null", (String) null);
+
+        final AnalyticsEvent read = AnalyticsEvent.fromBytes(event.toBytes());
+        event.recycle();
+
+        assertEquals(AnalyticsEvent.TYPE_CUSTOM, read.type);
+        assertEquals(Analytics.PRIORITY_LOW, read.getPriority());
+        assertEquals("custom", read.getName());
+        assertEquals(3, read.size());
+        assertEquals(42, read.getLong(0));
+        assertEquals(0.25, read.getDouble(1), 0);
+        assertNull(read.getString(2));
+
+        final Map<Object, Object> expected = new HashMap<>();
+        expected.put("int", 1L);
+        expected.put("float", 1.5);
+        expected.put("string", "value");
+        assertEquals(expected, read.attributes);
+        read.recycle();
+    }
+}
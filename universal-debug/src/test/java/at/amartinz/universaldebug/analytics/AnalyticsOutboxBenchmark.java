@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import at.amartinz.universaldebug.Microbenchmark;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the throughput of the outbox of {@link Analytics}, from logging an event until a local fake component
+ * received it, against delivering directly without persisting.
+ */
+public class AnalyticsOutboxBenchmark {
+    // below the capacity of the outbox, so nothing gets dropped while waiting for a batch
+    private static final int BATCH_SIZE = 512;
+    private static final int BATCHES = 20;
+    private static final long TIMEOUT = 10000;
+    private static final double MIN_OUTBOX_EVENTS_PER_SECOND = 10000;
+
+    private final Analytics analytics = Analytics.get();
+    private CountingAnalyticsComponent component;
+    private File directory;
+
+    @Before public void setUp() throws IOException {
+        directory = File.createTempFile("outbox", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        component = new CountingAnalyticsComponent();
+        analytics.addComponent(component);
+    }
+
+    @After public void tearDown() {
+        analytics.shutdownOutbox();
+        analytics.removeComponent(component);
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test public void outboxThroughput() {
+        final double directNanos = measure();
+
+        analytics.setOutbox(directory);
+        final double outboxNanos = measure();
+
+        // a sync to the disk per batch, instead of one per event
+        assertTrue("outbox took " + outboxNanos + " ns per event, direct " + directNanos + " ns",
+                1e9 / outboxNanos > MIN_OUTBOX_EVENTS_PER_SECOND);
+        assertEquals(0, analytics.getDroppedCount());
+        assertEquals(0, analytics.getOutboxPendingCount());
+    }
+
+    /**
+     * @return The nanoseconds per event
+     */
+    private double measure() {
+        final double nanosPerBatch = Microbenchmark.measure(BATCHES, new Microbenchmark.Operation() {
+            @Override public long run(int iteration) {
+                final long expected = component.getCount() + BATCH_SIZE;
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    analytics.logCustom("event", null);
+                }
+                try {
+                    component.await(expected, TIMEOUT);
+                } catch (InterruptedException ie) {
+                    throw new AssertionError(ie);
+                }
+                return component.getCount();
+            }
+        });
+        return nanosPerBatch / BATCH_SIZE;
+    }
+}
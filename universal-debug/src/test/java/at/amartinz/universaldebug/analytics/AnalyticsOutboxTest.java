@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import at.amartinz.universaldebug.utils.DurableQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the outbox of {@link Analytics}, especially replacing it while the previous one still persists.
+ */
+public class AnalyticsOutboxTest {
+    private static final int EVENT_COUNT = 500;
+    private static final long TIMEOUT = 10000;
+
+    private final Analytics analytics = Analytics.get();
+    private CountingAnalyticsComponent component;
+    private File directory;
+
+    @Before public void setUp() throws IOException {
+        directory = File.createTempFile("outbox", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        component = new CountingAnalyticsComponent();
+        analytics.addComponent(component);
+    }
+
+    @After public void tearDown() {
+        analytics.shutdownOutbox();
+        analytics.removeComponent(component);
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test public void deliversEverythingAcrossRestarts() throws Exception {
+        for (int round = 0; round < 5; round++) {
+            // replace the outbox while the previous one still has events to persist
+            analytics.setOutbox(directory);
+            for (int i = 0; i < EVENT_COUNT; i++) {
+                analytics.logCustom("event", null);
+            }
+        }
+        assertTrue(analytics.flush(TIMEOUT));
+        component.await(5 * EVENT_COUNT, TIMEOUT);
+        assertEquals(0, analytics.getDroppedCount());
+
+        analytics.shutdownOutbox();
+        // the queue has to be consistent and unlocked, once the last outbox thread closed it
+        final DurableQueue queue = openWhenReleased(directory, TIMEOUT);
+        assertEquals(0, queue.size());
+        queue.close();
+        // delivery is at least once, nothing may get lost
+        assertTrue(component.getCount() >= 5 * EVENT_COUNT);
+    }
+
+    private static DurableQueue openWhenReleased(File directory, long timeoutMillis) throws Exception {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            try {
+                return new DurableQueue(directory);
+            } catch (IOException ioe) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw ioe;
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that {@link BufferingAnalyticsComponent} replays events in order, also while events keep getting logged.
+ */
+public class BufferingAnalyticsComponentTest {
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 500;
+
+    @Test public void replaysBufferedEventsInOrderThenLogsDirectly() {
+        final RecordingComponent delegate = new RecordingComponent();
+        final BufferingAnalyticsComponent buffering = new BufferingAnalyticsComponent(delegate, 2);
+        buffering.logClickGeneric("first");
+        final AnalyticsEvent event = AnalyticsEvent.obtain("second").put("key", "value");
+        buffering.logEvent(event);
+        // the buffer holds a copy, the event gets recycled after logging
+        event.recycle();
+        buffering.logClickGeneric("dropped");
+        assertEquals(2, buffering.getBufferedCount());
+        assertEquals(1, buffering.getDroppedCount());
+        assertEquals(0, delegate.names.size());
+
+        buffering.markReady();
+        assertEquals(BufferingAnalyticsComponent.STATE_READY, buffering.getState());
+        buffering.logClickGeneric("direct");
+
+        assertEquals(Arrays.asList("first", "second", "direct"), delegate.names);
+        assertEquals("value", delegate.lastValue);
+    }
+
+    @Test public void keepsOrderOfEveryProducerWhileReplaying() throws InterruptedException {
+        final RecordingComponent delegate = new RecordingComponent();
+        final BufferingAnalyticsComponent buffering = new BufferingAnalyticsComponent(delegate,
+                PRODUCERS * EVENTS_PER_PRODUCER);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch halfway = new CountDownLatch(PRODUCERS);
+        final Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers[p] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+                        buffering.logClickGeneric(producer + ":" + i);
+                        if (i == EVENTS_PER_PRODUCER / 2) {
+                            halfway.countDown();
+                        }
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        start.countDown();
+        // replays while the producers keep logging, some events get replayed and some logged directly
+        halfway.await();
+        buffering.markReady();
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+
+        assertEquals(0, buffering.getDroppedCount());
+        assertEquals(PRODUCERS * EVENTS_PER_PRODUCER, delegate.names.size());
+        final int[] next = new int[PRODUCERS];
+        for (final String name : delegate.names) {
+            final String[] parts = name.split(":");
+            final int producer = Integer.parseInt(parts[0]);
+            assertEquals("event of producer " + producer, next[producer], Integer.parseInt(parts[1]));
+            next[producer]++;
+        }
+    }
+
+    private static class RecordingComponent extends CountingAnalyticsComponent {
+        final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+        volatile String lastValue;
+
+        @Override public void logEvent(@NonNull AnalyticsEvent event) {
+            super.logEvent(event);
+            names.add(event.getName());
+            lastValue = event.getString(0);
+        }
+
+        @Override public void logClickGeneric(@NonNull String name) {
+            super.logClickGeneric(name);
+            names.add(name);
+        }
+    }
+}
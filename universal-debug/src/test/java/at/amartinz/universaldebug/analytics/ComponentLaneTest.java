@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that a {@link ComponentLane} keeps delivering after failures and that a component never gets called by two
+ * lanes at the same time.
+ */
+public class ComponentLaneTest {
+    private static final long TIMEOUT = 10000;
+    private static final int EVENT_COUNT = 2000;
+
+    private static final Executor NEW_THREAD_EXECUTOR = new Executor() {
+        @Override public void execute(@NonNull Runnable runnable) {
+            new Thread(runnable).start();
+        }
+    };
+
+    private final Analytics analytics = Analytics.get();
+    private AnalyticsComponent registeredComponent;
+
+    @After public void tearDown() {
+        analytics.setIsolation(false);
+        if (registeredComponent != null) {
+            analytics.removeComponent(registeredComponent);
+        }
+    }
+
+    @Test public void keepsDeliveringAfterAnError() throws InterruptedException {
+        final CountingAnalyticsComponent component = new CountingAnalyticsComponent() {
+            private boolean hasFailed;
+
+            @Override public void logEvent(@NonNull AnalyticsEvent event) {
+                if (!hasFailed) {
+                    hasFailed = true;
+                    throw new AssertionError("broken component");
+                }
+                super.logEvent(event);
+            }
+        };
+        final ComponentLane lane = new ComponentLane(component, NEW_THREAD_EXECUTOR,
+                new ConcurrentHashMap<AnalyticsComponent, ComponentLane>(), 16, 1000, 5, 1000);
+
+        assertTrue(lane.offer(obtainEvent()));
+        waitForDelivered(lane, 1);
+        // the lane must not stay scheduled after the error
+        assertTrue(lane.offer(obtainEvent()));
+        component.await(1, TIMEOUT);
+        assertEquals(1, lane.getHealth().getFailedCount());
+    }
+
+    @Test public void reconfiguringKeepsCallsSerial() throws InterruptedException {
+        final OverlapDetectingComponent component = new OverlapDetectingComponent();
+        registeredComponent = component;
+        analytics.addComponent(component);
+        analytics.setIsolation(EVENT_COUNT, 1000, 5, 1000);
+
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            analytics.logCustom("event", null);
+            if (i % 10 == 0) {
+                analytics.setIsolation(EVENT_COUNT, 1000 + i, 5, 1000);
+            }
+            if (i % 100 == 0) {
+                analytics.setIsolation(false);
+                analytics.setIsolation(EVENT_COUNT, 1000, 5, 1000);
+            }
+        }
+
+        component.await(EVENT_COUNT, TIMEOUT);
+        assertEquals(0, component.overlaps.get());
+    }
+
+    @Test public void readdingReusesTheBusyLane() throws InterruptedException {
+        final OverlapDetectingComponent component = new OverlapDetectingComponent();
+        registeredComponent = component;
+        analytics.setIsolation(EVENT_COUNT, 1000, 5, 1000);
+
+        int logged = 0;
+        for (int round = 0; round < 50; round++) {
+            analytics.addComponent(component);
+            for (int i = 0; i < 20; i++) {
+                analytics.logCustom("event", null);
+                logged++;
+            }
+            analytics.removeComponent(component);
+        }
+
+        Thread.sleep(100);
+        assertEquals(0, component.overlaps.get());
+        assertTrue(component.getCount() <= logged);
+    }
+
+    private static AnalyticsEvent obtainEvent() {
+        final AnalyticsEvent event = AnalyticsEvent.obtain("event");
+        event.retain(1);
+        return event;
+    }
+
+    private static void waitForDelivered(ComponentLane lane, long expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (lane.getHealth().getDeliveredCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, lane.getHealth().getDeliveredCount());
+    }
+
+    private static class OverlapDetectingComponent extends CountingAnalyticsComponent {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+
+        @Override public void logCustom(@NonNull String eventName, @Nullable Map<Object, Object> attributes) {
+            if (inFlight.incrementAndGet() != 1) {
+                overlaps.incrementAndGet();
+            }
+            Thread.yield();
+            inFlight.decrementAndGet();
+            super.logCustom(eventName, attributes);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.analytics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local fake of an analytics service, which only counts the events it receives.
+ */
+class CountingAnalyticsComponent extends AnalyticsComponent {
+    private final AtomicLong count = new AtomicLong();
+
+    long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Waits until at least the given amount of events arrived.
+     */
+    void await(long expected, long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (count.get() < expected) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Received " + count.get() + " of " + expected + " events");
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override public void logEvent(@NonNull AnalyticsEvent event) {
+        count.incrementAndGet();
+    }
+
+    @Override public void logCustom(@NonNull String eventName, @Nullable Map<Object, Object> attributes) {
+        count.incrementAndGet();
+    }
+
+    @Override public void logAppOpened() {
+        count.incrementAndGet();
+    }
+
+    @Override public void logClickGeneric(@NonNull String name) {
+        count.incrementAndGet();
+    }
+
+    @Override public void logClickButton(@NonNull String name) {
+        count.incrementAndGet();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import at.amartinz.universaldebug.Microbenchmark;
+
+import timber.log.Timber;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures log calls through Timber into a {@link BaseTree}, for priorities which get filtered and ones which get
+ * forwarded to a component.<br>
+ * Filtered calls return from the entry points of {@link BaseTree}, before Timber does any work.
+ */
+public class BaseTreeBenchmark {
+    private static final int ITERATIONS = 100000;
+
+    private final Object argument = new Object() {
+        @Override public String toString() {
+            return "argument";
+        }
+    };
+
+    private BaseTree baseTree;
+    private CountingComponent countingComponent;
+
+    @Before public void setUp() {
+        baseTree = new BaseTree(mock(Context.class), Collections.singleton(Log.DEBUG));
+        countingComponent = new CountingComponent(baseTree);
+        baseTree.addComponent(countingComponent);
+        Timber.plant(baseTree);
+    }
+
+    @After public void tearDown() {
+        Timber.uprootAll();
+    }
+
+    @Test public void filteredCalls() {
+        final double filteredNanos = Microbenchmark.measure(ITERATIONS, new Microbenchmark.Operation() {
+            @Override public long run(int iteration) {
+                Timber.d("line %s", argument);
+                return iteration;
+            }
+        });
+        final double filteredTaggedNanos = Microbenchmark.measure(ITERATIONS, new Microbenchmark.Operation() {
+            @Override public long run(int iteration) {
+                Timber.tag("Benchmark").d("line %s", argument);
+                return iteration;
+            }
+        });
+        final double forwardedNanos = Microbenchmark.measure(ITERATIONS, new Microbenchmark.Operation() {
+            @Override public long run(int iteration) {
+                Timber.i("line %s", argument);
+                return countingComponent.count;
+            }
+        });
+
+        // filtered calls return before Timber formats the message and walks the stack for the tag
+        assertTrue("filtered took " + filteredNanos + " ns, forwarded " + forwardedNanos + " ns",
+                filteredNanos * 10 < forwardedNanos);
+        assertTrue("filtered with an explicit tag took " + filteredTaggedNanos + " ns, forwarded " + forwardedNanos
+                + " ns", filteredTaggedNanos * 10 < forwardedNanos);
+        assertTrue(countingComponent.count > 0);
+    }
+
+    @Test public void taggedCallsAreCheaperThanUntaggedOnes() {
+        baseTree.registerTag(BaseTreeBenchmark.class, "Benchmark");
+        final String tag = baseTree.tagFor(BaseTreeBenchmark.class);
+
+        final double untaggedNanos = Microbenchmark.measure(ITERATIONS, new Microbenchmark.Operation() {
+            @Override public long run(int iteration) {
+                Timber.i("line %s", argument);
+                return countingComponent.count;
+            }
+        });
+        final double taggedNanos = Microbenchmark.measure(ITERATIONS, new Microbenchmark.Operation() {
+            @Override public long run(int iteration) {
+                Timber.tag(tag).i("line %s", argument);
+                return countingComponent.count;
+            }
+        });
+
+        // untagged calls still walk the stack inside Timber, the cache only saves parsing the class name
+        assertTrue("tagged took " + taggedNanos + " ns, untagged " + untaggedNanos + " ns",
+                taggedNanos < untaggedNanos);
+    }
+
+    private static class CountingComponent extends BaseTreeComponent {
+        long count;
+
+        CountingComponent(BaseTree baseTree) {
+            super(baseTree);
+        }
+
+        @Override protected boolean hasFixedFilter() {
+            return hasDefaultFixedFilter();
+        }
+
+        @Override protected void doLog(int priority, String tag, String message, Throwable t) {
+            count++;
+        }
+    }
+}
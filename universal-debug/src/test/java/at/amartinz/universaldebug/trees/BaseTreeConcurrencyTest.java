@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Stresses {@link BaseTree} with many logging threads while components get added and removed concurrently.
+ */
+public class BaseTreeConcurrencyTest {
+    private static final int LOGGING_THREAD_COUNT = 8;
+    private static final int LINES_PER_THREAD = 50000;
+    private static final int MIN_CHANGES = 2000;
+
+    @Test public void logWhileAddingAndRemovingComponents() throws InterruptedException {
+        final BaseTree baseTree = new BaseTree(mock(Context.class), Collections.<Integer>emptySet());
+        final CountingComponent permanent = new CountingComponent(baseTree);
+        baseTree.addComponent(permanent);
+
+        final AtomicBoolean isLogging = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong changes = new AtomicLong();
+        final AtomicLong logged = new AtomicLong();
+
+        final List<Thread> loggers = new ArrayList<>();
+        for (int t = 0; t < LOGGING_THREAD_COUNT; t++) {
+            loggers.add(startThread(start, failure, new Runnable() {
+                @Override public void run() {
+                    // keep logging until the components changed often enough
+                    int i = 0;
+                    while (i < LINES_PER_THREAD || changes.get() < MIN_CHANGES) {
+                        baseTree.log(Log.DEBUG + (i % 4), "Stress", "line", null);
+                        i++;
+                    }
+                    logged.addAndGet(i);
+                }
+            }));
+        }
+
+        final Thread mutator = startThread(start, failure, new Runnable() {
+            @Override public void run() {
+                final HashSet<Integer> filterDebug = new HashSet<>(Collections.singleton(Log.DEBUG));
+                while (isLogging.get()) {
+                    final TemporaryComponent temporary = new TemporaryComponent(baseTree);
+                    baseTree.addComponent(temporary);
+                    temporary.setPriorityFilterSet((changes.get() % 2 == 0) ? filterDebug : null);
+                    baseTree.removeComponent(temporary);
+
+                    baseTree.addComponent(new TemporaryComponent(baseTree));
+                    baseTree.addComponent(new TemporaryComponent(baseTree));
+                    baseTree.removeComponent(TemporaryComponent.class);
+                    changes.incrementAndGet();
+                }
+            }
+        });
+
+        start.countDown();
+        for (final Thread logger : loggers) {
+            logger.join();
+        }
+        isLogging.set(false);
+        mutator.join();
+
+        assertNull(failure.get());
+        // the permanent component must never miss a line, no matter how the components changed meanwhile
+        assertEquals(logged.get(), permanent.count.get());
+        assertEquals(1, baseTree.getComponents().size());
+        assertSame(permanent, baseTree.getComponents().get(0));
+    }
+
+    private static Thread startThread(final CountDownLatch start, final AtomicReference<Throwable> failure,
+            final Runnable runnable) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    start.await();
+                    runnable.run();
+                } catch (Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+    private static class CountingComponent extends BaseTreeComponent {
+        final AtomicLong count = new AtomicLong();
+
+        CountingComponent(BaseTree baseTree) {
+            super(baseTree);
+        }
+
+        @Override protected boolean hasFixedFilter() {
+            return hasDefaultFixedFilter();
+        }
+
+        @Override protected void doLog(int priority, String tag, String message, Throwable t) {
+            count.incrementAndGet();
+        }
+    }
+
+    private static class TemporaryComponent extends CountingComponent {
+        TemporaryComponent(BaseTree baseTree) {
+            super(baseTree);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import timber.log.Timber;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests {@link BaseTree} planted into Timber, the way apps use it.
+ */
+public class BaseTreeTest {
+    private BaseTree baseTree;
+    private RecordingComponent recordingComponent;
+
+    @Before public void setUp() {
+        baseTree = new BaseTree(mock(Context.class), Collections.singleton(Log.DEBUG));
+        recordingComponent = new RecordingComponent(baseTree);
+        baseTree.addComponent(recordingComponent);
+        Timber.plant(baseTree);
+    }
+
+    @After public void tearDown() {
+        Timber.uprootAll();
+    }
+
+    @Test public void dropsFilteredPriorities() {
+        Timber.d("filtered");
+        Timber.i("accepted");
+
+        assertEquals(1, recordingComponent.messages.size());
+        assertEquals("accepted", recordingComponent.messages.get(0));
+    }
+
+    @Test public void filteredCallDoesNotLeakExplicitTag() {
+        Timber.tag("Explicit").d("filtered");
+        Timber.i("accepted");
+
+        assertEquals(1, recordingComponent.tags.size());
+        assertNotEquals("Explicit", recordingComponent.tags.get(0));
+    }
+
+    @Test public void disabledCallDoesNotLeakExplicitTag() {
+        baseTree.setEnabled(false);
+        Timber.tag("Explicit").i("disabled");
+        baseTree.setEnabled(true);
+        Timber.i("accepted");
+
+        assertEquals(1, recordingComponent.tags.size());
+        assertNotEquals("Explicit", recordingComponent.tags.get(0));
+    }
+
+    @Test public void registeredTagReplacesDerivedTag() {
+        final StackTraceElement element = new StackTraceElement("com.example.Caller", "run", "Caller.java", 1);
+        final StackTraceElement innerElement = new StackTraceElement("com.example.Caller$1", "run", "Caller.java", 2);
+        assertEquals("Caller", baseTree.createStackElementTag(element));
+        assertEquals("Caller", baseTree.createStackElementTag(innerElement));
+
+        baseTree.registerTag(String.class, "Strings");
+        final StackTraceElement stringElement = new StackTraceElement("java.lang.String", "run", "String.java", 1);
+        assertEquals("Strings", baseTree.createStackElementTag(stringElement));
+        assertEquals("Strings", baseTree.tagFor(String.class));
+        assertEquals("Integer", baseTree.tagFor(Integer.class));
+    }
+
+    @Test public void registeringInvalidatesCachedTagsOfTheClassOnly() {
+        final StackTraceElement element = new StackTraceElement("java.lang.String", "run", "String.java", 1);
+        final StackTraceElement innerElement = new StackTraceElement("java.lang.String$1", "run", "String.java", 2);
+        final StackTraceElement otherElement = new StackTraceElement("java.lang.StringBuilder", "run", null, 3);
+        assertEquals("String", baseTree.createStackElementTag(element));
+        assertEquals("String", baseTree.createStackElementTag(innerElement));
+        assertEquals("StringBuilder", baseTree.createStackElementTag(otherElement));
+
+        baseTree.registerTag(String.class, "Strings");
+        assertEquals("Strings", baseTree.createStackElementTag(element));
+        assertEquals("Strings", baseTree.createStackElementTag(innerElement));
+        assertEquals("StringBuilder", baseTree.createStackElementTag(otherElement));
+    }
+
+    @Test public void tagsStayCorrectBeyondCacheSize() {
+        final int classCount = BaseTree.MAX_TAG_CACHE_SIZE * 4;
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < classCount; i++) {
+                final StackTraceElement element = new StackTraceElement("com.example.Caller" + i, "run", null, 1);
+                assertEquals("Caller" + i, baseTree.createStackElementTag(element));
+            }
+        }
+    }
+
+    @Test public void throttleSummaryGetsLoggedWithoutFurtherLines() throws InterruptedException {
+        baseTree.setThrottle(100, 1, false, Log.ERROR);
+        Timber.tag("Storm").i("first");
+        Timber.tag("Storm").i("suppressed");
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (recordingComponent.messages.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, recordingComponent.messages.size());
+        assertEquals("Suppressed 1 lines from Storm", recordingComponent.messages.get(1));
+    }
+
+    @Test public void customFilterGetsAskedOnEveryCall() {
+        final SwitchableComponent switchable = new SwitchableComponent(baseTree);
+        baseTree.addComponent(switchable);
+
+        Timber.i("before");
+        switchable.isAccepting = true;
+        // no rebuild of the dispatch table, the component did not opt in to a fixed filter
+        Timber.i("after");
+
+        assertEquals(1, switchable.messages.size());
+        assertEquals("after", switchable.messages.get(0));
+    }
+
+    private static class SwitchableComponent extends RecordingComponent {
+        volatile boolean isAccepting;
+
+        SwitchableComponent(BaseTree baseTree) {
+            super(baseTree);
+        }
+
+        @Override protected boolean hasFixedFilter() {
+            return false;
+        }
+
+        @Override protected boolean shouldLog(int priority) {
+            return isAccepting;
+        }
+    }
+
+    private static class RecordingComponent extends BaseTreeComponent {
+        // summaries of the throttle get logged from its thread
+        final List<String> tags = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+        RecordingComponent(BaseTree baseTree) {
+            super(baseTree);
+        }
+
+        @Override protected boolean hasFixedFilter() {
+            return hasDefaultFixedFilter();
+        }
+
+        @Override protected void doLog(int priority, String tag, String message, Throwable t) {
+            tags.add(tag);
+            messages.add(message);
+        }
+    }
+}
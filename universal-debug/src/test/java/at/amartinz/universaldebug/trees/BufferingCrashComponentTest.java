@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests that {@link BufferingCrashComponent} replays crashes in order, also while crashes keep getting logged.
+ */
+public class BufferingCrashComponentTest {
+    private static final int PRODUCERS = 4;
+    private static final int CRASHES_PER_PRODUCER = 500;
+
+    private BaseTree baseTree;
+    private RecordingCrashComponent delegate;
+
+    @Before public void setUp() {
+        baseTree = new BaseTree(mock(Context.class), Collections.<Integer>emptySet());
+        delegate = new RecordingCrashComponent(baseTree);
+    }
+
+    @Test public void replaysBufferedCrashesInOrderThenReportsDirectly() {
+        final BufferingCrashComponent buffering = new BufferingCrashComponent(baseTree, delegate, 2);
+        buffering.reportCrash(Log.ERROR, "Crash", "first", null);
+        buffering.reportCrash(Log.ERROR, "Crash", "second", null);
+        buffering.reportCrash(Log.ERROR, "Crash", "dropped", null);
+        assertEquals(2, buffering.getBufferedCount());
+        assertEquals(1, buffering.getDroppedCount());
+        assertEquals(0, delegate.messages.size());
+
+        buffering.markReady();
+        assertEquals(BufferingCrashComponent.STATE_READY, buffering.getState());
+        buffering.reportCrash(Log.ERROR, "Crash", "direct", null);
+
+        assertEquals(Arrays.asList("first", "second", "direct"), delegate.messages);
+    }
+
+    @Test public void keepsOrderOfEveryProducerWhileReplaying() throws InterruptedException {
+        final BufferingCrashComponent buffering = new BufferingCrashComponent(baseTree, delegate,
+                PRODUCERS * CRASHES_PER_PRODUCER);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch halfway = new CountDownLatch(PRODUCERS);
+        final Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers[p] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    for (int i = 0; i < CRASHES_PER_PRODUCER; i++) {
+                        buffering.reportCrash(Log.ERROR, "Crash", producer + ":" + i, null);
+                        if (i == CRASHES_PER_PRODUCER / 2) {
+                            halfway.countDown();
+                        }
+                    }
+                }
+            });
+            producers[p].start();
+        }
+
+        start.countDown();
+        // replays while the producers keep logging, some crashes get replayed and some reported directly
+        halfway.await();
+        buffering.markReady();
+        for (final Thread producer : producers) {
+            producer.join();
+        }
+
+        assertEquals(0, buffering.getDroppedCount());
+        assertInOrder(delegate.messages);
+    }
+
+    private static void assertInOrder(List<String> messages) {
+        assertEquals(PRODUCERS * CRASHES_PER_PRODUCER, messages.size());
+        final int[] next = new int[PRODUCERS];
+        for (final String message : messages) {
+            final String[] parts = message.split(":");
+            final int producer = Integer.parseInt(parts[0]);
+            assertEquals("crash of producer " + producer, next[producer], Integer.parseInt(parts[1]));
+            next[producer]++;
+        }
+    }
+
+    private static class RecordingCrashComponent extends CrashComponent {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+        RecordingCrashComponent(BaseTree baseTree) {
+            super(baseTree);
+        }
+
+        @Override protected void reportCrash(int priority, String tag, String message, Throwable t) {
+            messages.add(message);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the deduplication of {@link CrashComponent}, especially that suppressed repeats get reported.
+ */
+public class CrashComponentTest {
+    private static final long TIMEOUT = 5000;
+
+    private BaseTree baseTree;
+    private RecordingCrashComponent crashComponent;
+
+    @Before public void setUp() {
+        baseTree = new BaseTree(mock(Context.class), Collections.<Integer>emptySet());
+        crashComponent = new RecordingCrashComponent(baseTree);
+    }
+
+    @Test public void reportsEveryCrashWithoutWindow() {
+        for (int i = 0; i < 3; i++) {
+            crashComponent.doLog(Log.ERROR, "Crash", "CRASH: loop", new IllegalStateException());
+        }
+        assertEquals(3, crashComponent.getMessages().size());
+    }
+
+    @Test public void reportsRepeatsOnceTheWindowEnds() throws InterruptedException {
+        crashComponent.setDeduplicationWindow(100);
+        final IllegalStateException exception = new IllegalStateException();
+        for (int i = 0; i < 5; i++) {
+            crashComponent.doLog(Log.ERROR, "Crash", "CRASH: loop", exception);
+        }
+        assertEquals(Collections.singletonList("loop"), crashComponent.getMessages());
+
+        // the crash does not recur, the repeats must get reported nevertheless
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (crashComponent.getMessages().size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("loop (seen 4 times)", crashComponent.getMessages().get(1));
+        assertEquals(2, crashComponent.getMessages().size());
+    }
+
+    @Test public void flushReportsRepeats() {
+        crashComponent.setDeduplicationWindow(60 * 60 * 1000);
+        final IllegalStateException exception = new IllegalStateException();
+        for (int i = 0; i < 3; i++) {
+            crashComponent.doLog(Log.ERROR, "Crash", "CRASH: loop", exception);
+        }
+
+        crashComponent.flush(TIMEOUT);
+        assertEquals(2, crashComponent.getMessages().size());
+        assertEquals("loop (seen 2 times)", crashComponent.getMessages().get(1));
+
+        // nothing left to report
+        crashComponent.flush(TIMEOUT);
+        assertEquals(2, crashComponent.getMessages().size());
+    }
+
+    @Test public void routedRepeatsGetReportedByTheTarget() {
+        final RoutingCrashComponent routingComponent = new RoutingCrashComponent(baseTree);
+        routingComponent.addRoute("FATAL: ", null, Log.ASSERT, crashComponent);
+        routingComponent.setDeduplicationWindow(60 * 60 * 1000);
+        final IllegalStateException exception = new IllegalStateException();
+        for (int i = 0; i < 3; i++) {
+            routingComponent.doLog(Log.ERROR, "Crash", "FATAL: loop", exception);
+        }
+
+        routingComponent.flush(TIMEOUT);
+        assertEquals(2, crashComponent.getMessages().size());
+        assertEquals("loop (seen 2 times)", crashComponent.getMessages().get(1));
+        assertEquals(Log.ASSERT, (int) crashComponent.priorities.get(1));
+    }
+
+    private static class RecordingCrashComponent extends CrashComponent {
+        final List<Integer> priorities = new ArrayList<>();
+        private final List<String> messages = new ArrayList<>();
+
+        RecordingCrashComponent(BaseTree baseTree) {
+            super(baseTree);
+        }
+
+        @Override protected synchronized void reportCrash(int priority, String tag, String message, Throwable t) {
+            priorities.add(priority);
+            messages.add(message);
+        }
+
+        synchronized List<String> getMessages() {
+            return new ArrayList<>(messages);
+        }
+    }
+}
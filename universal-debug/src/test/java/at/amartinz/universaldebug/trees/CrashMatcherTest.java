@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests {@link CrashMatcher}, including matches while the rules change.
+ */
+public class CrashMatcherTest {
+    private static final int MATCHING_THREAD_COUNT = 4;
+    private static final int CHANGES = 20000;
+
+    @Test public void longestPrefixWins() {
+        final CrashMatcher<String> matcher = new CrashMatcher<String>()
+                .addRule("CRASH: ", null, "crash")
+                .addRule("CRASH: NET ", null, "network")
+                .addRule("CRASH: ", null, "second");
+
+        assertEquals("crash", matcher.match("Tag", "CRASH: something").getTarget());
+        assertEquals("network", matcher.match("Tag", "CRASH: NET timeout").getTarget());
+        assertNull(matcher.match("Tag", "something"));
+        assertNull(matcher.match("Tag", null));
+    }
+
+    @Test public void tagPatterns() {
+        final CrashMatcher<String> matcher = new CrashMatcher<String>()
+                .addRule("CRASH: ", "Network*", "network")
+                .addRule("CRASH: ", "Main", "main");
+
+        assertEquals("network", matcher.match("NetworkClient", "CRASH: timeout").getTarget());
+        assertEquals("main", matcher.match("Main", "CRASH: timeout").getTarget());
+        assertNull(matcher.match("Other", "CRASH: timeout"));
+        assertNull(matcher.match(null, "CRASH: timeout"));
+    }
+
+    @Test public void severityAndPrefixLength() {
+        final CrashMatcher<String> matcher = new CrashMatcher<String>()
+                .addRule("FATAL: ", null, 7, "fatal")
+                .addRule("CRASH: ", null, "crash");
+
+        final CrashMatcher.Rule<String> fatal = matcher.match(null, "FATAL: boom");
+        assertEquals(7, fatal.getSeverity());
+        assertEquals("boom", "FATAL: boom".substring(fatal.getPrefixLength()));
+        assertEquals(CrashMatcher.SEVERITY_UNCHANGED, matcher.match(null, "CRASH: boom").getSeverity());
+    }
+
+    @Test public void matchWhileRulesChange() throws InterruptedException {
+        final CrashMatcher<String> matcher = new CrashMatcher<String>().addRule("CRASH: ", null, "crash");
+        final AtomicBoolean isMatching = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final Thread[] threads = new Thread[MATCHING_THREAD_COUNT];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        while (isMatching.get()) {
+                            final String message = "CRASH: LONG PREFIX of the crash";
+                            final CrashMatcher.Rule<String> rule = matcher.match("Tag", message);
+                            if (rule == null) {
+                                continue;
+                            }
+                            // the prefix and the target always belong to the same rule
+                            final String expected = (rule.getPrefixLength() == 7) ? "crash" : "long";
+                            assertEquals(expected, rule.getTarget());
+                            assertTrue(message.substring(rule.getPrefixLength()).length() > 0);
+                        }
+                    } catch (Throwable throwable) {
+                        failure.compareAndSet(null, throwable);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        for (int i = 0; i < CHANGES; i++) {
+            matcher.clearRules();
+            if (i % 2 == 0) {
+                matcher.addRule("CRASH: LONG PREFIX ", null, "long");
+            }
+            matcher.addRule("CRASH: ", null, "crash");
+        }
+        isMatching.set(false);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure.get());
+    }
+}
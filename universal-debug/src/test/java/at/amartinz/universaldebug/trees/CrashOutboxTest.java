@@ -0,0 +1,148 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import at.amartinz.universaldebug.utils.DurableQueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests that {@link CrashOutbox} survives a queue it can not open and a backend which throws errors.
+ */
+public class CrashOutboxTest {
+    private static final long TIMEOUT = 5000;
+
+    private File directory;
+    private BaseTree baseTree;
+    private RecordingBackend backend;
+    private CrashOutbox crashOutbox;
+
+    @Before public void setUp() throws IOException {
+        directory = File.createTempFile("outbox", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        baseTree = new BaseTree(mock(Context.class), Collections.<Integer>emptySet());
+        backend = new RecordingBackend();
+        crashOutbox = new CrashOutbox(baseTree, directory, backend, 10, 10);
+    }
+
+    @After public void tearDown() {
+        crashOutbox.shutdown();
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test public void flushDoesNotWaitForAnOutboxWhichCouldNotOpen() throws Exception {
+        final DurableQueue blocker = new DurableQueue(directory);
+        try {
+            crashOutbox.start();
+            crashOutbox.enqueue(report("first"));
+
+            final long start = System.currentTimeMillis();
+            assertFalse(crashOutbox.flush(TIMEOUT));
+            assertTrue(System.currentTimeMillis() - start < TIMEOUT / 2);
+        } finally {
+            blocker.close();
+        }
+
+        // the queued report is kept and persisted once the queue opens again
+        Thread.sleep(CrashOutbox.OPEN_RETRY_DELAY + 100);
+        crashOutbox.enqueue(report("second"));
+        assertTrue(crashOutbox.flush(TIMEOUT));
+        awaitDelivered(2);
+        assertEquals("first", backend.getMessages().get(0));
+        assertEquals("second", backend.getMessages().get(1));
+    }
+
+    @Test public void survivesErrorsOfTheBackend() throws InterruptedException {
+        backend.errors = 3;
+        crashOutbox.start();
+        crashOutbox.enqueue(report("first"));
+        assertTrue(crashOutbox.flush(TIMEOUT));
+        awaitDelivered(1);
+
+        crashOutbox.enqueue(report("second"));
+        assertTrue(crashOutbox.flush(TIMEOUT));
+        awaitDelivered(2);
+    }
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        // the reports get removed from the queue after the backend got them
+        while ((backend.getMessages().size() < count || crashOutbox.getPendingCount() > 0)
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, backend.getMessages().size());
+        assertEquals(0, crashOutbox.getPendingCount());
+    }
+
+    private static CrashReport report(String message) {
+        return new CrashReport(System.currentTimeMillis(), Log.ERROR, "Crash", message, new IllegalStateException());
+    }
+
+    private static class RecordingBackend extends CrashBackend {
+        private final List<String> messages = new ArrayList<>();
+        volatile int errors;
+
+        @Override public boolean send(@NonNull CrashReport report) {
+            if (errors > 0) {
+                errors--;
+                throw new NoClassDefFoundError("com/example/Sdk");
+            }
+            synchronized (messages) {
+                messages.add(report.getMessage());
+            }
+            return true;
+        }
+
+        List<String> getMessages() {
+            synchronized (messages) {
+                return new ArrayList<>(messages);
+            }
+        }
+    }
+}
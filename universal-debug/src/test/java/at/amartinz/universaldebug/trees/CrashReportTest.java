@@ -0,0 +1,88 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CrashReportTest {
+    @Test public void keepsTheCausesThroughPersisting() throws IOException {
+        final IllegalArgumentException root = new IllegalArgumentException("root");
+        final IllegalStateException crash = new IllegalStateException("crash", new IOException("io", root));
+        final CrashReport report = CrashReport.fromBytes(
+                new CrashReport(1, Log.ERROR, "Crash", "message", crash).toBytes());
+
+        final Throwable throwable = report.toThrowable();
+        assertTrue(throwable.getMessage().contains(IllegalStateException.class.getName() + ": crash"));
+        assertSameFrame(crash.getStackTrace()[0], throwable.getStackTrace()[0]);
+
+        final Throwable io = throwable.getCause();
+        assertEquals(IOException.class.getName() + ": io", io.getMessage());
+        assertSameFrame(crash.getCause().getStackTrace()[0], io.getStackTrace()[0]);
+
+        final Throwable restoredRoot = io.getCause();
+        assertEquals(IllegalArgumentException.class.getName() + ": root", restoredRoot.getMessage());
+        assertSameFrame(root.getStackTrace()[0], restoredRoot.getStackTrace()[0]);
+        assertNull(restoredRoot.getCause());
+    }
+
+    @Test public void boundsTheCauses() throws IOException {
+        final RuntimeException first = new RuntimeException("first");
+        final RuntimeException second = new RuntimeException("second");
+        first.initCause(second);
+        // a cycle must not make persisting run forever
+        second.initCause(first);
+
+        final CrashReport report = CrashReport.fromBytes(
+                new CrashReport(1, Log.ERROR, "Crash", "message", new IllegalStateException(first)).toBytes());
+        int causes = 0;
+        for (Throwable cause = report.toThrowable().getCause(); cause != null; cause = cause.getCause()) {
+            assertTrue(cause.getStackTrace().length <= CrashReport.MAX_CAUSE_FRAMES);
+            causes++;
+        }
+        assertEquals(CrashReport.MAX_CAUSES, causes);
+    }
+
+    @Test public void reportWithoutThrowable() throws IOException {
+        final CrashReport report = CrashReport.fromBytes(
+                new CrashReport(1, Log.ERROR, "Crash", "message", null).toBytes());
+        assertEquals("Crash: message", report.toThrowable().getMessage());
+        assertNull(report.toThrowable().getCause());
+    }
+
+    private static void assertSameFrame(StackTraceElement expected, StackTraceElement actual) {
+        // the class loader and module of newer JVMs do not get persisted
+        assertEquals(expected.getClassName(), actual.getClassName());
+        assertEquals(expected.getMethodName(), actual.getMethodName());
+        assertEquals(expected.getLineNumber(), actual.getLineNumber());
+    }
+}
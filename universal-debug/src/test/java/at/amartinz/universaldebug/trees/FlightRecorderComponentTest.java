@@ -0,0 +1,110 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests the dumps of {@link FlightRecorderComponent}, which get written on a background thread.
+ */
+public class FlightRecorderComponentTest {
+    private static final long TIMEOUT = 5000;
+
+    private BaseTree baseTree;
+    private File directory;
+
+    @Before public void setUp() throws IOException {
+        baseTree = new BaseTree(mock(Context.class), Collections.<Integer>emptySet());
+        directory = File.createTempFile("flight", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test public void errorDumpsInBackground() throws Exception {
+        final FlightRecorderComponent recorder = createRecorder(directory);
+        recorder.doLog(Log.INFO, "Flight", "before the error", null);
+        recorder.doLog(Log.ERROR, "Flight", "the error", null);
+
+        final long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (recorder.getLastDumpFile() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertNotNull(recorder.getLastDumpFile());
+
+        final String dump = decode(recorder.getLastDumpFile());
+        assertTrue(dump, dump.contains("before the error"));
+        assertTrue(dump, dump.contains("the error"));
+    }
+
+    @Test public void flushWaitsForTheDump() throws IOException {
+        final FlightRecorderComponent recorder = createRecorder(directory);
+        recorder.doLog(Log.INFO, "Flight", "flushed", null);
+
+        assertTrue(recorder.flush(TIMEOUT));
+        final String dump = decode(recorder.getLastDumpFile());
+        assertTrue(dump, dump.contains("flushed"));
+    }
+
+    @Test public void flushFailsIfTheDumpFails() {
+        final FlightRecorderComponent recorder = createRecorder(new File(directory, "missing"));
+        recorder.doLog(Log.INFO, "Flight", "not dumped", null);
+
+        assertFalse(recorder.flush(TIMEOUT));
+    }
+
+    private FlightRecorderComponent createRecorder(File dumpDirectory) {
+        return new FlightRecorderComponent(baseTree, 16 * 1024, dumpDirectory).setMinDumpInterval(0);
+    }
+
+    private static String decode(File file) throws IOException {
+        final StringWriter writer = new StringWriter();
+        new BinaryLogDecoder(writer).decodeFile(file);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogThrottleTest {
+    private static final long IDLE = 60 * 1000 + 1;
+
+    @Test public void schedulesOneSweepUntilTheStormGotReported() throws InterruptedException {
+        final LogThrottle throttle = new LogThrottle(100, 1, false, Log.ERROR);
+        final RecordingSummary summary = new RecordingSummary();
+
+        assertTrue(throttle.tryAcquire(Log.INFO, "Storm", throttle.currentTime()));
+        assertFalse(throttle.tryAcquire(Log.INFO, "Storm", throttle.currentTime()));
+        assertTrue(throttle.tryScheduleSweep());
+        assertFalse(throttle.tryScheduleSweep());
+
+        // the bucket refills within 10ms, which ends the storm
+        Thread.sleep(50);
+        assertFalse(throttle.runScheduledSweep(summary));
+        assertEquals(1, summary.counts.size());
+        assertEquals(1L, (long) summary.counts.get(0));
+
+        assertTrue(throttle.tryScheduleSweep());
+    }
+
+    @Test public void keepsSweepingWhileTheStormGoesOn() {
+        final LogThrottle throttle = new LogThrottle(1, 1, false, Log.ERROR);
+        final RecordingSummary summary = new RecordingSummary();
+
+        assertTrue(throttle.tryAcquire(Log.INFO, "Storm", throttle.currentTime()));
+        assertFalse(throttle.tryAcquire(Log.INFO, "Storm", throttle.currentTime()));
+        assertTrue(throttle.tryScheduleSweep());
+
+        assertTrue(throttle.runScheduledSweep(summary));
+        assertFalse(throttle.tryScheduleSweep());
+    }
+
+    @Test public void newTagsTakeOverIdleSlots() {
+        final LogThrottle throttle = new LogThrottle(1, 1, false, Log.ERROR);
+        // fill the table, tags which do not fit any more are not limited
+        for (int i = 0; i < 4096; i++) {
+            throttle.tryAcquire(Log.INFO, "Tag" + i, 1);
+        }
+        assertTrue(throttle.tryAcquire(Log.INFO, "New", 2));
+        assertTrue(throttle.tryAcquire(Log.INFO, "New", 2));
+
+        assertTrue(throttle.tryAcquire(Log.INFO, "New", 1 + IDLE));
+        assertFalse(throttle.tryAcquire(Log.INFO, "New", 1 + IDLE));
+    }
+
+    @Test public void slotsWithUnreportedLinesDoNotGetTakenOver() {
+        final LogThrottle throttle = new LogThrottle(1, 1, false, Log.ERROR);
+        for (int i = 0; i < 4096; i++) {
+            throttle.tryAcquire(Log.INFO, "Tag" + i, 1);
+            throttle.tryAcquire(Log.INFO, "Tag" + i, 1);
+        }
+        assertTrue(throttle.tryAcquire(Log.INFO, "New", 1 + IDLE));
+        assertTrue(throttle.tryAcquire(Log.INFO, "New", 1 + IDLE));
+
+        final RecordingSummary summary = new RecordingSummary();
+        throttle.sweep(true, summary);
+        assertEquals(512, summary.counts.size());
+        assertTrue(throttle.tryAcquire(Log.INFO, "New", 1 + IDLE));
+        assertFalse(throttle.tryAcquire(Log.INFO, "New", 1 + IDLE));
+    }
+
+    private static class RecordingSummary extends LogThrottle.Summary {
+        final List<Long> counts = new ArrayList<>();
+
+        @Override void onSuppressed(int priority, @NonNull String tag, long count, boolean isOngoing) {
+            counts.add(count);
+        }
+    }
+}
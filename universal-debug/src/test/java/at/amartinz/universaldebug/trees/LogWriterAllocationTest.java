@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Measures the allocations of the path from a log call to the {@link LogOutput} once it reached its steady state.
+ */
+public class LogWriterAllocationTest {
+    private static final int WARMUP_LINES = 50000;
+    private static final int MEASURED_LINES = 200000;
+
+    // a single String or formatter per line would already be more than 40 bytes
+    private static final double MAX_BYTES_PER_LINE = 1;
+
+    private static final String[] TAGS = new String[]{ "MainActivity", "NetworkClient", "\u00dcberpr\u00fcfung" };
+    private static final String[] MESSAGES = new String[]{
+            "OnCreate got called!", "Request to https://example.com took 42ms", "Gr\u00fc\u00dfe aus Wien \u2603"
+    };
+
+    private com.sun.management.ThreadMXBean threadBean;
+    private File file;
+
+    @Before public void setUp() throws IOException {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        file = File.createTempFile("allocation", ".log");
+    }
+
+    @After public void tearDown() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test public void textEncodingDoesNotAllocate() throws IOException {
+        assertEncodingDoesNotAllocate(new TextLogEncoder());
+    }
+
+    @Test public void binaryEncodingDoesNotAllocate() throws IOException {
+        assertEncodingDoesNotAllocate(new BinaryLogEncoder());
+    }
+
+    @Test public void enqueueDoesNotAllocate() {
+        final BaseTree baseTree = new BaseTree(mock(Context.class), Collections.<Integer>emptySet());
+        final LogWriter logWriter = new LogWriter(baseTree, new DiscardingLogOutput(), new TextLogEncoder(),
+                WriterComponent.DEFAULT_QUEUE_CAPACITY, new FlushPolicy());
+        try {
+            // starts the writer thread and fills the pool of entries
+            enqueue(logWriter, WARMUP_LINES);
+            logWriter.flush(5000);
+
+            final long threadId = Thread.currentThread().getId();
+            final long before = threadBean.getThreadAllocatedBytes(threadId);
+            enqueue(logWriter, MEASURED_LINES);
+            final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+            assertBytesPerLine("enqueue", allocated);
+        } finally {
+            logWriter.shutdown();
+        }
+    }
+
+    private void assertEncodingDoesNotAllocate(LogEncoder encoder) throws IOException {
+        final FileLogOutput output = new FileLogOutput(file);
+        output.open();
+        try {
+            final RecordBuffer recordBuffer = new RecordBuffer(64);
+            encoder.startSegment(recordBuffer, false);
+            output.write(recordBuffer.flip());
+
+            // grows the record buffer and caches the timestamp prefix
+            write(encoder, recordBuffer, output, WARMUP_LINES);
+
+            final long threadId = Thread.currentThread().getId();
+            final long before = threadBean.getThreadAllocatedBytes(threadId);
+            write(encoder, recordBuffer, output, MEASURED_LINES);
+            final long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+
+            assertBytesPerLine(encoder.getClass().getSimpleName(), allocated);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void write(LogEncoder encoder, RecordBuffer recordBuffer, LogOutput output, int lines)
+            throws IOException {
+        // a fixed timestamp, formatting a new minute allocates once per minute
+        final long timestamp = System.currentTimeMillis() / 60000 * 60000;
+        for (int i = 0; i < lines; i++) {
+            recordBuffer.clear();
+            encoder.encode(recordBuffer, timestamp + (i % 60000), 3 + (i % 4), TAGS[i % TAGS.length],
+                    MESSAGES[i % MESSAGES.length], null);
+            output.write(recordBuffer.flip());
+            encoder.onRecordWritten();
+        }
+    }
+
+    private static void enqueue(LogWriter logWriter, int lines) {
+        for (int i = 0; i < lines; i++) {
+            logWriter.enqueue(3, TAGS[i % TAGS.length], MESSAGES[i % MESSAGES.length], null);
+            if (i % 1024 == 0) {
+                // give the writer thread the chance to recycle entries, a full queue drops lines
+                Thread.yield();
+            }
+        }
+    }
+
+    private static void assertBytesPerLine(String what, long allocated) {
+        final double bytesPerLine = (double) allocated / MEASURED_LINES;
+        assertTrue(what + " allocated " + bytesPerLine + " bytes per line", bytesPerLine <= MAX_BYTES_PER_LINE);
+    }
+
+    private static final class DiscardingLogOutput extends LogOutput {
+        @Override public void open() { }
+
+        @Override public void write(@NonNull ByteBuffer buffer) {
+            buffer.position(buffer.limit());
+        }
+
+        @Override public void flush() { }
+
+        @Override public void close() { }
+
+        @Override public File getCurrentFile() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class LogWriterTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test public void logAfterShutdownDoesNotWaitForDrainingWriter() throws InterruptedException {
+        final BlockingLogOutput output = new BlockingLogOutput();
+        final LogWriter logWriter = createLogWriter(output);
+        try {
+            logWriter.enqueue(3, "Test", "slow", null);
+            assertTrue(output.blocked.await(5, TimeUnit.SECONDS));
+
+            logWriter.shutdown();
+            final long start = System.nanoTime();
+            logWriter.enqueue(3, "Test", "after shutdown", null);
+            final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue("enqueue took " + elapsedMillis + "ms", elapsedMillis < 1000);
+
+            // the new writer waits for the previous one, which is still stuck in the output
+            assertFalse(logWriter.flush(100));
+
+            output.release.countDown();
+            assertTrue(logWriter.flush(5000));
+            assertEquals(2, output.lines.size());
+            assertTrue(output.lines.get(0).contains("slow"));
+            assertTrue(output.lines.get(1).contains("after shutdown"));
+            assertEquals(0, logWriter.getDroppedCount());
+        } finally {
+            output.release.countDown();
+            logWriter.shutdown();
+        }
+    }
+
+    @Test public void flushWaitsForDrainingWriter() throws InterruptedException {
+        final BlockingLogOutput output = new BlockingLogOutput();
+        final LogWriter logWriter = createLogWriter(output);
+        try {
+            logWriter.enqueue(3, "Test", "slow", null);
+            assertTrue(output.blocked.await(5, TimeUnit.SECONDS));
+            logWriter.enqueue(3, "Test", "queued", null);
+            logWriter.shutdown();
+
+            assertFalse(logWriter.flush(100));
+
+            output.release.countDown();
+            assertTrue(logWriter.flush(5000));
+            assertEquals(2, output.lines.size());
+            assertTrue(output.closed);
+        } finally {
+            output.release.countDown();
+        }
+    }
+
+    private static LogWriter createLogWriter(LogOutput output) {
+        final BaseTree baseTree = new BaseTree(mock(Context.class), Collections.<Integer>emptySet());
+        return new LogWriter(baseTree, output, new TextLogEncoder(), WriterComponent.DEFAULT_QUEUE_CAPACITY,
+                new FlushPolicy());
+    }
+
+    /**
+     * Blocks the writer thread on lines containing "slow" until it gets released.
+     */
+    private static final class BlockingLogOutput extends LogOutput {
+        final List<String> lines = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        volatile boolean closed;
+
+        @Override public void open() {
+            closed = false;
+        }
+
+        @Override public void write(@NonNull ByteBuffer buffer) {
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            final String line = new String(bytes, UTF_8);
+            if (line.contains("slow")) {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (!line.trim().isEmpty()) {
+                lines.add(line);
+            }
+        }
+
+        @Override public void flush() { }
+
+        @Override public void close() {
+            closed = true;
+        }
+
+        @Override public File getCurrentFile() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RotatingFileLogOutputTest {
+    private static final byte[] CONTENT = "a line of a previous run\n".getBytes();
+
+    private File directory;
+
+    @Before public void setUp() throws IOException {
+        directory = File.createTempFile("rotating", "");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test public void openCompressesSegmentsOfPreviousRuns() throws Exception {
+        final File closed = new File(directory, "app_20160101_000000.log");
+        final File staleTmp = new File(directory, "app_20151231_000000.log.gz.tmp");
+        final File unrelated = new File(directory, "other_20160101_000000.log");
+        write(closed, CONTENT);
+        write(staleTmp, new byte[]{ 1, 2, 3 });
+        write(unrelated, CONTENT);
+
+        final RotatingFileLogOutput output = new RotatingFileLogOutput(directory, "app_", ".log");
+        output.open();
+        try {
+            final File archive = new File(closed.getPath() + RotatingFileLogOutput.SUFFIX_ARCHIVE);
+            awaitGone(closed);
+            assertTrue(archive.exists());
+            assertArrayEquals(CONTENT, readGzip(archive));
+
+            awaitGone(staleTmp);
+            assertTrue(unrelated.exists());
+            assertTrue(output.getCurrentFile().exists());
+        } finally {
+            output.close();
+        }
+    }
+
+    @Test public void openKeepsSegmentsWithoutCompression() throws Exception {
+        final File closed = new File(directory, "app_20160101_000000.log");
+        write(closed, CONTENT);
+
+        final RotatingFileLogOutput output = new RotatingFileLogOutput(directory, "app_", ".log",
+                new RotationPolicy().setCompress(false));
+        output.open();
+        try {
+            final File staleTmp = new File(directory, "app_20151231_000000.log.gz.tmp");
+            write(staleTmp, new byte[]{ 1, 2, 3 });
+            output.close();
+            output.open();
+
+            awaitGone(staleTmp);
+            assertTrue(closed.exists());
+            assertFalse(new File(closed.getPath() + RotatingFileLogOutput.SUFFIX_ARCHIVE).exists());
+        } finally {
+            output.close();
+        }
+    }
+
+    private static void awaitGone(File file) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (file.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(file + " still exists", file.exists());
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        final OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] readGzip(File file) throws IOException {
+        final InputStream in = new GZIPInputStream(new FileInputStream(file));
+        try {
+            final byte[] buffer = new byte[CONTENT.length * 2];
+            int length = 0;
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) > 0) {
+                length += read;
+            }
+            final byte[] result = new byte[length];
+            System.arraycopy(buffer, 0, result, 0, length);
+            return result;
+        } finally {
+            in.close();
+        }
+    }
+}
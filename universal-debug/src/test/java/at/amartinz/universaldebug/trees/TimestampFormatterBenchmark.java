@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import at.amartinz.universaldebug.Microbenchmark;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares {@link TimestampFormatter} against {@link SimpleDateFormat} for consecutive timestamps, like the ones
+ * of log lines.
+ */
+public class TimestampFormatterBenchmark {
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+    private static final int ITERATIONS = 200000;
+
+    // one line every 3 milliseconds, which crosses a minute every 20000 lines
+    private static final long STEP = 3;
+
+    @Test public void fasterThanSimpleDateFormat() {
+        final long start = System.currentTimeMillis();
+
+        final SimpleDateFormat simpleDateFormat = new SimpleDateFormat(PATTERN, Locale.ENGLISH);
+        final Date date = new Date();
+        final double simpleDateFormatNanos = Microbenchmark.measure(ITERATIONS, new Microbenchmark.Operation() {
+            @Override public long run(int iteration) {
+                date.setTime(start + iteration * STEP);
+                return simpleDateFormat.format(date).length();
+            }
+        });
+
+        final TimestampFormatter timestampFormatter = new TimestampFormatter();
+        final RecordBuffer recordBuffer = new RecordBuffer(32);
+        final double timestampFormatterNanos = Microbenchmark.measure(ITERATIONS, new Microbenchmark.Operation() {
+            @Override public long run(int iteration) {
+                recordBuffer.clear();
+                timestampFormatter.format(start + iteration * STEP, recordBuffer);
+                final ByteBuffer buffer = recordBuffer.flip();
+                return buffer.get(buffer.limit() - 1);
+            }
+        });
+
+        assertTrue("TimestampFormatter took " + timestampFormatterNanos + " ns, SimpleDateFormat "
+                + simpleDateFormatNanos + " ns", timestampFormatterNanos < simpleDateFormatNanos);
+    }
+}
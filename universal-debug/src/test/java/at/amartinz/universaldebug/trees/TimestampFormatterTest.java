@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.trees;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that {@link TimestampFormatter} formats consecutive timestamps, like the ones of log lines, exactly like
+ * {@link SimpleDateFormat}.
+ */
+public class TimestampFormatterTest {
+    private static final String PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
+    private static final int ITERATIONS = 200000;
+
+    // one line every 3 milliseconds, which crosses a minute every 20000 lines
+    private static final long STEP = 3;
+
+    @Test public void formatsLikeSimpleDateFormat() {
+        final SimpleDateFormat simpleDateFormat = new SimpleDateFormat(PATTERN, Locale.ENGLISH);
+        final TimestampFormatter timestampFormatter = new TimestampFormatter();
+
+        final long start = System.currentTimeMillis();
+        for (int i = 0; i < ITERATIONS; i++) {
+            final long timestamp = start + i * STEP;
+            assertEquals(simpleDateFormat.format(new Date(timestamp)), timestampFormatter.format(timestamp));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DurableQueueTest {
+    private File directory;
+
+    @Before public void setUp() throws IOException {
+        directory = File.createTempFile("queue", "");
+        assertTrue(directory.delete() && directory.mkdir());
+    }
+
+    @After public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test public void survivesReopening() throws IOException {
+        DurableQueue queue = new DurableQueue(directory);
+        for (int i = 0; i < 10; i++) {
+            queue.append(record(i));
+        }
+        queue.sync();
+        queue.remove(4);
+        queue.close();
+
+        queue = new DurableQueue(directory);
+        assertEquals(6, queue.size());
+        final List<byte[]> records = queue.peek(10);
+        for (int i = 0; i < records.size(); i++) {
+            assertArrayEquals(record(i + 4), records.get(i));
+        }
+        queue.close();
+    }
+
+    @Test public void keepsOrderWhileCompacting() throws IOException {
+        final DurableQueue queue = new DurableQueue(directory);
+        int appended = 0;
+        int removed = 0;
+        // far more than the compaction threshold
+        while (appended < 20000) {
+            for (int i = 0; i < 10; i++) {
+                queue.append(record(appended++));
+            }
+            for (final byte[] record : queue.peek(7)) {
+                assertArrayEquals(record(removed++), record);
+            }
+            queue.remove(7);
+        }
+        assertEquals(appended - removed, queue.size());
+        queue.close();
+    }
+
+    @Test public void directoryIsLockedWhileOpen() throws IOException {
+        final DurableQueue queue = new DurableQueue(directory);
+        try {
+            new DurableQueue(directory);
+            fail("Opened the same directory twice");
+        } catch (IOException expected) {
+            // the first queue still owns the files
+        }
+        queue.close();
+
+        // closing releases the lock
+        new DurableQueue(directory).close();
+    }
+
+    private static byte[] record(int index) {
+        return ("record " + index).getBytes();
+    }
+}
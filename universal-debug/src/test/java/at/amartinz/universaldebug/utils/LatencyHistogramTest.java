@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the bucket boundaries and percentiles of {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+    @Test public void emptyHistogramReportsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+    }
+
+    @Test public void smallValuesAreExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        // below 16 every value has its own bucket
+        for (int i = 0; i < 16; i++) {
+            histogram.record(i);
+        }
+        assertEquals(16, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(0));
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(11, histogram.getPercentile(75));
+        assertEquals(15, histogram.getPercentile(100));
+    }
+
+    @Test public void percentileIsUpperBoundOfItsBucket() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        assertEquals(1000, histogram.getCount());
+        // 500 is in the bucket from 480 to 511
+        assertEquals(511, histogram.getPercentile(50));
+        // 900 is in the bucket from 896 to 959
+        assertEquals(959, histogram.getPercentile(90));
+        // 990 is in the bucket from 960 to 1023, but nothing above 1000 got recorded
+        assertEquals(1000, histogram.getPercentile(99));
+        assertEquals(1000, histogram.getMax());
+    }
+
+    @Test public void percentilesStayWithinBucketPrecision() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 16; value < 1000000000L; value = value * 3 / 2 + 7) {
+            histogram.reset();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE);
+
+            final long percentile = histogram.getPercentile(50);
+            assertTrue(percentile + " is below " + value, percentile >= value);
+            assertTrue(percentile + " is too far above " + value, percentile - value < value / 8);
+        }
+    }
+
+    @Test public void maximumIsExactAndCapsPercentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        assertEquals(100, histogram.getMax());
+        // the bucket reaches from 96 to 103
+        assertEquals(100, histogram.getPercentile(100));
+
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(103, histogram.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(100));
+    }
+
+    @Test public void negativeValuesGetRecordedAsZero() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+
+    @Test public void resetClearsEverything() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(42);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(99));
+    }
+
+    @Test public void formatsNanos() {
+        assertEquals("999ns", LatencyHistogram.formatNanos(999));
+        assertEquals("1.5us", LatencyHistogram.formatNanos(1500));
+        assertEquals("2.50ms", LatencyHistogram.formatNanos(2500000));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotRegistryTest {
+    private static final int WRITER_COUNT = 4;
+    private static final int READER_COUNT = 8;
+    private static final int ELEMENTS_PER_WRITER = 2000;
+
+    @Test public void addAndRemove() {
+        final SnapshotRegistry<String> registry = new SnapshotRegistry<>(new String[0]);
+        assertTrue(registry.isEmpty());
+
+        registry.add("a");
+        assertTrue(registry.addIfAbsent("b"));
+        assertFalse(registry.addIfAbsent("b"));
+        registry.add("a");
+        assertEquals(Arrays.asList("a", "b", "a"), Arrays.asList(registry.snapshot()));
+
+        assertTrue(registry.remove("a"));
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(registry.snapshot()));
+        assertFalse(registry.remove("c"));
+    }
+
+    @Test public void removeInstancesOf() {
+        final SnapshotRegistry<Object> registry = new SnapshotRegistry<>(new Object[0]);
+        registry.add("a");
+        registry.add(1);
+        registry.add("b");
+
+        assertTrue(registry.removeInstancesOf(String.class));
+        assertEquals(Arrays.<Object>asList(1), Arrays.asList(registry.snapshot()));
+        assertFalse(registry.removeInstancesOf(String.class));
+    }
+
+    @Test public void snapshotIsNotAffectedByLaterWrites() {
+        final SnapshotRegistry<String> registry = new SnapshotRegistry<>(new String[0]);
+        registry.add("a");
+        final String[] snapshot = registry.snapshot();
+        registry.add("b");
+        registry.remove("a");
+
+        assertEquals(Arrays.asList("a"), Arrays.asList(snapshot));
+    }
+
+    /**
+     * Writers add and remove concurrently while readers keep iterating snapshots.<br>
+     * No write may get lost and readers must only ever see complete arrays.
+     */
+    @Test public void concurrentWritersAndReaders() throws InterruptedException {
+        final SnapshotRegistry<String> registry = new SnapshotRegistry<>(new String[0]);
+        final AtomicBoolean isWriting = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        final List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITER_COUNT; w++) {
+            final int writer = w;
+            writers.add(startThread(start, failure, new Runnable() {
+                @Override public void run() {
+                    for (int i = 0; i < ELEMENTS_PER_WRITER; i++) {
+                        registry.add(writer + "-" + i);
+                        // keep every even element, remove every odd one right after adding it
+                        if (i % 2 == 1) {
+                            assertTrue(registry.remove(writer + "-" + i));
+                        }
+                    }
+                }
+            }));
+        }
+
+        final List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < READER_COUNT; r++) {
+            readers.add(startThread(start, failure, new Runnable() {
+                @Override public void run() {
+                    int previousLength = 0;
+                    while (isWriting.get()) {
+                        final String[] snapshot = registry.snapshot();
+                        for (final String element : snapshot) {
+                            if (element == null) {
+                                throw new AssertionError("Snapshot contains null");
+                            }
+                        }
+                        // writers add more than they remove, but never remove more than one at a time
+                        if (snapshot.length < previousLength - WRITER_COUNT) {
+                            throw new AssertionError("Snapshot shrank from " + previousLength + " to " + snapshot.length);
+                        }
+                        previousLength = snapshot.length;
+                    }
+                }
+            }));
+        }
+
+        start.countDown();
+        for (final Thread writer : writers) {
+            writer.join();
+        }
+        isWriting.set(false);
+        for (final Thread reader : readers) {
+            reader.join();
+        }
+        assertNull(failure.get());
+
+        final HashSet<String> expected = new HashSet<>();
+        for (int w = 0; w < WRITER_COUNT; w++) {
+            for (int i = 0; i < ELEMENTS_PER_WRITER; i += 2) {
+                expected.add(w + "-" + i);
+            }
+        }
+        final String[] snapshot = registry.snapshot();
+        assertEquals(expected.size(), snapshot.length);
+        assertEquals(expected, new HashSet<>(Arrays.asList(snapshot)));
+    }
+
+    static Thread startThread(final CountDownLatch start, final AtomicReference<Throwable> failure,
+            final Runnable runnable) {
+        final Thread thread = new Thread(new Runnable() {
+            @Override public void run() {
+                try {
+                    start.await();
+                    runnable.run();
+                } catch (Throwable throwable) {
+                    failure.compareAndSet(null, throwable);
+                }
+            }
+        });
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2016 Alexander Martinz
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package at.amartinz.universaldebug.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedCounterTest {
+    @Test public void sumThenResetStartsOver() {
+        final StripedCounter counter = new StripedCounter();
+        counter.increment();
+        counter.add(41);
+        assertEquals(42, counter.sum());
+
+        assertEquals(42, counter.sumThenReset());
+        assertEquals(0, counter.sum());
+
+        counter.increment();
+        assertEquals(1, counter.sumThenReset());
+    }
+
+    @Test public void concurrentIncrementsDoNotGetLost() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        final int threadCount = 8;
+        final int incrementsPerThread = 50000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                    for (int i = 0; i < incrementsPerThread; i++) {
+                        counter.increment();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        // every increment gets counted by exactly one reset
+        final AtomicBoolean isCounting = new AtomicBoolean(true);
+        final AtomicLong resetSum = new AtomicLong();
+        final Thread resetter = new Thread(new Runnable() {
+            @Override public void run() {
+                while (isCounting.get()) {
+                    resetSum.addAndGet(counter.sumThenReset());
+                }
+            }
+        });
+        resetter.start();
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+        isCounting.set(false);
+        resetter.join();
+
+        assertEquals((long) threadCount * incrementsPerThread, resetSum.get() + counter.sumThenReset());
+    }
+}